@@ -13,6 +13,89 @@ dependencies {
     implementation("org.slf4j:slf4j-api:2.0.7")
     implementation("org.slf4j:slf4j-simple:2.0.7")
     testImplementation("org.junit.jupiter:junit-jupiter:5.9.2")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher:1.9.2")
+}
+
+// JMH benchmarks in src/jmh/java, next to the packages they measure so they can reach
+// package-private code. Run with ./gradlew jmh (-PjmhInclude=<regex> for a subset), then
+// ./gradlew jmhCheck to compare against the baseline in src/jmh/baseline.json.
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+val jmhResults = layout.buildDirectory.file("jmh/results.json")
+val jmhBaseline = layout.projectDirectory.file("src/jmh/baseline.json")
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks with the GC profiler, results in build/jmh/results.json"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val include = project.findProperty("jmhInclude")?.toString()
+    doFirst { jmhResults.get().asFile.parentFile.mkdirs() }
+    args(listOfNotNull(include) + listOf("-prof", "gc", "-rf", "json", "-rff", jmhResults.get().asFile.path))
+}
+
+tasks.register<JavaExec>("jmhCheck") {
+    group = "benchmark"
+    description = "Fails if the last jmh run regressed against src/jmh/baseline.json"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("dev.perillo.serversmith.BenchmarkBaseline")
+    args(jmhBaseline.asFile.path, jmhResults.get().asFile.path)
+}
+
+tasks.register<Copy>("jmhBaseline") {
+    group = "benchmark"
+    description = "Makes the last jmh run the new baseline"
+    from(jmhResults)
+    into(jmhBaseline.asFile.parentFile)
+    rename { jmhBaseline.asFile.name }
+}
+
+// Load harness in src/loadtest/java: a stub server.jar that logs like a real server and
+// answers console commands, and a driver that runs N of them through ProcessService.
+// Plain programs rather than tests, run with ./gradlew loadtest -PloadtestArgs="...".
+val loadtest: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[loadtest.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[loadtest.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
+// Only the stub, it runs as "java -jar server.jar" with nothing else on the class path
+val stubServerJar = tasks.register<Jar>("stubServerJar") {
+    archiveFileName.set("stub-server.jar")
+    destinationDirectory.set(layout.buildDirectory.dir("loadtest"))
+    from(loadtest.output.classesDirs) { include("**/StubServer*.class") }
+    manifest { attributes("Main-Class" to "dev.perillo.serversmith.loadtest.StubServer") }
+}
+
+tasks.register<JavaExec>("loadtest") {
+    group = "verification"
+    description = "Runs stub servers through ProcessService and reports latencies and ServerSmith's own usage"
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("dev.perillo.serversmith.loadtest.LoadDriver")
+    dependsOn(stubServerJar)
+    systemProperty("loadtest.stubJar", stubServerJar.get().archiveFile.get().asFile.path)
+    // ProcessService launches "java" from the PATH, make that the JDK the stubs were built for
+    doFirst {
+        val bin = javaLauncher.get().metadata.installationPath.dir("bin").asFile.path
+        environment("PATH", bin + File.pathSeparator + System.getenv("PATH"))
+    }
+    val loadtestArgs = project.findProperty("loadtestArgs")?.toString()
+    if (loadtestArgs != null) {
+        args(loadtestArgs.split(" ").filter { it.isNotBlank() })
+    }
 }
 
 javafx {
@@ -0,0 +1,101 @@
+package dev.perillo.serversmith;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Compares a JMH JSON result file with the checked-in baseline and exits non-zero
+// on a regression: a score worse by more than SCORE_TOLERANCE, or more bytes
+// allocated per operation than ALLOC_TOLERANCE allows. Timings on a laptop are
+// noisy, allocation per op is not, so the latter is held much tighter.
+// Benchmarks missing from either side are listed but don't fail the check.
+public class BenchmarkBaseline {
+    private static final double SCORE_TOLERANCE = 0.25;
+    private static final double ALLOC_TOLERANCE = 0.05;
+    // Below this per op, allocation differences are JIT noise
+    private static final double ALLOC_SLACK_BYTES = 64;
+
+    private record Result(String mode, double score, double allocPerOp) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path baselineFile = Path.of(args[0]);
+        Path resultsFile = Path.of(args[1]);
+        if (!Files.exists(resultsFile)) {
+            System.err.println("No results at " + resultsFile + ", run ./gradlew jmh first");
+            System.exit(1);
+        }
+        if (!Files.exists(baselineFile)) {
+            System.out.println("No baseline at " + baselineFile + ", make one with ./gradlew jmhBaseline");
+            return;
+        }
+        Map<String, Result> baseline = read(baselineFile);
+        Map<String, Result> results = read(resultsFile);
+
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %8s %12s %12s%n", "Benchmark", "Baseline", "Now", "Change",
+                "B/op before", "B/op now");
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f %8s  (new)%n", entry.getKey(), "-", now.score(), "");
+                continue;
+            }
+            // Throughput: higher is better, everything else is time per op
+            double change = now.mode().equals("thrpt") ? before.score() / now.score() - 1
+                    : now.score() / before.score() - 1;
+            boolean slower = change > SCORE_TOLERANCE;
+            boolean allocates = now.allocPerOp() > before.allocPerOp() * (1 + ALLOC_TOLERANCE) + ALLOC_SLACK_BYTES;
+            System.out.printf("%-70s %14.3f %14.3f %+7.1f%% %12.0f %12.0f%s%n", entry.getKey(), before.score(),
+                    now.score(), change * 100, before.allocPerOp(), now.allocPerOp(),
+                    slower || allocates ? "  REGRESSION" : "");
+            if (slower || allocates) {
+                regressions++;
+            }
+        }
+        for (String key : baseline.keySet()) {
+            if (!results.containsKey(key)) {
+                System.out.printf("%-70s  (not run)%n", key);
+            }
+        }
+        if (regressions > 0) {
+            System.err.println(regressions + " benchmark(s) regressed against " + baselineFile);
+            System.exit(1);
+        }
+    }
+
+    // Keyed by benchmark and its parameters
+    private static Map<String, Result> read(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file.toFile())) {
+            String key = run.path("benchmark").asText().replace("dev.perillo.serversmith.", "");
+            Map<String, String> params = new TreeMap<>();
+            for (Iterator<Map.Entry<String, JsonNode>> it = run.path("params").fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> param = it.next();
+                params.put(param.getKey(), param.getValue().asText());
+            }
+            if (!params.isEmpty()) {
+                key += params;
+            }
+            JsonNode primary = run.path("primaryMetric");
+            double alloc = 0;
+            for (Iterator<Map.Entry<String, JsonNode>> it = run.path("secondaryMetrics").fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> metric = it.next();
+                // Older JMH versions prefix profiler metrics with a middle dot
+                if (metric.getKey().replace("·", "").equals("gc.alloc.rate.norm")) {
+                    alloc = metric.getValue().path("score").asDouble();
+                }
+            }
+            results.put(key, new Result(run.path("mode").asText(), primary.path("score").asDouble(), alloc));
+        }
+        return results;
+    }
+}
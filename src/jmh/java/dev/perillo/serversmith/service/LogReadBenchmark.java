@@ -0,0 +1,159 @@
+package dev.perillo.serversmith.service;
+
+import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.model.ServerType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Lines per second through SupervisedProcess.readLog, from stdout to the console
+// history and the tick monitor, fed by a fake process replaying typical output.
+// Without history it's the reader alone.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(LogReadBenchmark.LINES)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LogReadBenchmark {
+    static final int LINES = 50_000;
+    private static final String[] SAMPLE = {
+            "[12:34:56] [Server thread/INFO]: Preparing spawn area: 83%",
+            "[12:34:56] [Server thread/INFO]: Steve[/127.0.0.1:51234] logged in with entity id 214 at (12.5, 64.0, -3.5)",
+            "[12:34:57] [Server thread/INFO]: <Steve> anyone up for the nether? ünïcödé ✓",
+            "[12:34:57] [Server thread/WARN]: Can't keep up! Is the server overloaded? Running 2153ms or 43 ticks behind",
+            "[12:34:58] [Server thread/INFO]: TPS from last 1m, 5m, 15m: 19.98, 20.0, 20.0",
+            "[12:34:58] [Async Chat Thread - #3/INFO]: Alex issued server command: /home base",
+            "[12:34:59] [Worker-Main-4/ERROR]: Chunk at [12, -7] is in the wrong location; relocating",
+            "\tat net.minecraft.world.level.chunk.storage.RegionFile.read(RegionFile.java:142)",
+    };
+
+    @Param({ "true", "false" })
+    public boolean history;
+
+    private byte[] output;
+    private Path dir;
+    private ConsoleLog log;
+    private final ServerInstance instance = new ServerInstance("bench", ServerType.PAPER, "1.21.1", Path.of("."));
+    private final TickMonitor ticks = new TickMonitor();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < LINES; i++) {
+            out.write(SAMPLE[i % SAMPLE.length].getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+        output = out.toByteArray();
+    }
+
+    // A fresh log every iteration, or it grows by megabytes per invocation
+    @Setup(Level.Iteration)
+    public void openLog() throws IOException {
+        if (history) {
+            dir = Files.createTempDirectory("log-bench");
+            log = ConsoleLog.open(dir);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeLog() throws IOException {
+        if (log != null) {
+            log.close();
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+            log = null;
+        }
+    }
+
+    @Benchmark
+    public int readLog() throws InterruptedException, ExecutionException {
+        SupervisedProcess process = new SupervisedProcess(new ReplayProcess(output), instance, log, null, ticks,
+                Runnable::run);
+        process.start(p -> {
+        });
+        return process.onExit().get();
+    }
+
+    // Prints the given bytes and exits once they've all been read
+    private static final class ReplayProcess extends Process {
+        private final CountDownLatch drained = new CountDownLatch(1);
+        private final InputStream stdout;
+
+        ReplayProcess(byte[] output) {
+            stdout = new ByteArrayInputStream(output) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    int n = super.read(b, off, len);
+                    if (n < 0) {
+                        drained.countDown();
+                    }
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return stdout;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            drained.await();
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            if (drained.getCount() > 0) {
+                throw new IllegalThreadStateException();
+            }
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+            drained.countDown();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package dev.perillo.serversmith.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// ManifestReader against fixtures shaped like the real responses: the launcher's
+// version index (800 versions), one version JSON, a Paper build list and the Paper
+// version list. The tree
+// variant is what the reader replaced, kept for comparison.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ManifestBenchmark {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private byte[] versionManifest;
+    private byte[] version;
+    private byte[] paperBuilds;
+    private byte[] paperProject;
+
+    @Setup
+    public void setup() throws IOException {
+        versionManifest = fixture("version_manifest_v2.json");
+        version = fixture("version_1.21.1.json");
+        paperBuilds = fixture("paper_builds_1.21.1.json");
+        paperProject = fixture("paper_project.json");
+    }
+
+    @Benchmark
+    public Object versionManifest() throws IOException {
+        return ManifestReader.versionManifest(versionManifest);
+    }
+
+    @Benchmark
+    public JsonNode versionManifestTree() throws IOException {
+        return mapper.readTree(versionManifest);
+    }
+
+    @Benchmark
+    public DownloadService.DownloadTarget serverDownload() throws IOException {
+        return ManifestReader.serverDownload(version);
+    }
+
+    @Benchmark
+    public Object latestPaperBuild() throws IOException {
+        return ManifestReader.latestPaperBuild(paperBuilds);
+    }
+
+    @Benchmark
+    public List<String> stringArray() throws IOException {
+        return ManifestReader.stringArray(paperProject, "versions");
+    }
+
+    static byte[] fixture(String name) throws IOException {
+        try (InputStream in = ManifestBenchmark.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IOException("Missing fixture " + name);
+            }
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package dev.perillo.serversmith.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// PropertiesService on a normal server.properties (~60 keys) and on files far
+// bigger than any server writes, to show how each operation scales
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PropertiesBenchmark {
+    @Param({ "60", "10000" })
+    public int keys;
+
+    private Path dir;
+    private Path file;
+    private PropertiesService properties;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("properties-bench");
+        file = dir.resolve("server.properties");
+        List<String> lines = new ArrayList<>();
+        lines.add("#Minecraft server properties");
+        lines.add("#Thu Aug 08 12:24:45 UTC 2024");
+        names = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            names[i] = "some-setting." + i;
+            lines.add(names[i] + "=value " + i);
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        properties = new PropertiesService(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    private String nextKey() {
+        next = next + 1 == names.length ? 0 : next + 1;
+        return names[next];
+    }
+
+    @Benchmark
+    public void load() {
+        properties.load();
+    }
+
+    @Benchmark
+    public String get() {
+        return properties.getProperty(nextKey());
+    }
+
+    @Benchmark
+    public void set() {
+        properties.setProperty(nextKey(), "changed");
+    }
+
+    @Benchmark
+    public void save() {
+        properties.save();
+    }
+}
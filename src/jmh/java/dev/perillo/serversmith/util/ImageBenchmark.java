@@ -0,0 +1,65 @@
+package dev.perillo.serversmith.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// ImageUtil.saveServerIcon from a typical picked image down to the 64x64 icon
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ImageBenchmark {
+    @Param({ "256", "1024" })
+    public int size;
+
+    private Path dir;
+    private Path source;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("image-bench");
+        source = dir.resolve("picked.png");
+        // Gradient with some noise, so the PNG is neither trivial nor incompressible
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(1);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int r = x * 255 / size, g = y * 255 / size, b = random.nextInt(32);
+                image.setRGB(x, y, 0xFF000000 | r << 16 | g << 8 | b);
+            }
+        }
+        ImageIO.write(image, "PNG", source.toFile());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(dir.resolve("server-icon.png"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void saveServerIcon() throws IOException {
+        ImageUtil.saveServerIcon(source, dir);
+    }
+}
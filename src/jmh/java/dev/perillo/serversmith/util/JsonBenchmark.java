@@ -0,0 +1,63 @@
+package dev.perillo.serversmith.util;
+
+import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.model.ServerType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// instance.json round trips through JsonUtil, as done for every instance at
+// startup and on every metadata change
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JsonBenchmark {
+    private Path dir;
+    private Path file;
+    private ServerInstance instance;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("json-bench");
+        file = dir.resolve("instance.json");
+        instance = new ServerInstance("Survival World", ServerType.PAPER, "1.21.1", dir);
+        JsonUtil.save(file, instance);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        JsonUtil.save(file, instance);
+    }
+
+    @Benchmark
+    public ServerInstance load() throws IOException {
+        return JsonUtil.load(file, ServerInstance.class);
+    }
+
+    @Benchmark
+    public String toJson() throws IOException {
+        return JsonUtil.toJson(instance);
+    }
+}
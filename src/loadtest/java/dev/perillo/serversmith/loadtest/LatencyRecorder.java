@@ -0,0 +1,71 @@
+package dev.perillo.serversmith.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+// Latency histogram that any number of threads can record into without locking.
+// Buckets are powers of two of microseconds split 16 ways, so percentiles come
+// out within about 6% of the truth from 1 µs up to a couple of hours.
+class LatencyRecorder {
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BITS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+        long micros = Math.max(1, nanos / 1_000);
+        counts.incrementAndGet(bucket(micros));
+        max.accumulate(micros);
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    long maxMicros() {
+        return max.get();
+    }
+
+    // Upper bound of the bucket the p-th percentile (0..100) falls in, 0 if nothing was recorded
+    long percentileMicros(double p) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * p / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    // Values below SUB_BUCKETS get a bucket each, above that the top SUB_BITS + 1 bits pick it
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = magnitude - SUB_BITS;
+        int sub = (int) (micros >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
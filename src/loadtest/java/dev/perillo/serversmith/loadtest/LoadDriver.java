@@ -0,0 +1,245 @@
+package dev.perillo.serversmith.loadtest;
+
+import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.model.ServerState;
+import dev.perillo.serversmith.model.ServerType;
+import dev.perillo.serversmith.service.LogCursor;
+import dev.perillo.serversmith.service.MetricSeries;
+import dev.perillo.serversmith.service.MetricsService;
+import dev.perillo.serversmith.service.ProcessService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Runs N stub servers through ProcessService, the way the daemon does, and
+// reports what that costs: how long each takes from startServer() to RUNNING,
+// how long a console line takes from the server's stdout to a log subscriber,
+// how long a command takes to come back as output, and the CPU, memory and
+// threads of this process while all of it goes on. Run by the loadtest task:
+//
+//   ./gradlew loadtest -PloadtestArgs="--instances 100 --rate 50 --duration 120"
+//
+// Options: --instances N (10), --rate lines per second per server (20),
+// --duration seconds of steady state (60), --startup stub startup millis (2000),
+// --memory max heap MB per stub (64), --dir where the instances go (a temp dir,
+// deleted afterwards unless --keep).
+public class LoadDriver {
+    private static final String SELF = "serversmith";
+    private static final long PING_INTERVAL_MILLIS = 100;
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(60);
+
+    private int instances = 10;
+    private double rate = 20;
+    private int duration = 60;
+    private int startup = 2_000;
+    private int memory = 64;
+    private Path dir;
+    private boolean keep;
+
+    private final LatencyRecorder spawn = new LatencyRecorder();
+    private final LatencyRecorder ready = new LatencyRecorder();
+    private final LatencyRecorder delivery = new LatencyRecorder();
+    private final LatencyRecorder roundTrip = new LatencyRecorder();
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong lostPings = new AtomicLong();
+    // Of this process, from the same sampler that watches the servers
+    private double cpuTotal;
+    private double cpuMax;
+    private long rssMax;
+    private int threadsMax;
+    private int samples;
+
+    public static void main(String[] args) throws Exception {
+        LoadDriver driver = new LoadDriver();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--instances" -> driver.instances = Integer.parseInt(args[++i]);
+                case "--rate" -> driver.rate = Double.parseDouble(args[++i]);
+                case "--duration" -> driver.duration = Integer.parseInt(args[++i]);
+                case "--startup" -> driver.startup = Integer.parseInt(args[++i]);
+                case "--memory" -> driver.memory = Integer.parseInt(args[++i]);
+                case "--dir" -> driver.dir = Path.of(args[++i]);
+                case "--keep" -> driver.keep = true;
+                default -> {
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+        String jar = System.getProperty("loadtest.stubJar");
+        if (jar == null) {
+            System.err.println("Set -Dloadtest.stubJar to the stub server jar, or run it with ./gradlew loadtest");
+            System.exit(2);
+        }
+        driver.run(Path.of(jar));
+        System.exit(0);
+    }
+
+    private void run(Path stubJar) throws Exception {
+        boolean temporary = dir == null;
+        if (temporary) {
+            dir = Files.createTempDirectory("serversmith-loadtest");
+        }
+        // Stands in for the FX thread, like the daemon's state thread
+        ExecutorService state = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "loadtest-state");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ProcessService processService = new ProcessService(state::execute);
+        MetricsService metrics = processService.getMetricsService();
+        MetricSeries self = metrics.getSeries(SELF);
+        metrics.addListener(() -> sampleSelf(self));
+        metrics.track(SELF, ProcessHandle.current().pid());
+
+        System.out.printf("Starting %d stub servers in %s, %.0f lines/s each%n", instances, dir, rate);
+        List<ServerInstance> servers = new ArrayList<>();
+        List<LogCursor> cursors = new ArrayList<>();
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            ServerInstance instance = create(stubJar, i);
+            servers.add(instance);
+            cursors.add(processService.subscribe(instance, 0, this::delivered));
+
+            CompletableFuture<Void> up = new CompletableFuture<>();
+            long requested = System.nanoTime();
+            instance.stateProperty().addListener((obs, old, now) -> {
+                if (now == ServerState.RUNNING && !up.isDone()) {
+                    ready.record(System.nanoTime() - requested);
+                    up.complete(null);
+                }
+            });
+            processService.startServer(instance, Math.min(16, memory), memory);
+            spawn.record(System.nanoTime() - requested);
+            running.add(up);
+        }
+        long readyTimeout = startup + 30_000L + 500L * instances;
+        CompletableFuture.allOf(running.toArray(CompletableFuture[]::new)).get(readyTimeout, TimeUnit.MILLISECONDS);
+        System.out.printf("All running, holding steady for %ds%n", duration);
+
+        // Round trips one server at a time, spread over all of them
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+        long before = lines.get();
+        long steadyStart = System.nanoTime();
+        for (long seq = 0; System.nanoTime() < end; seq++) {
+            ServerInstance instance = servers.get((int) (seq % servers.size()));
+            String token = "ping-" + seq;
+            long sent = System.nanoTime();
+            CompletableFuture<String> reply = processService.awaitLog(instance, line -> line.contains(token + " #"));
+            processService.sendCommand(instance, "say " + token);
+            try {
+                reply.get(10, TimeUnit.SECONDS);
+                roundTrip.record(System.nanoTime() - sent);
+            } catch (Exception e) {
+                lostPings.incrementAndGet();
+            }
+            Thread.sleep(PING_INTERVAL_MILLIS);
+        }
+        double steadySeconds = (System.nanoTime() - steadyStart) / 1e9;
+        long steadyLines = lines.get() - before;
+
+        System.out.println("Stopping");
+        long stopping = System.nanoTime();
+        processService.shutdown(STOP_TIMEOUT);
+        long stopped = System.nanoTime() - stopping;
+        cursors.forEach(LogCursor::close);
+        state.shutdown();
+
+        report(steadyLines / steadySeconds, stopped);
+        if (temporary && !keep) {
+            delete(dir);
+        }
+    }
+
+    private ServerInstance create(Path stubJar, int index) throws IOException {
+        Path location = dir.resolve("stub-" + index);
+        Files.createDirectories(location);
+        Files.copy(stubJar, location.resolve("server.jar"), StandardCopyOption.REPLACE_EXISTING);
+        Files.writeString(location.resolve("stub.properties"), "rate=" + rate + "\nstartup=" + startup + "\n");
+        ServerInstance instance = new ServerInstance("stub-" + index, ServerType.PAPER, "1.21.1", location);
+        instance.setMinMemory(Math.min(16, memory));
+        instance.setMaxMemory(memory);
+        return instance;
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    // Subscriber threads, one per server. Lines the stub printed end in " #<nanoTime>".
+    private void delivered(LogCursor.Batch batch) {
+        long now = System.nanoTime();
+        skipped.addAndGet(batch.skipped());
+        lines.addAndGet(batch.lines().size());
+        for (String line : batch.lines()) {
+            int mark = line.lastIndexOf(" #");
+            if (mark < 0) {
+                continue;
+            }
+            try {
+                delivery.record(now - Long.parseLong(line, mark + 2, line.length(), 10));
+            } catch (NumberFormatException e) {
+                // Not one of the stub's stamps
+            }
+        }
+    }
+
+    // Metrics sampler thread, once a second
+    private synchronized void sampleSelf(MetricSeries self) {
+        if (self.size() == 0) {
+            return;
+        }
+        double cpu = self.latest(MetricSeries.Metric.CPU);
+        cpuTotal += cpu;
+        cpuMax = Math.max(cpuMax, cpu);
+        rssMax = Math.max(rssMax, (long) self.latest(MetricSeries.Metric.RSS));
+        threadsMax = Math.max(threadsMax, (int) self.latest(MetricSeries.Metric.THREADS));
+        samples++;
+    }
+
+    private synchronized void report(double linesPerSecond, long stopNanos) {
+        System.out.println();
+        System.out.printf("%-22s %10s %10s %10s %10s %10s%n", "", "count", "p50", "p99", "p99.9", "max");
+        row("startServer()", spawn);
+        row("start to RUNNING", ready);
+        row("log delivery", delivery);
+        row("command round trip", roundTrip);
+        System.out.println();
+        System.out.printf("Lines delivered        %.0f/s steady, %d skipped by rotation%n", linesPerSecond,
+                skipped.get());
+        System.out.printf("Commands unanswered    %d%n", lostPings.get());
+        System.out.printf("Stopping all servers   %s%n", millis(stopNanos / 1_000));
+        System.out.printf("ServerSmith CPU        %.1f%% of a core on average, %.1f%% at most (%.2f%% per server)%n",
+                samples > 0 ? cpuTotal / samples : 0, cpuMax, samples > 0 ? cpuTotal / samples / instances : 0);
+        System.out.printf("ServerSmith memory     %d MB RSS at most, %d MB heap in use at the end%n",
+                rssMax >> 20, (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) >> 20);
+        System.out.printf("ServerSmith threads    %d at most%n", threadsMax);
+    }
+
+    private static void row(String name, LatencyRecorder recorder) {
+        System.out.printf("%-22s %10d %10s %10s %10s %10s%n", name, recorder.count(),
+                millis(recorder.percentileMicros(50)), millis(recorder.percentileMicros(99)),
+                millis(recorder.percentileMicros(99.9)), millis(recorder.maxMicros()));
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f ms", micros / 1000.0);
+    }
+}
@@ -0,0 +1,214 @@
+package dev.perillo.serversmith.loadtest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+import java.util.Random;
+
+// Stands in for a Minecraft server.jar: prints a Paper-style startup, then a
+// steady stream of log lines while it "ticks", and answers the console commands
+// ServerSmith sends (stop, save-all, save-off/on, tps, mspt, say). Packaged on
+// its own by the stubServerJar task, so it uses nothing but the JDK.
+//
+// Reads stub.properties from the working directory, all optional:
+//   rate     log lines per second once running (default 20)
+//   startup  milliseconds from launch to "Done" (default 2000)
+//   lag      chance per second of a "Can't keep up!" warning (default 0)
+//
+// Every line printed while running ends in " #<System.nanoTime()>" so the
+// driver can tell how long it took to reach a subscriber. On Linux nanoTime is
+// the same monotonic clock in every process on the machine.
+public class StubServer {
+    private static final long TICK_NANOS = 50_000_000;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final String[] CHATTER = {
+            "Player%d joined the game",
+            "Player%d left the game",
+            "Player%d issued server command: /home",
+            "<Player%d> anyone got spare iron?",
+            "Player%d has made the advancement [Stone Age]",
+            "Player%d moved too quickly! 12.4,0.0,-3.1",
+            "Villager EntityVillager['Villager'/%d, l='ServerLevel[world]'] died,"
+                    + " message: 'Villager was slain by Zombie'",
+            "[ChunkHolderManager] Saved 0 block chunks, %d entity chunks, 0 poi chunks in world 'world'",
+    };
+
+    private final BufferedWriter out = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 1 << 16);
+    private final Random random = new Random();
+    private final double rate;
+    private final long startupMillis;
+    private final double lag;
+    private volatile boolean running = true;
+    private volatile boolean autosave = true;
+
+    private StubServer(Properties config) {
+        rate = Double.parseDouble(config.getProperty("rate", "20"));
+        startupMillis = Long.parseLong(config.getProperty("startup", "2000"));
+        lag = Double.parseDouble(config.getProperty("lag", "0"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties config = new Properties();
+        Path file = Path.of("stub.properties");
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                config.load(reader);
+            }
+        }
+        new StubServer(config).run();
+    }
+
+    private void run() throws Exception {
+        long launched = System.nanoTime();
+        Thread console = new Thread(this::readConsole, "console");
+        console.setDaemon(true);
+        console.start();
+
+        startup(launched);
+        tick();
+        shutdown();
+        System.exit(0);
+    }
+
+    private void startup(long launched) throws IOException, InterruptedException {
+        String[] steps = {
+                "Environment: Environment[sessionHost=https://sessionserver.mojang.com,"
+                        + " servicesHost=https://api.minecraftservices.com, name=PROD]",
+                "Loaded 1290 recipes",
+                "Loaded 1399 advancements",
+                "Starting minecraft server version 1.21.1",
+                "Loading properties",
+                "This server is running Paper version 1.21.1-stub (MC: 1.21.1)",
+                "Server Ping Player Sample Count: 12",
+                "Using 4 threads for Netty based IO",
+                "Default game type: SURVIVAL",
+                "Generating keypair",
+                "Starting Minecraft server on *:25565",
+                "Preparing level \"world\"",
+        };
+        long step = startupMillis / (steps.length + 5);
+        for (String line : steps) {
+            print("INFO", line);
+            flush();
+            Thread.sleep(step);
+        }
+        for (int percent = 0; percent <= 100; percent += 25) {
+            print("INFO", "Preparing spawn area: " + percent + "%");
+            flush();
+            Thread.sleep(step);
+        }
+        double seconds = (System.nanoTime() - launched) / 1e9;
+        print("INFO", String.format("Done (%.3fs)! For help, type \"help\"", seconds));
+        flush();
+    }
+
+    // Spreads the configured rate evenly over 20 ticks a second
+    private void tick() throws IOException, InterruptedException {
+        double owed = 0;
+        long next = System.nanoTime();
+        long tick = 0;
+        while (running) {
+            owed += rate / 20;
+            synchronized (this) {
+                for (; owed >= 1; owed--) {
+                    String text = String.format(CHATTER[random.nextInt(CHATTER.length)], random.nextInt(100));
+                    stamped("INFO", text);
+                }
+                if (tick % 20 == 0 && lag > 0 && random.nextDouble() < lag) {
+                    stamped("WARN", "Can't keep up! Is the server overloaded? Running 2150ms or 43 ticks behind");
+                }
+                flush();
+            }
+            tick++;
+            next += TICK_NANOS;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            }
+        }
+    }
+
+    private void shutdown() throws IOException {
+        synchronized (this) {
+            print("INFO", "Stopping the server");
+            print("INFO", "Stopping server");
+            print("INFO", "Saving players");
+            print("INFO", "Saving worlds");
+            print("INFO", "Saving chunks for level 'ServerLevel[world]'/minecraft:overworld");
+            print("INFO", "ThreadedAnvilChunkStorage (world): All chunks are saved");
+            flush();
+        }
+    }
+
+    private void readConsole() {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                command(line.strip());
+            }
+        } catch (IOException e) {
+            // ServerSmith went away, same as stop
+        }
+        running = false;
+    }
+
+    private synchronized void command(String command) throws IOException {
+        if (command.equals("stop")) {
+            running = false;
+        } else if (command.equals("save-all") || command.equals("save-all flush")) {
+            stamped("INFO", "Saving the game (this may take a moment!)");
+            stamped("INFO", "Saved the game");
+        } else if (command.equals("save-off")) {
+            stamped("INFO", autosave ? "Automatic saving is now disabled" : "Saving is already turned off");
+            autosave = false;
+        } else if (command.equals("save-on")) {
+            stamped("INFO", autosave ? "Saving is already turned on" : "Automatic saving is now enabled");
+            autosave = true;
+        } else if (command.equals("tps")) {
+            stamped("INFO", String.format("TPS from last 1m, 5m, 15m: %.2f, %.2f, %.2f", tps(), tps(), tps()));
+        } else if (command.equals("mspt")) {
+            stamped("INFO", "Server tick times (avg/min/max) from last 5s, 10s, 1m:");
+            stamped("INFO", String.format("◴ %.1f/%.1f/%.1f, %.1f/%.1f/%.1f, %.1f/%.1f/%.1f",
+                    mspt(), 0.4, 9.7, mspt(), 0.4, 11.2, mspt(), 0.3, 14.8));
+        } else if (command.startsWith("say ")) {
+            stamped("INFO", "[Server] " + command.substring(4));
+        } else if (!command.isEmpty()) {
+            stamped("INFO", "Unknown or incomplete command, see below for error");
+            stamped("INFO", command + "<--[HERE]");
+        }
+        flush();
+    }
+
+    private double tps() {
+        return 20 - random.nextDouble() * 0.05;
+    }
+
+    private double mspt() {
+        return 2 + random.nextDouble() * 3;
+    }
+
+    private void stamped(String level, String text) throws IOException {
+        print(level, text + " #" + System.nanoTime());
+    }
+
+    private synchronized void print(String level, String text) throws IOException {
+        out.write("[" + LocalTime.now().format(TIME) + " " + level + "]: " + text);
+        out.newLine();
+    }
+
+    private synchronized void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -2,6 +2,7 @@ package dev.perillo.serversmith;
 
 import dev.perillo.serversmith.ui.MainController;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
@@ -16,7 +17,7 @@ public class App extends Application {
         scene.getStylesheets().add(getClass().getResource("styles.css").toExternalForm());
         stage.getIcons().add(new Image(getClass().getResourceAsStream("app-icon.png")));
 
-        stage.setTitle("ServerSmith");
+        stage.setTitle(mainController.isDaemonConnected() ? "ServerSmith - connected to daemon" : "ServerSmith");
         stage.setMinWidth(1200);
         stage.setMinHeight(800);
         stage.setScene(scene);
@@ -24,8 +25,15 @@ public class App extends Application {
         stage.show();
 
         stage.setOnCloseRequest(e -> {
-            // Cleanup, stop servers?
-            // mainController.shutdown();
+            // Give servers the chance to save before we go, without freezing the window
+            e.consume();
+            if (!mainController.isDaemonConnected()) {
+                stage.setTitle("ServerSmith - stopping servers...");
+            }
+            Thread.ofVirtual().name("shutdown").start(() -> {
+                mainController.shutdown();
+                Platform.runLater(Platform::exit);
+            });
         });
     }
 
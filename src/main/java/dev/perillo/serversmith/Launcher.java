@@ -1,7 +1,19 @@
 package dev.perillo.serversmith;
 
+import dev.perillo.serversmith.daemon.Daemon;
+import dev.perillo.serversmith.daemon.DaemonCli;
+
+import java.util.Arrays;
+
 public class Launcher {
     public static void main(String[] args) {
-        App.main(args);
+        // Headless modes never touch the FX toolkit
+        if (args.length > 0 && args[0].equals("daemon")) {
+            Daemon.main(Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length > 0 && args[0].equals("ctl")) {
+            DaemonCli.main(Arrays.copyOfRange(args, 1, args.length));
+        } else {
+            App.main(args);
+        }
     }
 }
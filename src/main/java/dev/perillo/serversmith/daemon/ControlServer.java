@@ -0,0 +1,312 @@
+package dev.perillo.serversmith.daemon;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.service.InstanceManager;
+import dev.perillo.serversmith.service.LogCursor;
+import dev.perillo.serversmith.service.MetricSeries;
+import dev.perillo.serversmith.service.ProcessService;
+import dev.perillo.serversmith.service.TickMonitor;
+import dev.perillo.serversmith.util.JsonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// The daemon's HTTP API, see DaemonProtocol. Each request gets its own virtual
+// thread, so a log stream that stays open for hours costs next to nothing.
+// Anything touching the instance list or an instance runs on the daemon's state
+// thread, like it would on the FX thread in the app.
+class ControlServer {
+    private static final Logger logger = LoggerFactory.getLogger(ControlServer.class);
+    private static final int LOG_BATCH = 1_000;
+    private static final long LOG_WAIT_MILLIS = 1_000;
+
+    private final InstanceManager instanceManager;
+    private final ProcessService processService;
+    private final ExecutorService state;
+    private final byte[] token;
+    private final Runnable onShutdown;
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    private HttpServer server;
+    private volatile boolean closing;
+
+    ControlServer(InstanceManager instanceManager, ProcessService processService, ExecutorService state,
+            String token, Runnable onShutdown) {
+        this.instanceManager = instanceManager;
+        this.processService = processService;
+        this.state = state;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.onShutdown = onShutdown;
+    }
+
+    // Returns the port actually bound, port 0 picks a free one
+    int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(handlers);
+        route("/instances", "GET", this::instances);
+        route("/start", "POST", this::start);
+        route("/stop", "POST", this::stop);
+        route("/command", "POST", this::command);
+        route("/log", "GET", this::log);
+        route("/metrics", "GET", this::metrics);
+        route("/shutdown", "POST", exchange -> {
+            respond(exchange, 202, "Shutting down");
+            onShutdown.run();
+        });
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        closing = true;
+        if (server != null) {
+            server.stop(1);
+        }
+        handlers.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    // Status for an error thrown by a handler
+    private static final class ApiException extends RuntimeException {
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private void route(String path, String method, Handler handler) {
+        server.createContext(path, exchange -> {
+            try {
+                String sent = exchange.getRequestHeaders().getFirst(DaemonProtocol.TOKEN_HEADER);
+                if (sent == null || !MessageDigest.isEqual(token, sent.getBytes(StandardCharsets.UTF_8))) {
+                    respond(exchange, 401, "Missing or wrong token");
+                } else if (!exchange.getRequestMethod().equals(method)) {
+                    respond(exchange, 405, method + " only");
+                } else {
+                    handler.handle(exchange);
+                }
+            } catch (ApiException e) {
+                respond(exchange, e.status, e.getMessage());
+            } catch (IllegalStateException e) {
+                // Already running, shutting down...
+                respond(exchange, 409, e.getMessage());
+            } catch (IOException e) {
+                // Includes the client hanging up on a log stream
+                logger.debug("Request " + exchange.getRequestURI() + " failed: " + e);
+            } catch (RuntimeException e) {
+                logger.error("Request " + exchange.getRequestURI() + " failed", e);
+                respond(exchange, 500, String.valueOf(e.getMessage()));
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    private void instances(HttpExchange exchange) throws IOException {
+        List<DaemonProtocol.Instance> result = onState(() -> {
+            List<DaemonProtocol.Instance> list = new ArrayList<>();
+            for (ServerInstance instance : instanceManager.getInstances()) {
+                list.add(new DaemonProtocol.Instance(instance.getName(),
+                        instance.getLocation().toAbsolutePath().toString(), instance.getType(),
+                        instance.getVersion(), instance.getAvailability(), processService.getState(instance)));
+            }
+            return list;
+        });
+        respondJson(exchange, result);
+    }
+
+    private void start(HttpExchange exchange) throws IOException {
+        ServerInstance instance = instance(exchange);
+        onState(() -> {
+            if (!instance.isAvailable()) {
+                throw new ApiException(409, instance.getName() + " is not available");
+            }
+            try {
+                processService.startServer(instance, instance.getMinMemory(), instance.getMaxMemory());
+            } catch (IOException e) {
+                throw new ApiException(500, "Failed to start " + instance.getName() + ": " + e.getMessage());
+            }
+            return null;
+        });
+        respond(exchange, 202, "Starting " + instance.getName());
+    }
+
+    private void stop(HttpExchange exchange) throws IOException {
+        ServerInstance instance = instance(exchange);
+        if ("true".equals(query(exchange).get("kill"))) {
+            processService.killServer(instance);
+        } else {
+            processService.stopServer(instance);
+        }
+        respond(exchange, 202, "Stopping " + instance.getName());
+    }
+
+    private void command(HttpExchange exchange) throws IOException {
+        ServerInstance instance = instance(exchange);
+        String command = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).strip();
+        if (command.isEmpty() || command.contains("\n")) {
+            throw new ApiException(400, "Expected a single command");
+        }
+        if (!processService.isRunning(instance)) {
+            throw new ApiException(409, instance.getName() + " is not running");
+        }
+        processService.sendCommand(instance, command);
+        respond(exchange, 202, "Sent");
+    }
+
+    // Streams until the client goes away, each line as "<number>\t<text>". A client that reconnects
+    // from the number after the last one it saw misses nothing, and a jump in the numbers means
+    // lines were rotated away before it could read them.
+    private void log(HttpExchange exchange) throws IOException {
+        ServerInstance instance = instance(exchange);
+        long from;
+        String param = query(exchange).get("from");
+        try {
+            from = param != null ? Long.parseLong(param) : -DaemonProtocol.TAIL_LINES;
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Bad line number " + param);
+        }
+        if (from < 0 && param != null) {
+            throw new ApiException(400, "Bad line number " + param);
+        }
+        LogCursor cursor;
+        try {
+            cursor = processService.openCursor(instance, from);
+        } catch (IOException e) {
+            throw new ApiException(404, e.getMessage());
+        }
+        try (cursor) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            while (!closing) {
+                LogCursor.Batch batch = cursor.next(LOG_BATCH, LOG_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch.lines().isEmpty()) {
+                    continue;
+                }
+                StringBuilder text = new StringBuilder();
+                long number = batch.first();
+                for (String line : batch.lines()) {
+                    text.append(number++).append('\t').append(line).append('\n');
+                }
+                out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        ServerInstance instance = instance(exchange);
+        MetricSeries series = processService.getMetrics(instance);
+        TickMonitor ticks = processService.getTickMonitor(instance);
+        respondJson(exchange, new DaemonProtocol.Metrics(processService.getState(instance), series.latestTime(),
+                series.latest(MetricSeries.Metric.CPU), (long) series.latest(MetricSeries.Metric.RSS),
+                (int) series.latest(MetricSeries.Metric.THREADS), series.latest(MetricSeries.Metric.READ),
+                series.latest(MetricSeries.Metric.WRITE), orZero(ticks.getTps().latest()),
+                orZero(ticks.getMspt().latest()), ticks.getLagEvents()));
+    }
+
+    // No tick samples yet is NaN, which JSON has no number for
+    private static double orZero(double value) {
+        return Double.isNaN(value) ? 0 : value;
+    }
+
+    // By location first, then by name if that's unambiguous
+    private ServerInstance instance(HttpExchange exchange) {
+        String ref = query(exchange).get("instance");
+        if (ref == null || ref.isEmpty()) {
+            throw new ApiException(400, "Missing instance parameter");
+        }
+        return onState(() -> {
+            List<ServerInstance> named = new ArrayList<>();
+            for (ServerInstance instance : instanceManager.getInstances()) {
+                if (instance.getLocation().toAbsolutePath().toString().equals(ref)) {
+                    return instance;
+                }
+                if (instance.getName().equalsIgnoreCase(ref)) {
+                    named.add(instance);
+                }
+            }
+            if (named.size() > 1) {
+                throw new ApiException(409, "More than one instance is called " + ref + ", use its location");
+            }
+            if (named.isEmpty()) {
+                throw new ApiException(404, "No instance " + ref);
+            }
+            return named.get(0);
+        });
+    }
+
+    private <T> T onState(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, state).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void respondJson(HttpExchange exchange, Object body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(exchange, 200, JsonUtil.toJson(body));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        try {
+            send(exchange, status, message + "\n");
+        } catch (IOException e) {
+            // Client gone, or headers already out on a stream that then failed
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
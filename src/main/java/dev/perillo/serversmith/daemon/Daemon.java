@@ -0,0 +1,111 @@
+package dev.perillo.serversmith.daemon;
+
+import dev.perillo.serversmith.service.FileWatcher;
+import dev.perillo.serversmith.service.InstanceManager;
+import dev.perillo.serversmith.service.ProcessService;
+import dev.perillo.serversmith.util.JsonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Headless host for the servers: the same InstanceManager and ProcessService as
+// the app, without the FX toolkit, controlled through ControlServer. Servers it
+// starts live as long as the daemon, whatever happens to the clients.
+// Started with "ServerSmith daemon [--port N]", stopped by SIGTERM or /shutdown,
+// both of which give the servers the same chance to save as closing the app.
+public class Daemon {
+    private static final Logger logger = LoggerFactory.getLogger(Daemon.class);
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(45);
+
+    // Stands in for the FX thread: instance state is only ever touched here
+    private final ExecutorService state = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "daemon-state");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final FileWatcher fileWatcher = new FileWatcher();
+    private final InstanceManager instanceManager;
+    private final ProcessService processService;
+    private final ControlServer controlServer;
+    private final String token;
+
+    public Daemon() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        token = HexFormat.of().formatHex(secret);
+        instanceManager = new InstanceManager(fileWatcher, state::execute);
+        // The app keeps adding and removing instances while we run
+        instanceManager.watchConfig();
+        processService = new ProcessService(state::execute);
+        // Exiting runs the shutdown hook, which does the actual stopping
+        controlServer = new ControlServer(instanceManager, processService, state, token,
+                () -> Thread.ofPlatform().name("daemon-exit").start(() -> System.exit(0)));
+    }
+
+    public static void main(String[] args) {
+        int port = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Usage: ServerSmith daemon [--port N]");
+                System.exit(2);
+            }
+        }
+
+        DaemonProtocol.Info running = DaemonClient.readInfo();
+        if (running != null && ProcessHandle.of(running.pid()).map(ProcessHandle::isAlive).orElse(false)) {
+            System.err.println("A daemon is already running (pid " + running.pid() + ")");
+            System.exit(1);
+        }
+
+        Daemon daemon = new Daemon();
+        try {
+            daemon.start(port);
+        } catch (IOException e) {
+            logger.error("Failed to start the daemon", e);
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::shutdown, "daemon-shutdown"));
+        // The HTTP server's dispatcher thread keeps the JVM alive from here
+    }
+
+    public void start(int port) throws IOException {
+        int bound = controlServer.start(port);
+        writeInfo(new DaemonProtocol.Info(bound, token, ProcessHandle.current().pid()));
+        logger.info("Daemon listening on 127.0.0.1:" + bound);
+    }
+
+    public void shutdown() {
+        logger.info("Daemon stopping, waiting for servers to exit");
+        controlServer.stop();
+        processService.shutdown(SHUTDOWN_TIMEOUT);
+        fileWatcher.close();
+        state.shutdown();
+        try {
+            Files.deleteIfExists(DaemonProtocol.INFO_FILE);
+        } catch (IOException e) {
+            logger.warn("Failed to remove " + DaemonProtocol.INFO_FILE, e);
+        }
+    }
+
+    // Created owner-only before the token goes in, where the file system has permissions
+    private static void writeInfo(DaemonProtocol.Info info) throws IOException {
+        Files.createDirectories(DaemonProtocol.INFO_FILE.getParent());
+        Files.deleteIfExists(DaemonProtocol.INFO_FILE);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(DaemonProtocol.INFO_FILE,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        JsonUtil.save(DaemonProtocol.INFO_FILE, info);
+    }
+}
@@ -0,0 +1,68 @@
+package dev.perillo.serversmith.daemon;
+
+import dev.perillo.serversmith.util.FileUtil;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// "ServerSmith ctl ..." from a shell, one request per run
+public class DaemonCli {
+    private static final String USAGE = """
+            Usage: ServerSmith ctl <command>
+              list                      instances and their state
+              start <instance>          instance is a name or a location
+              stop <instance> [--kill]
+              send <instance> <command...>
+              log <instance> [from]     follows the console, Ctrl+C to quit
+              metrics <instance>
+              shutdown                  stops every server and the daemon""";
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            run(args);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+    }
+
+    private static void run(String[] args) throws IOException {
+        DaemonClient client = DaemonClient.connect();
+        switch (args[0]) {
+            case "list" -> {
+                for (DaemonProtocol.Instance instance : client.instances()) {
+                    System.out.printf("%-20s %-8s %-10s %s%n", instance.name(), instance.state(),
+                            instance.availability(), instance.location());
+                }
+            }
+            case "start" -> client.start(arg(args, 1));
+            case "stop" -> client.stop(arg(args, 1), args.length > 2 && args[2].equals("--kill"));
+            case "send" -> client.command(arg(args, 1),
+                    String.join(" ", Arrays.copyOfRange(args, 2, Math.max(2, args.length))));
+            case "log" -> client.streamLog(arg(args, 1), args.length > 2 ? Long.parseLong(args[2]) : -1,
+                    (number, text) -> System.out.println(text));
+            case "metrics" -> {
+                DaemonProtocol.Metrics m = client.metrics(arg(args, 1));
+                System.out.printf("%s  cpu %.0f%%  mem %s  threads %d  read %s/s  write %s/s  tps %.1f  mspt %.1f%n",
+                        m.state(), m.cpu(), FileUtil.formatSize(m.rss()), m.threads(), FileUtil.formatSize(m.read()),
+                        FileUtil.formatSize(m.write()), m.tps(), m.mspt());
+            }
+            case "shutdown" -> client.shutdown();
+            default -> throw new IllegalArgumentException(args[0]);
+        }
+    }
+
+    private static String arg(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing argument");
+        }
+        return args[i];
+    }
+}
@@ -0,0 +1,153 @@
+package dev.perillo.serversmith.daemon;
+
+import dev.perillo.serversmith.util.JsonUtil;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Talks to a running daemon, see DaemonProtocol. Errors the daemon reports come
+// back as IOExceptions carrying its message.
+public class DaemonClient {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration PING_TIMEOUT = Duration.ofMillis(500);
+
+    @FunctionalInterface
+    public interface LogListener {
+        void line(long number, String text);
+    }
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+    private final DaemonProtocol.Info info;
+
+    private DaemonClient(DaemonProtocol.Info info) {
+        this.info = info;
+    }
+
+    // The daemon this user has running, if any
+    public static DaemonClient connect() throws IOException {
+        DaemonProtocol.Info info = readInfo();
+        if (info == null || !ProcessHandle.of(info.pid()).map(ProcessHandle::isAlive).orElse(false)) {
+            throw new IOException("No daemon running, start one with: ServerSmith daemon");
+        }
+        return new DaemonClient(info);
+    }
+
+    static DaemonProtocol.Info readInfo() {
+        if (!Files.exists(DaemonProtocol.INFO_FILE)) {
+            return null;
+        }
+        try {
+            return JsonUtil.load(DaemonProtocol.INFO_FILE, DaemonProtocol.Info.class);
+        } catch (IOException e) {
+            return null; // Half written or left over, same as none
+        }
+    }
+
+    // Whether the daemon answers, quickly enough to ask before a window opens. A daemon that
+    // is hung or a stale port taken by something else counts as none.
+    public boolean ping() {
+        try {
+            send(request("/instances").timeout(PING_TIMEOUT).GET().build());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public List<DaemonProtocol.Instance> instances() throws IOException {
+        return Arrays.asList(JsonUtil.fromJson(send(get("/instances")), DaemonProtocol.Instance[].class));
+    }
+
+    public void start(String instance) throws IOException {
+        send(post("/start?instance=" + encode(instance), ""));
+    }
+
+    public void stop(String instance, boolean kill) throws IOException {
+        send(post("/stop?instance=" + encode(instance) + (kill ? "&kill=true" : ""), ""));
+    }
+
+    public void command(String instance, String command) throws IOException {
+        send(post("/command?instance=" + encode(instance), command));
+    }
+
+    public DaemonProtocol.Metrics metrics(String instance) throws IOException {
+        return JsonUtil.fromJson(send(get("/metrics?instance=" + encode(instance))), DaemonProtocol.Metrics.class);
+    }
+
+    public void shutdown() throws IOException {
+        send(post("/shutdown", ""));
+    }
+
+    // Blocks, handing over console lines as they come, until the daemon goes away or the
+    // thread is interrupted. from < 0 starts with the last few lines. To pick up where a
+    // dropped stream left off, pass the number after the last line seen.
+    public void streamLog(String instance, long from, LogListener listener) throws IOException {
+        String uri = "/log?instance=" + encode(instance) + (from >= 0 ? "&from=" + from : "");
+        HttpRequest request = request(uri).GET().build();
+        HttpResponse<Stream<String>> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofLines());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted");
+        }
+        try (Stream<String> lines = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException(String.join("\n", lines.toList()).strip());
+            }
+            for (Iterator<String> it = lines.iterator(); it.hasNext(); ) {
+                String line = it.next();
+                int tab = line.indexOf('\t');
+                listener.line(Long.parseLong(line.substring(0, tab)), line.substring(tab + 1));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + info.port() + path))
+                .header(DaemonProtocol.TOKEN_HEADER, info.token());
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).timeout(REQUEST_TIMEOUT).GET().build();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return request(path).timeout(REQUEST_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8)).build();
+    }
+
+    private String send(HttpRequest request) throws IOException {
+        HttpResponse<String> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted");
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException(response.body().strip());
+        }
+        return response.body();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
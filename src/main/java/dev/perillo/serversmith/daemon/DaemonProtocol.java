@@ -0,0 +1,46 @@
+package dev.perillo.serversmith.daemon;
+
+import dev.perillo.serversmith.model.InstanceAvailability;
+import dev.perillo.serversmith.model.ServerState;
+import dev.perillo.serversmith.model.ServerType;
+import dev.perillo.serversmith.util.FileUtil;
+
+import java.nio.file.Path;
+
+// What the daemon and its clients agree on. The daemon listens on loopback only
+// and writes its port and a random token to INFO_FILE, readable by this user
+// alone; every request has to carry the token, so other local users and web
+// pages poking at localhost get nowhere.
+//
+// Instances are named in the "instance" query parameter, by location or name.
+//   GET  /instances                     JSON list of Instance
+//   POST /start?instance=               starts it with its configured memory
+//   POST /stop?instance=[&kill=true]    asks it to stop, or kills it
+//   POST /command?instance=             body is the console command
+//   GET  /log?instance=[&from=line]     console lines from 'from' on (default the last
+//                                       TAIL_LINES), then new ones as they come, each one
+//                                       as "<number>\t<text>"
+//   GET  /metrics?instance=             JSON Metrics
+//   POST /shutdown                      stops every server, then the daemon
+public final class DaemonProtocol {
+    public static final Path INFO_FILE = FileUtil.APP_DIR.resolve("daemon.json");
+    public static final String TOKEN_HEADER = "X-ServerSmith-Token";
+    public static final int TAIL_LINES = 100;
+
+    // Contents of INFO_FILE
+    public record Info(int port, String token, long pid) {
+    }
+
+    public record Instance(String name, String location, ServerType type, String version,
+            InstanceAvailability availability, ServerState state) {
+    }
+
+    // Latest sample, zeros if there is none yet. CPU is percent of one core, rss bytes,
+    // read and write bytes per second.
+    public record Metrics(ServerState state, long time, double cpu, long rss, int threads, double read,
+            double write, double tps, double mspt, long lagEvents) {
+    }
+
+    private DaemonProtocol() {
+    }
+}
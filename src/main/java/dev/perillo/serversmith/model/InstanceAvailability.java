@@ -0,0 +1,7 @@
+package dev.perillo.serversmith.model;
+
+public enum InstanceAvailability {
+    LOADING, // placeholder while instance.json is read
+    AVAILABLE,
+    OFFLINE // folder or metadata couldn't be reached, e.g. unplugged drive or dead mount
+}
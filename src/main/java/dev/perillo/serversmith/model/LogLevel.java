@@ -0,0 +1,40 @@
+package dev.perillo.serversmith.model;
+
+public enum LogLevel {
+    TRACE, DEBUG, INFO, WARN, ERROR, FATAL;
+
+    // Spellings seen in the wild, mapped onto our levels
+    private static final String[] NAMES = { "TRACE", "DEBUG", "INFO", "WARN", "WARNING", "ERROR", "SEVERE", "FATAL" };
+    private static final LogLevel[] LEVELS = { TRACE, DEBUG, INFO, WARN, WARN, ERROR, ERROR, FATAL };
+    private static final int HEADER_LIMIT = 96;
+
+    // Finds the level in the usual server log headers without allocating:
+    // "[12:00:00] [Server thread/INFO]: ...", "[12:00:00 WARN]: ...", "[main/ERROR] [mod/]: ..."
+    // Returns null for lines without one, e.g. stack trace continuations.
+    public static LogLevel parse(CharSequence line) {
+        int limit = Math.min(line.length(), HEADER_LIMIT);
+        for (int i = 0; i < limit - 1; i++) {
+            char c = line.charAt(i);
+            if (c != '/' && c != ' ' && c != '[') {
+                continue;
+            }
+            for (int n = 0; n < NAMES.length; n++) {
+                String name = NAMES[n];
+                int end = i + 1 + name.length();
+                if (end < limit && line.charAt(end) == ']' && matches(line, i + 1, name)) {
+                    return LEVELS[n];
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(CharSequence line, int offset, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (line.charAt(offset + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
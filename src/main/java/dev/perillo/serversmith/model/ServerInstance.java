@@ -17,6 +17,11 @@ public class ServerInstance {
     private Path location;
     @JsonIgnore
     private final BooleanProperty running = new SimpleBooleanProperty(false);
+    @JsonIgnore
+    private final ObjectProperty<ServerState> state = new SimpleObjectProperty<>(ServerState.STOPPED);
+    @JsonIgnore
+    private final ObjectProperty<InstanceAvailability> availability = new SimpleObjectProperty<>(
+            InstanceAvailability.AVAILABLE);
 
     public ServerInstance() {
     }
@@ -98,6 +103,36 @@ public class ServerInstance {
         return running;
     }
 
+    public ServerState getState() {
+        return state.get();
+    }
+
+    public void setState(ServerState state) {
+        this.state.set(state);
+        setRunning(state != ServerState.STOPPED);
+    }
+
+    public ObjectProperty<ServerState> stateProperty() {
+        return state;
+    }
+
+    public InstanceAvailability getAvailability() {
+        return availability.get();
+    }
+
+    public void setAvailability(InstanceAvailability availability) {
+        this.availability.set(availability);
+    }
+
+    public ObjectProperty<InstanceAvailability> availabilityProperty() {
+        return availability;
+    }
+
+    @JsonIgnore
+    public boolean isAvailable() {
+        return getAvailability() == InstanceAvailability.AVAILABLE;
+    }
+
     private int minMemory = 1024;
     private int maxMemory = 2048;
 
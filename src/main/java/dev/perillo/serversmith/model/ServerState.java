@@ -0,0 +1,8 @@
+package dev.perillo.serversmith.model;
+
+public enum ServerState {
+    STOPPED,
+    STARTING,
+    RUNNING,
+    STOPPING
+}
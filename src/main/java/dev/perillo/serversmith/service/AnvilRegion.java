@@ -0,0 +1,90 @@
+package dev.perillo.serversmith.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+// Anvil region files (.mca, also used for entities/ and poi/). An 8 KB header
+// holds 1024 chunk locations (3-byte sector offset, 1-byte sector count) and
+// 1024 timestamps; the chunks follow in 4 KB sectors, each starting with its
+// 4-byte length and compression type. Chunks too big for the file live in
+// c.<x>.<z>.mcc next to it and only leave that header behind here.
+final class AnvilRegion {
+    static final int SECTOR = 4096;
+    static final int CHUNKS = 1024;
+    private static final int HEADER = 2 * SECTOR;
+    private static final int MAX_SECTORS = 255;
+
+    @FunctionalInterface
+    interface ChunkConsumer {
+        // data[off, off + len) is the chunk as stored: length, compression type and payload
+        void accept(int slot, int timestamp, byte[] data, int off, int len) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface ChunkSource {
+        byte[] chunk(int slot) throws IOException;
+    }
+
+    private AnvilRegion() {
+    }
+
+    // Hands every chunk in the file to the consumer. Throws if the header doesn't make sense,
+    // callers then treat the file as plain bytes.
+    static void read(byte[] file, ChunkConsumer consumer) throws IOException {
+        if (file.length == 0) {
+            return; // The game creates them empty
+        }
+        if (file.length < HEADER) {
+            throw new IOException("Region file shorter than its header");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(file);
+        for (int slot = 0; slot < CHUNKS; slot++) {
+            int location = buffer.getInt(slot * 4);
+            if (location == 0) {
+                continue;
+            }
+            long offset = (long) (location >>> 8) * SECTOR;
+            int sectors = location & 0xFF;
+            if (offset < HEADER || sectors == 0 || offset + 5 > file.length) {
+                throw new IOException("Chunk " + slot + " points outside the region file");
+            }
+            int length = buffer.getInt((int) offset);
+            // Length counts the compression byte but not itself
+            if (length <= 0 || offset + 4 + length > file.length) {
+                throw new IOException("Chunk " + slot + " runs past the end of the region file");
+            }
+            consumer.accept(slot, buffer.getInt(SECTOR + slot * 4), file, (int) offset, 4 + length);
+        }
+    }
+
+    // Writes a region file with the given chunks packed one after another from sector 2.
+    // The layout differs from what the game left (no gaps), which it doesn't care about.
+    static void write(OutputStream out, int[] timestamps, int[] lengths, ChunkSource source) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        int sector = HEADER / SECTOR;
+        for (int slot = 0; slot < CHUNKS; slot++) {
+            if (lengths[slot] == 0) {
+                continue;
+            }
+            int sectors = (lengths[slot] + SECTOR - 1) / SECTOR;
+            header.putInt(slot * 4, sector << 8 | Math.min(sectors, MAX_SECTORS));
+            header.putInt(SECTOR + slot * 4, timestamps[slot]);
+            sector += sectors;
+        }
+        out.write(header.array());
+
+        byte[] padding = new byte[SECTOR];
+        for (int slot = 0; slot < CHUNKS; slot++) {
+            if (lengths[slot] == 0) {
+                continue;
+            }
+            byte[] chunk = source.chunk(slot);
+            out.write(chunk);
+            int rest = chunk.length % SECTOR;
+            if (rest != 0) {
+                out.write(padding, 0, SECTOR - rest);
+            }
+        }
+    }
+}
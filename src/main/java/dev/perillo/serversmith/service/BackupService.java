@@ -0,0 +1,428 @@
+package dev.perillo.serversmith.service;
+
+import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.model.ServerState;
+import dev.perillo.serversmith.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Incremental, deduplicated backups of an instance folder. Region files are
+// split into their chunks and every chunk is stored once in a PackStore, other
+// files in 4 MB pieces. Each file gets a small recipe blob listing its pieces,
+// and a snapshot is just the file list with one recipe per file, so a region
+// nobody visited costs nothing but its line in the list.
+// Files whose size and mtime match the previous snapshot aren't even opened,
+// which is what makes a backup of a quiet world take seconds.
+public class BackupService {
+    private static final Logger logger = LoggerFactory.getLogger(BackupService.class);
+    private static final int MAGIC = 0x53534231; // "SSB1"
+    private static final int FORMAT = 1;
+    private static final int PIECE_SIZE = 4 * 1024 * 1024;
+    private static final String EXTENSION = ".snap";
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")
+            .withZone(ZoneOffset.UTC);
+    private static final byte PLAIN = 0, REGION = 1;
+    private static final Duration SAVE_TIMEOUT = Duration.ofMinutes(2);
+    // Pace of a backup of a running server: enough for an incremental run to finish quickly
+    // without the server's own chunk saving and loading waiting on the disk
+    public static final long LIVE_BYTES_PER_SECOND = 32L * 1024 * 1024;
+    public static final long LIVE_OPS_PER_SECOND = 400;
+
+    public record Snapshot(String id, Instant created, int files, long size, long added) {
+    }
+
+    // One file in a snapshot, path relative to the instance with '/' separators
+    private record Entry(String path, byte kind, long mtime, long size, PackStore.Key recipe) {
+    }
+
+    private final Path source;
+    private final Path root;
+    private final Path snapshots;
+
+    public BackupService(Path instanceDir) {
+        this(instanceDir, FileUtil.getInstanceBackupDir(instanceDir));
+    }
+
+    public BackupService(Path instanceDir, Path root) {
+        this.source = instanceDir.toAbsolutePath().normalize();
+        this.root = root.toAbsolutePath().normalize();
+        this.snapshots = this.root.resolve("snapshots");
+    }
+
+    public Snapshot backup() throws IOException {
+        return backup(IoThrottle.UNLIMITED);
+    }
+
+    // The server's own "Saved the game" ("the world" in older versions), as the whole message
+    // after the header. A player saying it in chat ("<Steve> Saved the game") doesn't count,
+    // or the snapshot would start before the flush is done.
+    static boolean isSaveDone(String line) {
+        int header = line.indexOf("]: ");
+        if (header < 0) {
+            return false;
+        }
+        String message = line.substring(header + 3).strip();
+        return message.equals("Saved the game") || message.equals("Saved the world");
+    }
+
+    // Backs up a server while it keeps running. Autosave is switched off and the world flushed
+    // first, so no region file changes while we read it, and switched back on however it ends.
+    // A stopped server is simply backed up.
+    public synchronized Snapshot backup(ProcessService processes, ServerInstance instance, IoThrottle throttle)
+            throws IOException {
+        ServerState state = processes.getState(instance);
+        if (state == ServerState.STOPPED) {
+            return backup(throttle);
+        }
+        if (state != ServerState.RUNNING) {
+            throw new IOException(instance.getName() + " is " + state.name().toLowerCase()
+                    + ", back it up once it is running or stopped");
+        }
+        // Registered before the command so the reply can't slip past
+        CompletableFuture<String> saved = processes.awaitLog(instance, BackupService::isSaveDone);
+        processes.sendCommand(instance, "save-off");
+        try {
+            processes.sendCommand(instance, "save-all flush");
+            saved.get(SAVE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            return backup(throttle);
+        } catch (TimeoutException e) {
+            throw new IOException(instance.getName() + " did not finish saving within " + SAVE_TIMEOUT.toSeconds()
+                    + " seconds");
+        } catch (ExecutionException e) {
+            throw new IOException(instance.getName() + " stopped before it finished saving", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Backup interrupted", e);
+        } finally {
+            saved.cancel(false);
+            processes.sendCommand(instance, "save-on");
+        }
+    }
+
+    // Reads and new writes are paced by the throttle, hashing too since it keeps step with them
+    public synchronized Snapshot backup(IoThrottle throttle) throws IOException {
+        long start = System.nanoTime();
+        Instant created = Instant.now();
+        List<Snapshot> existing = list();
+        Map<String, Entry> previous = new HashMap<>();
+        if (!existing.isEmpty()) {
+            for (Entry entry : readEntries(existing.get(existing.size() - 1).id())) {
+                previous.put(entry.path(), entry);
+            }
+        }
+
+        List<Path> files = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                // Our own folder holds the backups and console history
+                boolean skip = dir.equals(source.resolve(".serversmith")) || dir.startsWith(root);
+                return skip ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !file.getFileName().toString().equals("session.lock")) {
+                    files.add(file);
+                    attributes.add(attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.warn("Skipping " + file + " in backup: " + e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        AtomicInteger changed = new AtomicInteger();
+        AtomicLong added = new AtomicLong();
+        List<Entry> entries = new ArrayList<>(files.size());
+        long size = 0;
+        try (PackStore store = new PackStore(root.resolve("packs"))) {
+            List<Future<Entry>> pending = new ArrayList<>(files.size());
+            try (ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+                for (int i = 0; i < files.size(); i++) {
+                    Path file = files.get(i);
+                    BasicFileAttributes attrs = attributes.get(i);
+                    String path = relative(file);
+                    Entry old = previous.get(path);
+                    if (old != null && old.size() == attrs.size() && old.mtime() == attrs.lastModifiedTime().toMillis()) {
+                        pending.add(CompletableFuture.completedFuture(old));
+                        continue;
+                    }
+                    pending.add(workers.submit(() -> {
+                        changed.incrementAndGet();
+                        return store(store, file, path, attrs, added, throttle);
+                    }));
+                }
+                for (int i = 0; i < pending.size(); i++) {
+                    Entry entry;
+                    try {
+                        entry = pending.get(i).get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof NoSuchFileException) {
+                            continue; // Deleted since the walk
+                        }
+                        // Unreadable (locked?), the last good copy is better than none
+                        logger.warn("Could not back up " + files.get(i) + ": " + e.getCause());
+                        entry = previous.get(relative(files.get(i)));
+                    }
+                    if (entry != null) {
+                        entries.add(entry);
+                        size += entry.size();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Backup interrupted", e);
+            }
+            // The snapshot may only point at data that is safely on disk
+            store.flush();
+        }
+
+        Snapshot snapshot = new Snapshot(newId(created), created, entries.size(), size, added.get());
+        writeSnapshot(snapshot, entries);
+        logger.info("Backup " + snapshot.id() + " of " + source + ": " + entries.size() + " files ("
+                + changed.get() + " read), " + FileUtil.formatSize(added.get()) + " new data in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return snapshot;
+    }
+
+    // Oldest first
+    public List<Snapshot> list() throws IOException {
+        List<Snapshot> result = new ArrayList<>();
+        if (!Files.isDirectory(snapshots)) {
+            return result;
+        }
+        try (var stream = Files.list(snapshots)) {
+            for (Path file : stream.filter(p -> p.getFileName().toString().endsWith(EXTENSION)).toList()) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    result.add(readHeader(in));
+                } catch (IOException e) {
+                    logger.warn("Ignoring unreadable backup " + file + ": " + e);
+                }
+            }
+        }
+        result.sort(Comparator.comparing(Snapshot::created).thenComparing(Snapshot::id));
+        return result;
+    }
+
+    // Writes the snapshot's files into target, which should be empty (or the instance folder
+    // with the server stopped). Files that aren't in the snapshot are left alone.
+    public synchronized void restore(String id, Path target) throws IOException {
+        long start = System.nanoTime();
+        List<Entry> entries = readEntries(id);
+        Path base = target.toAbsolutePath().normalize();
+        try (PackStore store = new PackStore(root.resolve("packs"))) {
+            for (Entry entry : entries) {
+                Path file = base.resolve(entry.path()).normalize();
+                if (!file.startsWith(base)) {
+                    throw new IOException("Backup entry " + entry.path() + " points outside " + base);
+                }
+                Files.createDirectories(file.getParent());
+                Path temp = file.resolveSibling(file.getFileName() + ".restore");
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), PIECE_SIZE)) {
+                    DataInputStream recipe = new DataInputStream(new ByteArrayInputStream(store.get(entry.recipe())));
+                    if (entry.kind() == REGION) {
+                        restoreRegion(store, recipe, out);
+                    } else {
+                        while (recipe.available() > 0) {
+                            out.write(store.get(PackStore.Key.read(recipe)));
+                        }
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                // Same mtime as the original, so a backup right after the restore reads nothing
+                Files.setLastModifiedTime(file, FileTime.fromMillis(entry.mtime()));
+            }
+        }
+        logger.info("Restored backup " + id + " to " + base + " (" + entries.size() + " files) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private Entry store(PackStore store, Path file, String path, BasicFileAttributes attrs, AtomicLong added,
+            IoThrottle throttle) throws IOException {
+        MessageDigest sha256 = PackStore.sha256();
+        ByteArrayOutputStream recipeBytes = new ByteArrayOutputStream();
+        DataOutputStream recipe = new DataOutputStream(recipeBytes);
+        byte kind = PLAIN;
+
+        if (path.endsWith(".mca")) {
+            throttle.acquire(attrs.size(), 1);
+            byte[] bytes = Files.readAllBytes(file);
+            try {
+                AnvilRegion.read(bytes, (slot, timestamp, data, off, len) -> {
+                    PackStore.Key key = PackStore.Key.hash(sha256, data, off, len);
+                    if (store.put(key, data, off, len)) {
+                        added.addAndGet(len);
+                        throttle.acquire(len, 0);
+                    }
+                    recipe.writeShort(slot);
+                    recipe.writeInt(timestamp);
+                    key.write(recipe);
+                });
+                kind = REGION;
+            } catch (IOException e) {
+                // Half-written or not really a region file, keep it byte for byte
+                logger.warn("Backing up " + file + " as a plain file: " + e.getMessage());
+                recipeBytes.reset();
+                // Already read and paid for
+                storePieces(store, new ByteArrayInputStream(bytes), bytes.length, sha256, recipe, added,
+                        IoThrottle.UNLIMITED);
+            }
+        } else {
+            try (InputStream in = Files.newInputStream(file)) {
+                storePieces(store, in, attrs.size(), sha256, recipe, added, throttle);
+            }
+        }
+
+        byte[] bytes = recipeBytes.toByteArray();
+        PackStore.Key key = PackStore.Key.hash(sha256, bytes, 0, bytes.length);
+        if (store.put(key, bytes, 0, bytes.length)) {
+            added.addAndGet(bytes.length);
+        }
+        // Size and mtime from before the read: if it changed while we read, the next backup reads it again
+        return new Entry(path, kind, attrs.lastModifiedTime().toMillis(), attrs.size(), key);
+    }
+
+    private static void storePieces(PackStore store, InputStream in, long size, MessageDigest sha256,
+            DataOutputStream recipe, AtomicLong added, IoThrottle throttle) throws IOException {
+        // Most files are small, don't allocate a whole piece for each
+        byte[] piece = new byte[(int) Math.max(1, Math.min(PIECE_SIZE, size))];
+        int n;
+        while (true) {
+            throttle.acquire(piece.length, 1);
+            if ((n = in.readNBytes(piece, 0, piece.length)) <= 0) {
+                break;
+            }
+            PackStore.Key key = PackStore.Key.hash(sha256, piece, 0, n);
+            if (store.put(key, piece, 0, n)) {
+                added.addAndGet(n);
+                throttle.acquire(n, 0);
+            }
+            key.write(recipe);
+        }
+    }
+
+    private static void restoreRegion(PackStore store, DataInputStream recipe, OutputStream out) throws IOException {
+        int[] timestamps = new int[AnvilRegion.CHUNKS];
+        int[] lengths = new int[AnvilRegion.CHUNKS];
+        PackStore.Key[] keys = new PackStore.Key[AnvilRegion.CHUNKS];
+        boolean any = false;
+        while (recipe.available() > 0) {
+            int slot = recipe.readShort();
+            timestamps[slot] = recipe.readInt();
+            keys[slot] = PackStore.Key.read(recipe);
+            lengths[slot] = store.length(keys[slot]);
+            any = true;
+        }
+        if (any) {
+            AnvilRegion.write(out, timestamps, lengths, slot -> store.get(keys[slot]));
+        }
+    }
+
+    private String relative(Path file) {
+        return source.relativize(file).toString().replace('\\', '/');
+    }
+
+    private String newId(Instant created) {
+        String id = ID_FORMAT.format(created);
+        String unique = id;
+        for (int i = 1; Files.exists(snapshots.resolve(unique + EXTENSION)); i++) {
+            unique = id + "-" + i;
+        }
+        return unique;
+    }
+
+    // Header in the clear so list() can stop after it, the file list deflated
+    private void writeSnapshot(Snapshot snapshot, List<Entry> entries) throws IOException {
+        Files.createDirectories(snapshots);
+        Path file = snapshots.resolve(snapshot.id() + EXTENSION);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeUTF(snapshot.id());
+            out.writeLong(snapshot.created().toEpochMilli());
+            out.writeInt(snapshot.files());
+            out.writeLong(snapshot.size());
+            out.writeLong(snapshot.added());
+            DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+            DataOutputStream body = new DataOutputStream(new BufferedOutputStream(deflater));
+            for (Entry entry : entries) {
+                body.writeUTF(entry.path());
+                body.writeByte(entry.kind());
+                body.writeLong(entry.mtime());
+                body.writeLong(entry.size());
+                entry.recipe().write(body);
+            }
+            body.flush();
+            deflater.finish();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Snapshot readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+            throw new IOException("Not a backup snapshot");
+        }
+        return new Snapshot(in.readUTF(), Instant.ofEpochMilli(in.readLong()), in.readInt(), in.readLong(),
+                in.readLong());
+    }
+
+    private List<Entry> readEntries(String id) throws IOException {
+        Path file = snapshots.resolve(id + EXTENSION);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            Snapshot snapshot = readHeader(in);
+            DataInputStream body = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in)));
+            List<Entry> entries = new ArrayList<>(snapshot.files());
+            for (int i = 0; i < snapshot.files(); i++) {
+                entries.add(new Entry(body.readUTF(), body.readByte(), body.readLong(), body.readLong(),
+                        PackStore.Key.read(body)));
+            }
+            return entries;
+        }
+    }
+}
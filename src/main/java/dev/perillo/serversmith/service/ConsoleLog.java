@@ -0,0 +1,587 @@
+package dev.perillo.serversmith.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// Append-only console history for one instance, split into segments of up to
+// SEGMENT_BYTES. Each segment "<firstLine>.log" has a sibling "<firstLine>.idx"
+// holding the end offset of every line as a 4-byte int, so any line can be
+// located without scanning. Reads never take the writer lock: sealed segments
+// are memory-mapped once, whole, and the active one is read with positional reads,
+// since it grows with every flush and mapping it would mean a new mapping each time.
+//
+// Line numbers are absolute and keep counting across server restarts. Once more
+// than MAX_SEGMENTS exist the oldest ones are deleted, which moves getFirstLine().
+// A sparse "<firstLine>.time" file records the wall-clock second at which lines
+// were committed, one entry per second at most, for time-range lookups.
+public class ConsoleLog {
+    private static final Logger logger = LoggerFactory.getLogger(ConsoleLog.class);
+    static final long SEGMENT_BYTES = 64L << 20;
+    static final int MAX_SEGMENTS = 32;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path dir;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile Segment[] segments;
+    private volatile long lineCount;
+
+    // Writer state, guarded by writeLock. A ReentrantLock rather than synchronized so
+    // virtual threads writing to the log don't pin their carrier during file I/O.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private FileChannel logOut;
+    private FileChannel indexOut;
+    private FileChannel timeOut;
+    private long lastStamp = -1;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    private int[] pendingEnds = new int[1024];
+    private int pendingCount;
+    private boolean closed;
+
+    private ConsoleLog(Path dir) {
+        this.dir = dir;
+    }
+
+    public static ConsoleLog open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        ConsoleLog log = new ConsoleLog(dir);
+        log.recover();
+        return log;
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    // First line still on disk
+    public long getFirstLine() {
+        return segments[0].firstLine;
+    }
+
+    // One past the last committed line
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    public String readLine(long line) {
+        Segment[] segs = segments;
+        if (line < segs[0].firstLine || line >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " not in log");
+        }
+        Segment segment = segs[findSegment(segs, line)];
+        int i = (int) (line - segment.firstLine);
+        int start = i == 0 ? 0 : segment.endOf(i - 1);
+        int end = segment.endOf(i) - 1; // drop the '\n'
+        byte[] bytes = new byte[end - start];
+        segment.read(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Epoch second the line was committed at, or -1 if unknown
+    public long getLineTime(long line) {
+        Segment[] segs = segments;
+        if (line < segs[0].firstLine || line >= lineCount) {
+            return -1;
+        }
+        for (int i = findSegment(segs, line); i >= 0; i--) {
+            long time = segs[i].timeOf((int) Math.min(Integer.MAX_VALUE, line - segs[i].firstLine));
+            if (time >= 0) {
+                return time;
+            }
+        }
+        return -1;
+    }
+
+    // First line committed at or after the given epoch second, getLineCount() if none
+    public long findLineAt(long epochSecond) {
+        for (Segment segment : segments) {
+            int at = segment.firstStampAtOrAfter(epochSecond);
+            if (at >= 0) {
+                return segment.firstLine + at;
+            }
+        }
+        return lineCount;
+    }
+
+    public List<String> readLines(long from, int max) {
+        long to = Math.min(lineCount, from + max);
+        List<String> result = new ArrayList<>((int) Math.max(0, to - from));
+        for (long line = Math.max(from, getFirstLine()); line < to; line++) {
+            result.add(readLine(line));
+        }
+        return result;
+    }
+
+    public void append(String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        append(bytes, 0, bytes.length);
+    }
+
+    // A line already in UTF-8, without its line break
+    public void append(byte[] bytes, int offset, int count) throws IOException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            int length = count + 1;
+
+            Segment active = segments[segments.length - 1];
+            long segmentSize = active.committedSize() + writeBuffer.position();
+            if (segmentSize + length > SEGMENT_BYTES && (active.lines > 0 || pendingCount > 0)) {
+                flush();
+                roll();
+                segmentSize = 0;
+            }
+
+            if (writeBuffer.remaining() < length) {
+                flush();
+            }
+            if (pendingCount == pendingEnds.length) {
+                pendingEnds = Arrays.copyOf(pendingEnds, pendingEnds.length * 2);
+            }
+            pendingEnds[pendingCount++] = (int) (segmentSize + length);
+            if (length > writeBuffer.capacity()) {
+                // Oversized line, skip the buffer
+                ByteBuffer direct = ByteBuffer.allocate(length).put(bytes, offset, count).put((byte) '\n').flip();
+                while (direct.hasRemaining()) {
+                    logOut.write(direct);
+                }
+                flush();
+            } else {
+                writeBuffer.put(bytes, offset, count).put((byte) '\n');
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Makes everything appended so far visible to readers
+    public void flush() throws IOException {
+        writeLock.lock();
+        try {
+            if (closed || pendingCount == 0) {
+                return;
+            }
+            writeBuffer.flip();
+            while (writeBuffer.hasRemaining()) {
+                logOut.write(writeBuffer);
+            }
+            writeBuffer.clear();
+
+            ByteBuffer index = ByteBuffer.allocate(pendingCount * 4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < pendingCount; i++) {
+                index.putInt(pendingEnds[i]);
+            }
+            index.flip();
+            while (index.hasRemaining()) {
+                indexOut.write(index);
+            }
+
+            Segment active = segments[segments.length - 1];
+            long now = System.currentTimeMillis() / 1000;
+            if (now != lastStamp) {
+                ByteBuffer stamp = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN)
+                        .putInt(active.lines).putLong(now).flip();
+                while (stamp.hasRemaining()) {
+                    timeOut.write(stamp);
+                }
+                active.stamp(active.lines, now);
+                lastStamp = now;
+            }
+            active.commit(pendingEnds, pendingCount);
+            lineCount = active.firstLine + active.lines;
+            pendingCount = 0;
+
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void close() {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            try {
+                flush();
+                logOut.close();
+                indexOut.close();
+                timeOut.close();
+                segments[segments.length - 1].closeTail();
+            } catch (IOException e) {
+                logger.error("Failed to close console log in " + dir, e);
+            }
+            closed = true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void roll() throws IOException {
+        logOut.close();
+        indexOut.close();
+        timeOut.close();
+        Segment sealed = segments[segments.length - 1];
+        sealed.seal();
+        sealed.closeTail();
+
+        Segment next = new Segment(dir, lineCount);
+        Segment[] segs = Arrays.copyOf(segments, segments.length + 1);
+        segs[segs.length - 1] = next;
+        int drop = Math.max(0, segs.length - MAX_SEGMENTS);
+        segments = Arrays.copyOfRange(segs, drop, segs.length);
+        for (int i = 0; i < drop; i++) {
+            try {
+                Files.deleteIfExists(segs[i].logPath);
+                Files.deleteIfExists(segs[i].indexPath);
+                Files.deleteIfExists(segs[i].timePath);
+            } catch (IOException e) {
+                logger.warn("Failed to delete old console segment " + segs[i].logPath, e);
+            }
+        }
+        lastStamp = -1;
+        openWriter(next);
+    }
+
+    private void recover() throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(".log"))
+                    .forEach(name -> {
+                        try {
+                            starts.add(Long.parseLong(name.substring(0, name.length() - 4)));
+                        } catch (NumberFormatException ignored) {
+                        }
+                    });
+        }
+        starts.sort(null);
+        if (starts.isEmpty()) {
+            starts.add(0L);
+        }
+
+        Segment[] segs = new Segment[starts.size()];
+        for (int i = 0; i < segs.length; i++) {
+            segs[i] = new Segment(dir, starts.get(i));
+            if (i < segs.length - 1) {
+                segs[i].openSealed();
+            } else {
+                segs[i].load();
+            }
+        }
+        segments = segs;
+        Segment active = segs[segs.length - 1];
+        lineCount = active.firstLine + active.lines;
+        openWriter(active);
+    }
+
+    private void openWriter(Segment segment) throws IOException {
+        logOut = FileChannel.open(segment.logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        indexOut = FileChannel.open(segment.indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        timeOut = FileChannel.open(segment.timePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static int findSegment(Segment[] segs, long line) {
+        int lo = 0, hi = segs.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segs[mid].firstLine <= line) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private static final class Segment {
+        final long firstLine;
+        final Path logPath;
+        final Path indexPath;
+        final Path timePath;
+        // Stamp i: lines from stampLine[i] on were committed at stampSecond[i] or later
+        volatile int[] stampLine = new int[16];
+        volatile long[] stampSecond = new long[16];
+        volatile int stamps;
+        // Active segments keep their line ends in memory, sealed ones read them from the mapped index
+        volatile int[] ends = new int[1024];
+        volatile MappedByteBuffer sealedIndex;
+        volatile int lines;
+        private volatile MappedByteBuffer data;
+        // Read side of the log while the segment is active
+        private volatile FileChannel tail;
+
+        Segment(Path dir, long firstLine) {
+            this.firstLine = firstLine;
+            String base = String.format("%020d", firstLine);
+            this.logPath = dir.resolve(base + ".log");
+            this.indexPath = dir.resolve(base + ".idx");
+            this.timePath = dir.resolve(base + ".time");
+        }
+
+        void stamp(int line, long second) {
+            int n = stamps;
+            if (n == stampLine.length) {
+                stampLine = Arrays.copyOf(stampLine, n * 2);
+                stampSecond = Arrays.copyOf(stampSecond, n * 2);
+            }
+            stampLine[n] = line;
+            stampSecond[n] = second;
+            stamps = n + 1;
+        }
+
+        long timeOf(int line) {
+            int n = stamps;
+            int[] at = stampLine;
+            long[] seconds = stampSecond;
+            int lo = 0, hi = n - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (at[mid] <= line) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found < 0 ? -1 : seconds[found];
+        }
+
+        int firstStampAtOrAfter(long second) {
+            int n = stamps;
+            int[] at = stampLine;
+            long[] seconds = stampSecond;
+            int lo = 0, hi = n - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (seconds[mid] >= second) {
+                    found = mid;
+                    hi = mid - 1;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return found < 0 ? -1 : at[found];
+        }
+
+        void loadStamps() throws IOException {
+            if (!Files.exists(timePath)) {
+                return;
+            }
+            ByteBuffer raw = ByteBuffer.wrap(Files.readAllBytes(timePath)).order(ByteOrder.LITTLE_ENDIAN);
+            while (raw.remaining() >= 12) {
+                int line = raw.getInt();
+                long second = raw.getLong();
+                if (line <= lines) {
+                    stamp(line, second);
+                }
+            }
+        }
+
+        int endOf(int i) {
+            int[] e = ends;
+            return e != null ? e[i] : sealedIndex.getInt(i * 4);
+        }
+
+        long committedSize() {
+            int n = lines;
+            return n == 0 ? 0 : endOf(n - 1);
+        }
+
+        void commit(int[] newEnds, int count) {
+            int[] current = ends;
+            if (lines + count > current.length) {
+                current = Arrays.copyOf(current, Math.max(current.length * 2, lines + count));
+            }
+            System.arraycopy(newEnds, 0, current, lines, count);
+            ends = current;
+            lines += count; // publishes the new ends to readers
+        }
+
+        void read(int start, byte[] into) {
+            if (ends != null) {
+                readTail(start, into);
+            } else {
+                data().get(start, into);
+            }
+        }
+
+        // Once sealed the size is final, one mapping serves every read from then on
+        private ByteBuffer data() {
+            MappedByteBuffer map = data;
+            if (map == null) {
+                synchronized (this) {
+                    map = data;
+                    if (map == null) {
+                        try (FileChannel ch = FileChannel.open(logPath, StandardOpenOption.READ)) {
+                            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, committedSize());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        data = map;
+                    }
+                }
+            }
+            return map;
+        }
+
+        private void readTail(int start, byte[] into) {
+            while (true) {
+                ByteBuffer buffer = ByteBuffer.wrap(into);
+                try {
+                    FileChannel ch = tailChannel();
+                    while (buffer.hasRemaining()) {
+                        if (ch.read(buffer, start + buffer.position()) < 0) {
+                            throw new IOException("Console log " + logPath + " is shorter than its index");
+                        }
+                    }
+                    return;
+                } catch (ClosedByInterruptException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ClosedChannelException e) {
+                    // Sealed meanwhile, or another reader was interrupted and took the channel down
+                    if (ends == null) {
+                        data().get(start, into);
+                        return;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        private synchronized FileChannel tailChannel() throws IOException {
+            FileChannel ch = tail;
+            if (ch == null || !ch.isOpen()) {
+                if (ends == null) {
+                    throw new ClosedChannelException(); // Sealed, read it mapped
+                }
+                ch = FileChannel.open(logPath, StandardOpenOption.READ);
+                tail = ch;
+            }
+            return ch;
+        }
+
+        synchronized void closeTail() {
+            if (tail != null) {
+                try {
+                    tail.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close " + logPath, e);
+                }
+                tail = null;
+            }
+        }
+
+        // Sealed segments were fully indexed when they rolled over, trust the index as is
+        void openSealed() throws IOException {
+            if (!Files.exists(indexPath)) {
+                load();
+            } else {
+                lines = (int) (Files.size(indexPath) / 4);
+                loadStamps();
+            }
+            seal();
+        }
+
+        void seal() throws IOException {
+            try (FileChannel ch = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+                MappedByteBuffer index = ch.map(FileChannel.MapMode.READ_ONLY, 0, (long) lines * 4);
+                index.order(ByteOrder.LITTLE_ENDIAN);
+                sealedIndex = index;
+            }
+            ends = null;
+        }
+
+        // Reads the index back and repairs it against the log after an unclean shutdown
+        void load() throws IOException {
+            long logSize = Files.exists(logPath) ? Files.size(logPath) : 0;
+            int count = 0;
+            int[] loaded = new int[1024];
+            if (Files.exists(indexPath)) {
+                ByteBuffer raw = ByteBuffer.wrap(Files.readAllBytes(indexPath)).order(ByteOrder.LITTLE_ENDIAN);
+                int previous = 0;
+                while (raw.remaining() >= 4) {
+                    int end = raw.getInt();
+                    if (end <= previous || end > logSize) {
+                        break;
+                    }
+                    if (count == loaded.length) {
+                        loaded = Arrays.copyOf(loaded, count * 2);
+                    }
+                    loaded[count++] = end;
+                    previous = end;
+                }
+            }
+
+            // Pick up lines that reached the log but not the index
+            long indexed = count == 0 ? 0 : loaded[count - 1];
+            if (logSize > indexed) {
+                try (FileChannel ch = FileChannel.open(logPath, StandardOpenOption.READ)) {
+                    MappedByteBuffer tail = ch.map(FileChannel.MapMode.READ_ONLY, indexed, logSize - indexed);
+                    for (int i = 0; i < tail.limit(); i++) {
+                        if (tail.get(i) == '\n') {
+                            if (count == loaded.length) {
+                                loaded = Arrays.copyOf(loaded, count * 2);
+                            }
+                            loaded[count++] = (int) (indexed + i + 1);
+                        }
+                    }
+                }
+            }
+
+            // Rewrite both files so they agree, dropping any half-written last line
+            long validSize = count == 0 ? 0 : loaded[count - 1];
+            long indexSize = Files.exists(indexPath) ? Files.size(indexPath) : -1;
+            if (validSize != logSize || indexSize != count * 4L) {
+                try (FileChannel ch = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+                    ch.truncate(validSize);
+                }
+                ByteBuffer index = ByteBuffer.allocate(count * 4).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < count; i++) {
+                    index.putInt(loaded[i]);
+                }
+                Files.write(indexPath, index.array());
+            }
+
+            ends = loaded;
+            lines = count;
+            loadStamps();
+        }
+    }
+}
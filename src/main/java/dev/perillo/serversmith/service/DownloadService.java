@@ -1,219 +1,183 @@
 package dev.perillo.serversmith.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import dev.perillo.serversmith.util.FileUtil;
 import javafx.application.Platform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class DownloadService {
     private static final Logger logger = LoggerFactory.getLogger(DownloadService.class);
+    private static final String VANILLA_MANIFEST = "https://piston-meta.mojang.com/mc/game/version_manifest_v2.json";
+    private static final String PAPER_PROJECT = "https://api.papermc.io/v2/projects/paper";
+    private static final String NEOFORGE_VERSIONS = "https://maven.neoforged.net/api/maven/versions/releases/net/neoforged/neoforge";
+    // How long a cached list is served before it's revalidated in the background
+    private static final Duration LIST_MAX_AGE = Duration.ofMinutes(10);
+    private static final Duration BUILDS_MAX_AGE = Duration.ofMinutes(5);
+    private static final Duration IMMUTABLE = Duration.ofDays(36500);
+
+    // Shared by every wizard so parsed lists outlive the dialog
+    private static final ManifestCache manifests = new ManifestCache(
+            HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build());
+
     private final HttpClient client = HttpClient.newBuilder()
             .followRedirects(HttpClient.Redirect.NORMAL)
             .build();
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final JarStore jarStore = new JarStore();
+
+    // Where to get a jar and the checksums its publisher lists for it, either may be null
+    public record DownloadTarget(String url, String sha1, String sha256) {
+    }
 
     public CompletableFuture<List<String>> fetchVanillaVersions() {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create("https://piston-meta.mojang.com/mc/game/version_manifest_v2.json"))
-                        .GET()
-                        .build();
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                JsonNode root = mapper.readTree(response.body());
-                List<String> versions = new ArrayList<>();
-                if (root.has("versions")) {
-                    for (JsonNode node : root.get("versions")) {
-                        if (node.get("type").asText().equals("release")) {
-                            versions.add(node.get("id").asText());
-                        }
-                    }
-                }
-                return versions;
-            } catch (Exception e) {
-                logger.error("Failed to fetch vanilla versions", e);
-                throw new RuntimeException(e);
-            }
+        return vanillaManifest().thenApply(VersionManifest::releases).exceptionally(e -> {
+            logger.error("Failed to fetch vanilla versions", e);
+            throw new RuntimeException(e);
         });
     }
 
+    private CompletableFuture<VersionManifest> vanillaManifest() {
+        return manifests.get(VANILLA_MANIFEST, LIST_MAX_AGE, ManifestReader::versionManifest);
+    }
+
     public CompletableFuture<List<String>> fetchPaperVersions() {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create("https://api.papermc.io/v2/projects/paper"))
-                        .GET()
-                        .build();
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                JsonNode root = mapper.readTree(response.body());
-                List<String> versions = new ArrayList<>();
-                if (root.has("versions")) {
-                    for (JsonNode node : root.get("versions")) {
-                        versions.add(node.asText());
-                    }
-                }
-                // Reverse to get latest first usually? Paper API lists oldest to newest.
-                return versions.reversed();
-            } catch (Exception e) {
-                logger.error("Failed to fetch paper versions", e);
-                throw new RuntimeException(e);
-            }
+        // Paper API lists oldest to newest
+        return manifests.get(PAPER_PROJECT, LIST_MAX_AGE,
+                body -> ManifestReader.stringArray(body, "versions").reversed()).exceptionally(e -> {
+            logger.error("Failed to fetch paper versions", e);
+            throw new RuntimeException(e);
         });
     }
 
-    // NeoForge versions are tricky, depends on how deep we want to go.
-    // For now, let's just return a static list or try to fetch from maven XML if
-    // possible?
-    // Let's stick to a simple list for NeoForge or skip version fetching for now if
-    // it's too complex without parsing XML.
-    // Actually, simple way:
-    // https://maven.neoforged.net/api/maven/versions/releases/net/neoforged/neoforge
+    // NeoForge versions come from their maven's version listing
     public CompletableFuture<List<String>> fetchNeoForgeVersions() {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(
-                                "https://maven.neoforged.net/api/maven/versions/releases/net/neoforged/neoforge"))
-                        .GET()
-                        .build();
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                JsonNode root = mapper.readTree(response.body());
-                List<String> versions = new ArrayList<>();
-                if (root.has("versions")) {
-                    for (JsonNode node : root.get("versions")) {
-                        versions.add(node.asText());
-                    }
-                }
-                return versions.reversed();
-            } catch (Exception e) {
-                logger.error("Failed to fetch neoforge versions", e);
-                // Fallback
-                return List.of("20.4.80-beta", "20.2.86");
-            }
+        return manifests.get(NEOFORGE_VERSIONS, LIST_MAX_AGE,
+                body -> ManifestReader.stringArray(body, "versions").reversed()).exceptionally(e -> {
+            logger.error("Failed to fetch neoforge versions", e);
+            // Fallback
+            return List.of("20.4.80-beta", "20.2.86");
         });
     }
 
     public CompletableFuture<Void> downloadFile(String url, Path destination, Consumer<Double> progress) {
+        return downloadFile(new DownloadTarget(url, null, null), destination, progress);
+    }
+
+    // Fetches into the shared jar store unless it already has this content, then links it into place
+    public CompletableFuture<Void> downloadFile(DownloadTarget target, Path destination, Consumer<Double> progress) {
         return CompletableFuture.runAsync(() -> {
             try {
-                // Check cache first? Prompt says "Cache downloaded jars".
-                String fileName = url.substring(url.lastIndexOf('/') + 1);
-                Path cachedFile = FileUtil.CACHE_DIR.resolve(fileName);
-
-                if (Files.exists(cachedFile)) {
-                    // Check size or something? For now assume valid if exists.
-                    logger.info("Using cached file: " + cachedFile);
-                    Files.createDirectories(destination.getParent());
-                    Files.copy(cachedFile, destination, StandardCopyOption.REPLACE_EXISTING);
-                    if (progress != null)
-                        Platform.runLater(() -> progress.accept(1.0));
-                    return;
+                Path object = jarStore.find(target.url(), target.sha1(), target.sha256());
+                if (object != null) {
+                    logger.info("Using cached file: " + object);
+                } else {
+                    object = downloadRanged(target, progress);
                 }
+                if (object == null) {
+                    HttpRequest request = HttpRequest.newBuilder().uri(URI.create(target.url())).GET().build();
+                    HttpResponse<InputStream> response = client.send(request,
+                            HttpResponse.BodyHandlers.ofInputStream());
+                    if (response.statusCode() != 200) {
+                        response.body().close();
+                        throw new IOException("HTTP " + response.statusCode() + " for " + target.url());
+                    }
 
-                Files.createDirectories(FileUtil.CACHE_DIR);
-                HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).GET().build();
-                HttpResponse<java.io.InputStream> response = client.send(request,
-                        HttpResponse.BodyHandlers.ofInputStream());
-
-                long totalBytes = response.headers().firstValueAsLong("content-length").orElse(-1L);
-                long readBytes = 0;
-
-                try (BufferedInputStream in = new BufferedInputStream(response.body());
-                        FileOutputStream out = new FileOutputStream(cachedFile.toFile())) {
-
-                    byte[] buffer = new byte[8192];
-                    int bytesRead;
-                    while ((bytesRead = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, bytesRead);
-                        readBytes += bytesRead;
-                        if (progress != null && totalBytes > 0) {
-                            double p = (double) readBytes / totalBytes;
-                            Platform.runLater(() -> progress.accept(p));
-                        }
+                    long totalBytes = response.headers().firstValueAsLong("content-length").orElse(-1L);
+                    try (InputStream in = response.body()) {
+                        object = jarStore.store(target.url(), in, target.sha1(), target.sha256(), readBytes -> {
+                            if (progress != null && totalBytes > 0) {
+                                double p = (double) readBytes / totalBytes;
+                                Platform.runLater(() -> progress.accept(p));
+                            }
+                        });
                     }
                 }
 
-                // Copy to destination
-                Files.createDirectories(destination.getParent());
-                Files.copy(cachedFile, destination, StandardCopyOption.REPLACE_EXISTING);
-
+                jarStore.materialize(object, destination);
+                if (progress != null)
+                    Platform.runLater(() -> progress.accept(1.0));
             } catch (Exception e) {
-                logger.error("Download failed: " + url, e);
+                logger.error("Download failed: " + target.url(), e);
                 throw new RuntimeException(e);
             }
         });
     }
 
-    public CompletableFuture<String> getVanillaDownloadUrl(String version) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create("https://piston-meta.mojang.com/mc/game/version_manifest_v2.json"))
-                        .GET()
-                        .build();
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                JsonNode root = mapper.readTree(response.body());
-                String versionUrl = null;
-                if (root.has("versions")) {
-                    for (JsonNode node : root.get("versions")) {
-                        if (node.get("id").asText().equals(version)) {
-                            versionUrl = node.get("url").asText();
-                            break;
-                        }
-                    }
-                }
+    // Parallel, resumable download for big files. Null if the server can't do ranges, then the
+    // caller streams it instead.
+    private Path downloadRanged(DownloadTarget target, Consumer<Double> progress) throws Exception {
+        Path part = jarStore.partFile(target.url());
+        RangedDownload download = new RangedDownload(client, target.url(), part);
+        AtomicLong lastReport = new AtomicLong();
+        boolean complete = download.run(received -> {
+            // Chunks report from several threads, only forward a few updates a second
+            long now = System.nanoTime();
+            long last = lastReport.get();
+            if (progress != null && now - last > 100_000_000L && lastReport.compareAndSet(last, now)) {
+                double p = (double) received / download.getLength();
+                Platform.runLater(() -> progress.accept(p));
+            }
+        });
+        if (!complete) {
+            return null;
+        }
+        try {
+            return jarStore.adopt(target.url(), part, target.sha1(), target.sha256());
+        } catch (IOException e) {
+            // Corrupt or changed upstream, nothing worth resuming
+            download.discard();
+            throw e;
+        }
+    }
 
-                if (versionUrl == null)
-                    throw new IllegalArgumentException("Version not found: " + version);
+    public CompletableFuture<String> getVanillaDownloadUrl(String version) {
+        return getVanillaDownload(version).thenApply(DownloadTarget::url);
+    }
 
-                request = HttpRequest.newBuilder().uri(URI.create(versionUrl)).GET().build();
-                response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                JsonNode versionMeta = mapper.readTree(response.body());
-                return versionMeta.get("downloads").get("server").get("url").asText();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+    // Mojang publishes the SHA-1 of every server jar
+    public CompletableFuture<DownloadTarget> getVanillaDownload(String version) {
+        return vanillaManifest().thenCompose(manifest -> {
+            VersionManifest.Version entry = manifest.get(version);
+            if (entry == null) {
+                throw new IllegalArgumentException("Version not found: " + version);
             }
+            // The URL contains the file's hash, so a cached copy never goes stale
+            return manifests.get(entry.url(), IMMUTABLE, body -> {
+                DownloadTarget target = ManifestReader.serverDownload(body);
+                if (target == null) {
+                    throw new IOException("No server download for " + version);
+                }
+                return target;
+            });
         });
     }
 
     public CompletableFuture<String> getPaperDownloadUrl(String version) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // 1. Get builds
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create("https://api.papermc.io/v2/projects/paper/versions/" + version + "/builds"))
-                        .GET()
-                        .build();
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                JsonNode root = mapper.readTree(response.body());
-
-                JsonNode builds = root.get("builds");
-                JsonNode latestBuild = builds.get(builds.size() - 1);
-                int buildNum = latestBuild.get("build").asInt();
-                String fileName = latestBuild.get("downloads").get("application").get("name").asText();
-
-                return "https://api.papermc.io/v2/projects/paper/versions/" + version + "/builds/" + buildNum
-                        + "/downloads/" + fileName;
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+        return getPaperDownload(version).thenApply(DownloadTarget::url);
+    }
+
+    // Paper publishes the SHA-256 of every build
+    public CompletableFuture<DownloadTarget> getPaperDownload(String version) {
+        String buildsUrl = PAPER_PROJECT + "/versions/" + version + "/builds";
+        return manifests.get(buildsUrl, BUILDS_MAX_AGE, body -> {
+            ManifestReader.PaperBuild latest = ManifestReader.latestPaperBuild(body);
+            if (latest == null) {
+                throw new IOException("No builds for Paper " + version);
             }
+            return new DownloadTarget(buildsUrl + "/" + latest.build() + "/downloads/" + latest.name(), null,
+                    latest.sha256());
         });
     }
 
@@ -223,4 +187,18 @@ public class DownloadService {
                 "https://maven.neoforged.net/releases/net/neoforged/neoforge/" + version + "/neoforge-" + version
                         + "-installer.jar");
     }
+
+    // Maven keeps a .sha1 next to every artifact, go without a checksum if it can't be fetched
+    public CompletableFuture<DownloadTarget> getNeoForgeInstaller(String version) {
+        return getNeoForgeInstallerUrl(version).thenCompose(url -> manifests.get(url + ".sha1", IMMUTABLE, body -> {
+            String sha1 = new String(body, StandardCharsets.US_ASCII).trim();
+            if (!sha1.matches("[0-9a-fA-F]{40}")) {
+                throw new IOException("Not a SHA-1: " + sha1);
+            }
+            return new DownloadTarget(url, sha1, null);
+        }).exceptionally(e -> {
+            logger.warn("No checksum for " + url, e);
+            return new DownloadTarget(url, null, null);
+        }));
+    }
 }
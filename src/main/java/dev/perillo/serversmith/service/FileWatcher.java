@@ -0,0 +1,245 @@
+package dev.perillo.serversmith.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// One WatchService and one thread for every directory the app keeps an eye on.
+// Events are collected per subscriber and handed over once the directory has
+// been quiet for DEBOUNCE (or MAX_DELAY has passed, for files that never stop
+// changing like logs), with repeated events for the same file folded into one.
+// Listeners run on the watcher thread and must not block.
+public class FileWatcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FileWatcher.class);
+    private static final long DEBOUNCE_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long MAX_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public enum Kind {
+        CREATED, MODIFIED, DELETED,
+        // Events were lost (or the directory itself went away), the subscriber has to list it again
+        OVERFLOW
+    }
+
+    public record Change(Path path, Kind kind) {
+    }
+
+    public final class Subscription implements Closeable {
+        private final Path dir;
+        private final Consumer<List<Change>> listener;
+        // Pending changes by file, in the order they first showed up
+        private final Map<Path, Kind> pending = new LinkedHashMap<>();
+        private long firstEvent, lastEvent;
+
+        private Subscription(Path dir, Consumer<List<Change>> listener) {
+            this.dir = dir;
+            this.listener = listener;
+        }
+
+        @Override
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+
+    private final WatchService service;
+    private final Thread thread;
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+    private final Map<WatchKey, List<Subscription>> subscriptions = new HashMap<>();
+
+    public FileWatcher() {
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            // Everything still works, it just won't notice outside changes
+            logger.warn("File watching is not available: " + e);
+            watchService = null;
+        }
+        this.service = watchService;
+        this.thread = new Thread(this::run, "file-watcher");
+        thread.setDaemon(true);
+        if (service != null) {
+            thread.start();
+        }
+    }
+
+    // Watches the files directly in dir (not subdirectories). Close the subscription to stop.
+    public Subscription watch(Path dir, Consumer<List<Change>> listener) {
+        Subscription subscription = new Subscription(dir.toAbsolutePath().normalize(), listener);
+        if (service == null) {
+            return subscription;
+        }
+        try {
+            synchronized (this) {
+                WatchKey key = keys.get(subscription.dir);
+                if (key == null || !key.isValid()) {
+                    key = subscription.dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    keys.put(subscription.dir, key);
+                }
+                subscriptions.computeIfAbsent(key, k -> new ArrayList<>()).add(subscription);
+            }
+        } catch (IOException | ClosedWatchServiceException e) {
+            logger.warn("Cannot watch " + dir + ": " + e);
+        }
+        return subscription;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        WatchKey key = keys.get(subscription.dir);
+        if (key == null) {
+            return;
+        }
+        List<Subscription> list = subscriptions.get(key);
+        if (list != null && list.remove(subscription) && list.isEmpty()) {
+            // Last one out, stop watching the directory
+            subscriptions.remove(key);
+            keys.remove(subscription.dir);
+            key.cancel();
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                long next = nextFlush();
+                WatchKey key = next == Long.MAX_VALUE ? service.take()
+                        : service.poll(Math.max(0, next - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    collect(key);
+                }
+                flush();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private synchronized void collect(WatchKey key) {
+        long now = System.nanoTime();
+        List<WatchEvent<?>> events = key.pollEvents();
+        boolean valid = key.reset();
+        List<Subscription> list = subscriptions.get(key);
+        if (list == null) {
+            return;
+        }
+        Path dir = (Path) key.watchable();
+        for (Subscription subscription : list) {
+            for (WatchEvent<?> event : events) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    merge(subscription, dir, Kind.OVERFLOW, now);
+                } else {
+                    Path file = dir.resolve((Path) event.context());
+                    Kind kind = event.kind() == StandardWatchEventKinds.ENTRY_CREATE ? Kind.CREATED
+                            : event.kind() == StandardWatchEventKinds.ENTRY_DELETE ? Kind.DELETED : Kind.MODIFIED;
+                    merge(subscription, file, kind, now);
+                }
+            }
+            if (!valid) {
+                // Directory deleted or unmounted
+                merge(subscription, dir, Kind.OVERFLOW, now);
+            }
+        }
+        if (!valid) {
+            // Subscriptions stay until flush() has delivered the OVERFLOW
+            keys.remove(dir, key);
+        }
+    }
+
+    private static void merge(Subscription subscription, Path file, Kind kind, long now) {
+        if (subscription.pending.isEmpty()) {
+            subscription.firstEvent = now;
+        }
+        subscription.lastEvent = now;
+        Kind previous = subscription.pending.get(file);
+        if (previous == null || previous == Kind.OVERFLOW) {
+            subscription.pending.put(file, previous == null ? kind : previous);
+        } else if (previous == Kind.CREATED && kind == Kind.DELETED) {
+            // Came and went before anyone looked, e.g. a temp file
+            subscription.pending.remove(file);
+        } else if (previous == Kind.DELETED && kind == Kind.CREATED) {
+            // Replaced, as an atomic save does
+            subscription.pending.put(file, Kind.MODIFIED);
+        } else if (previous == Kind.MODIFIED && kind == Kind.DELETED) {
+            subscription.pending.put(file, Kind.DELETED);
+        }
+        // CREATED then MODIFIED is still just CREATED
+    }
+
+    private synchronized long nextFlush() {
+        long next = Long.MAX_VALUE;
+        for (List<Subscription> list : subscriptions.values()) {
+            for (Subscription subscription : list) {
+                if (!subscription.pending.isEmpty()) {
+                    next = Math.min(next, due(subscription));
+                }
+            }
+        }
+        return next;
+    }
+
+    private static long due(Subscription subscription) {
+        return Math.min(subscription.lastEvent + DEBOUNCE_NANOS, subscription.firstEvent + MAX_DELAY_NANOS);
+    }
+
+    private void flush() {
+        long now = System.nanoTime();
+        List<Subscription> ready = new ArrayList<>();
+        List<List<Change>> batches = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Map.Entry<WatchKey, List<Subscription>>> it = subscriptions.entrySet().iterator(); it
+                    .hasNext();) {
+                Map.Entry<WatchKey, List<Subscription>> entry = it.next();
+                for (Subscription subscription : entry.getValue()) {
+                    if (!subscription.pending.isEmpty() && due(subscription) - now <= 0) {
+                        List<Change> changes = new ArrayList<>(subscription.pending.size());
+                        subscription.pending.forEach((file, kind) -> changes.add(new Change(file, kind)));
+                        subscription.pending.clear();
+                        ready.add(subscription);
+                        batches.add(changes);
+                    }
+                }
+                if (!entry.getKey().isValid() && entry.getValue().stream().allMatch(sub -> sub.pending.isEmpty())) {
+                    it.remove();
+                }
+            }
+        }
+        // Outside the lock, listeners may subscribe or unsubscribe
+        for (int i = 0; i < ready.size(); i++) {
+            try {
+                ready.get(i).listener.accept(batches.get(i));
+            } catch (RuntimeException e) {
+                logger.error("File watch listener for " + ready.get(i).dir + " failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (service == null) {
+            return;
+        }
+        try {
+            service.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close file watcher", e);
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package dev.perillo.serversmith.service;
+
+import dev.perillo.serversmith.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Single-file export of an instance folder for moving it to another machine.
+// Files are cut into 1 MB blocks that are deflated (and on import inflated and
+// checked) in parallel, while one thread reads and writes in order; at most a
+// few blocks per core are in flight, so memory stays flat however big the world.
+//
+// Layout: header, then per entry a record (path, mtime, size) followed by its
+// blocks (raw length, stored length, method, CRC32C of the raw bytes, data),
+// then an index of all entries with their record offsets and a fixed trailer
+// pointing at it. The index is what lets list() and selective extraction skip
+// straight to the files they want.
+public class InstanceArchive {
+    private static final Logger logger = LoggerFactory.getLogger(InstanceArchive.class);
+    private static final int MAGIC = 0x53534131; // "SSA1"
+    private static final int FORMAT = 1;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int TRAILER = 8 + 4;
+    private static final byte FILE = 0, DIRECTORY = 1;
+    private static final byte STORED = 0, DEFLATED = 1;
+    public static final String EXTENSION = ".ssar";
+
+    public enum Level {
+        FASTEST(Deflater.BEST_SPEED), DEFAULT(Deflater.DEFAULT_COMPRESSION), SMALLEST(Deflater.BEST_COMPRESSION);
+
+        private final int deflaterLevel;
+
+        Level(int deflaterLevel) {
+            this.deflaterLevel = deflaterLevel;
+        }
+    }
+
+    // Path relative to the instance with '/' separators
+    public record Entry(String path, boolean directory, long mtime, long size, long offset) {
+    }
+
+    public record Result(int files, long size, long archived) {
+    }
+
+    private final int parallelism;
+
+    public InstanceArchive() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public InstanceArchive(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // Writes the instance folder (minus its local backups) to archive. The server should be
+    // stopped, a file that shrinks while we read it fails the export.
+    public Result export(Path instanceDir, Path archive, Level level) throws IOException {
+        long start = System.nanoTime();
+        Path source = instanceDir.toAbsolutePath().normalize();
+        Path target = archive.toAbsolutePath().normalize();
+        Path skip = source.resolve(".serversmith").resolve("backups");
+        List<Path> paths = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(skip)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!dir.equals(source)) {
+                    paths.add(dir);
+                    attributes.add(attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !file.equals(target)
+                        && !file.getFileName().toString().equals("session.lock")) {
+                    paths.add(file);
+                    attributes.add(attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".part");
+        List<Entry> entries = new ArrayList<>(paths.size());
+        int files = 0;
+        long size = 0;
+        long archived;
+        ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(level.deflaterLevel, true));
+        try (CountingOutputStream counter = new CountingOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE));
+                DataOutputStream out = new DataOutputStream(counter);
+                Pipeline<byte[]> pipeline = new Pipeline<>(parallelism)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            for (int i = 0; i < paths.size(); i++) {
+                Path path = paths.get(i);
+                BasicFileAttributes attrs = attributes.get(i);
+                String name = source.relativize(path).toString().replace('\\', '/');
+                boolean directory = attrs.isDirectory();
+                long mtime = attrs.lastModifiedTime().toMillis();
+                long length = directory ? 0 : attrs.size();
+                // The record goes through the pipeline too, so it lands in front of its own blocks
+                pipeline.done(null, ignored -> {
+                    entries.add(new Entry(name, directory, mtime, length, counter.count));
+                    out.writeByte(directory ? DIRECTORY : FILE);
+                    out.writeUTF(name);
+                    out.writeLong(mtime);
+                    out.writeLong(length);
+                });
+                if (directory) {
+                    continue;
+                }
+                files++;
+                size += length;
+                try (InputStream in = Files.newInputStream(path)) {
+                    for (long left = length; left > 0; ) {
+                        byte[] block = new byte[(int) Math.min(BLOCK_SIZE, left)];
+                        if (in.readNBytes(block, 0, block.length) < block.length) {
+                            throw new IOException(path + " changed while it was being exported");
+                        }
+                        left -= block.length;
+                        pipeline.submit(() -> deflate(deflaters.get(), block), out::write);
+                    }
+                }
+            }
+            pipeline.drain();
+
+            long indexOffset = counter.count;
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeByte(entry.directory() ? DIRECTORY : FILE);
+                out.writeUTF(entry.path());
+                out.writeLong(entry.mtime());
+                out.writeLong(entry.size());
+                out.writeLong(entry.offset());
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+            out.flush();
+            archived = counter.count;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        Result result = new Result(files, size, archived);
+        logger.info("Exported " + source + " to " + target + ": " + files + " files, "
+                + FileUtil.formatSize(size) + " -> "
+                + FileUtil.formatSize(archived) + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return result;
+    }
+
+    // Everything in the archive, in the order it was written
+    public static List<Entry> list(Path archive) throws IOException {
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            return readIndex(channel, archive);
+        }
+    }
+
+    public Result extract(Path archive, Path target) throws IOException {
+        return extract(archive, target, path -> true);
+    }
+
+    // Extracts the entries whose path matches into target, checking every block against its
+    // checksum. Skipped entries aren't read at all. A file is only moved into place once all
+    // its blocks checked out.
+    public Result extract(Path archive, Path target, Predicate<String> include) throws IOException {
+        long start = System.nanoTime();
+        Path base = target.toAbsolutePath().normalize();
+        int files = 0;
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+                Pipeline<byte[]> pipeline = new Pipeline<>(parallelism)) {
+            List<Entry> entries = new ArrayList<>(readIndex(channel, archive));
+            entries.sort(Comparator.comparingLong(Entry::offset));
+            long archived = channel.size();
+            ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+            List<Entry> directories = new ArrayList<>();
+            FileOutput output = new FileOutput();
+            DataInputStream in = null;
+            long position = -1;
+            try {
+                for (Entry entry : entries) {
+                    if (!include.test(entry.path())) {
+                        continue;
+                    }
+                    Path path = base.resolve(entry.path()).normalize();
+                    if (!path.startsWith(base) || path.equals(base)) {
+                        throw new IOException("Archive entry " + entry.path() + " points outside " + base);
+                    }
+                    if (position != entry.offset()) {
+                        // Not right after the last one we read, jump to it
+                        in = new DataInputStream(new BufferedInputStream(
+                                Channels.newInputStream(channel.position(entry.offset())), BUFFER_SIZE));
+                    }
+                    readRecord(in, entry, archive);
+                    position = entry.offset() + 1 + utfLength(entry.path()) + 16;
+                    if (entry.directory()) {
+                        Files.createDirectories(path);
+                        directories.add(entry);
+                        continue;
+                    }
+                    files++;
+                    size += entry.size();
+                    pipeline.done(null, ignored -> output.open(path));
+                    int number = 0;
+                    for (long left = entry.size(); left > 0; number++) {
+                        int rawLength = in.readInt();
+                        int storedLength = in.readInt();
+                        byte method = in.readByte();
+                        int crc = in.readInt();
+                        if (rawLength <= 0 || rawLength > BLOCK_SIZE || rawLength > left || storedLength < 0
+                                || storedLength > BLOCK_SIZE || method != STORED && method != DEFLATED) {
+                            throw new IOException("Corrupt block " + number + " of " + entry.path() + " in "
+                                    + archive);
+                        }
+                        byte[] stored = new byte[storedLength];
+                        in.readFully(stored);
+                        position += 13 + storedLength;
+                        left -= rawLength;
+                        String what = "block " + number + " of " + entry.path();
+                        pipeline.submit(() -> inflate(inflaters.get(), stored, method, rawLength, crc, what),
+                                output::write);
+                    }
+                    pipeline.done(null, ignored -> output.finish(entry.mtime()));
+                }
+                pipeline.drain();
+            } catch (EOFException e) {
+                throw new IOException(archive + " is truncated", e);
+            } finally {
+                output.abort();
+            }
+            // Last, writing their contents bumped the mtimes
+            for (Entry directory : directories) {
+                Files.setLastModifiedTime(base.resolve(directory.path()), FileTime.fromMillis(directory.mtime()));
+            }
+            logger.info("Extracted " + files + " files (" + FileUtil.formatSize(size)
+                    + ") from " + archive + " to " + base + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return new Result(files, size, archived);
+        }
+    }
+
+    // Block as written: header and, if deflating saved anything, the deflated bytes
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        CRC32C crc = new CRC32C();
+        crc.update(raw);
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        // No bigger than the input: if it doesn't fit, it doesn't compress and we store it
+        byte[] deflated = new byte[raw.length];
+        int length = 0;
+        while (!deflater.finished() && length < deflated.length) {
+            length += deflater.deflate(deflated, length, deflated.length - length);
+        }
+        boolean store = !deflater.finished();
+        byte[] data = store ? raw : deflated;
+        int dataLength = store ? raw.length : length;
+        ByteBuffer block = ByteBuffer.allocate(13 + dataLength);
+        block.putInt(raw.length);
+        block.putInt(dataLength);
+        block.put(store ? STORED : DEFLATED);
+        block.putInt((int) crc.getValue());
+        block.put(data, 0, dataLength);
+        return block.array();
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] stored, byte method, int rawLength, int expected,
+            String what) throws IOException {
+        byte[] raw = stored;
+        if (method == DEFLATED) {
+            raw = new byte[rawLength];
+            inflater.reset();
+            inflater.setInput(stored);
+            try {
+                int length = 0;
+                while (length < rawLength && !inflater.finished()) {
+                    int n = inflater.inflate(raw, length, rawLength - length);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += n;
+                }
+                if (length != rawLength) {
+                    throw new IOException("Length mismatch in " + what);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt " + what, e);
+            }
+        } else if (stored.length != rawLength) {
+            throw new IOException("Length mismatch in " + what);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(raw);
+        if ((int) crc.getValue() != expected) {
+            throw new IOException("Checksum mismatch in " + what);
+        }
+        return raw;
+    }
+
+    private static List<Entry> readIndex(FileChannel channel, Path archive) throws IOException {
+        long length = channel.size();
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+        if (length < 8 + TRAILER || channel.read(trailer, length - TRAILER) != TRAILER
+                || trailer.getInt(8) != MAGIC) {
+            throw new IOException(archive + " is not an instance archive, or it is incomplete");
+        }
+        long indexOffset = trailer.getLong(0);
+        if (indexOffset < 8 || indexOffset > length - TRAILER) {
+            throw new IOException(archive + " has a corrupt index");
+        }
+        ByteBuffer header = ByteBuffer.allocate(8);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT) {
+            throw new IOException(archive + " was written by an unsupported version");
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(indexOffset)), BUFFER_SIZE));
+        int count = in.readInt();
+        List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(count, 1 << 20)));
+        for (int i = 0; i < count; i++) {
+            boolean directory = in.readByte() == DIRECTORY;
+            entries.add(new Entry(in.readUTF(), directory, in.readLong(), in.readLong(), in.readLong()));
+        }
+        return entries;
+    }
+
+    // The record in front of the blocks repeats the index entry, a mismatch means a bad offset
+    private static void readRecord(DataInputStream in, Entry entry, Path archive) throws IOException {
+        byte kind = in.readByte();
+        String path = in.readUTF();
+        long mtime = in.readLong();
+        long size = in.readLong();
+        if ((kind == DIRECTORY) != entry.directory() || !path.equals(entry.path()) || mtime != entry.mtime()
+                || size != entry.size()) {
+            throw new IOException("Index of " + archive + " does not match its contents at " + entry.path());
+        }
+    }
+
+    // Bytes writeUTF takes for s, length prefix included
+    private static int utfLength(String s) {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+        }
+        return length;
+    }
+
+    // File being extracted: written under a temporary name, moved into place when complete
+    private static final class FileOutput {
+        private Path path;
+        private Path temp;
+        private OutputStream out;
+
+        void open(Path file) throws IOException {
+            Files.createDirectories(file.getParent());
+            path = file;
+            temp = file.resolveSibling(file.getFileName() + ".part");
+            out = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE);
+        }
+
+        void write(byte[] data) throws IOException {
+            out.write(data);
+        }
+
+        void finish(long mtime) throws IOException {
+            out.close();
+            out = null;
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(mtime));
+        }
+
+        // Drops a half-written file after a failure
+        void abort() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Sink<T> {
+        void accept(T value) throws IOException;
+    }
+
+    // Runs tasks on a fork-join pool and hands their results to sinks on the calling thread,
+    // strictly in submission order. Submitting blocks while WINDOW tasks per worker are
+    // outstanding, which is what bounds memory.
+    private static final class Pipeline<T> implements AutoCloseable {
+        private static final int WINDOW = 4;
+
+        private record Step<T>(Future<T> result, Sink<T> sink) {
+        }
+
+        private final ForkJoinPool pool;
+        private final int window;
+        private final ArrayDeque<Step<T>> steps = new ArrayDeque<>();
+
+        Pipeline(int parallelism) {
+            pool = new ForkJoinPool(parallelism);
+            window = parallelism * WINDOW;
+        }
+
+        void submit(Callable<T> task, Sink<T> sink) throws IOException {
+            while (steps.size() >= window) {
+                next();
+            }
+            steps.add(new Step<>(pool.submit(task), sink));
+        }
+
+        // Runs the sink in turn with a value that needs no work
+        void done(T value, Sink<T> sink) throws IOException {
+            if (steps.isEmpty()) {
+                sink.accept(value);
+            } else {
+                steps.add(new Step<>(CompletableFuture.completedFuture(value), sink));
+            }
+        }
+
+        void drain() throws IOException {
+            while (!steps.isEmpty()) {
+                next();
+            }
+        }
+
+        private void next() throws IOException {
+            Step<T> step = steps.poll();
+            T value;
+            try {
+                value = step.result().get();
+            } catch (ExecutionException e) {
+                // Fork-join wraps checked exceptions from a Callable, dig ours out
+                for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof IOException io) {
+                        throw io;
+                    }
+                }
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted");
+            }
+            step.sink().accept(value);
+        }
+
+        @Override
+        public void close() {
+            for (Step<T> step : steps) {
+                step.result().cancel(false);
+            }
+            steps.clear();
+            pool.close();
+        }
+    }
+}
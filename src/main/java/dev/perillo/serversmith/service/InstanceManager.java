@@ -1,9 +1,13 @@
 package dev.perillo.serversmith.service;
 
 import dev.perillo.serversmith.model.AppConfig;
+import dev.perillo.serversmith.model.InstanceAvailability;
 import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.model.ServerType;
 import dev.perillo.serversmith.util.FileUtil;
 import dev.perillo.serversmith.util.JsonUtil;
+import javafx.application.Platform;
+import javafx.beans.Observable;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import org.slf4j.Logger;
@@ -13,18 +17,61 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class InstanceManager {
     private static final Logger logger = LoggerFactory.getLogger(InstanceManager.class);
-    private final ObservableList<ServerInstance> instances = FXCollections.observableArrayList();
+    private static final Duration SCAN_TIMEOUT = Duration.ofSeconds(3);
+    private static final Path SNAPSHOT_FILE = FileUtil.APP_DIR.resolve("instances.snapshot");
+    // Availability changes redraw the sidebar entry, e.g. a placeholder going offline
+    private final ObservableList<ServerInstance> instances = FXCollections
+            .observableArrayList(instance -> new Observable[] { instance.availabilityProperty() });
     private AppConfig config;
+    // instance.json mtime per instance path, as of the last time we read or wrote it
+    private final Map<String, Long> metadataMtimes = new ConcurrentHashMap<>();
+    private final AtomicBoolean snapshotPending = new AtomicBoolean();
+    private final FileWatcher fileWatcher;
+    // Watch on each instance's .serversmith folder, by instance path
+    private final Map<String, FileWatcher.Subscription> watches = new ConcurrentHashMap<>();
+    // Everything touching the list or the instances in it runs here
+    private final Consumer<Runnable> stateExecutor;
 
-    public InstanceManager() {
-        loadConfig();
-        scanInstances();
+    public InstanceManager(FileWatcher fileWatcher) {
+        this(fileWatcher, Platform::runLater);
+    }
+
+    public InstanceManager(FileWatcher fileWatcher, Consumer<Runnable> stateExecutor) {
+        this.fileWatcher = fileWatcher;
+        this.stateExecutor = stateExecutor;
+        InstanceSnapshot snapshot = InstanceSnapshot.read(SNAPSHOT_FILE);
+        if (snapshot != null && snapshot.configMtime == InstanceSnapshot.mtime(FileUtil.CONFIG_FILE)) {
+            // config.json hasn't been touched since the snapshot, no need to parse it
+            config = new AppConfig();
+            config.setDefaultBaseDirectory(snapshot.defaultBaseDirectory);
+            Set<String> known = new HashSet<>();
+            for (InstanceSnapshot.Entry entry : snapshot.entries) {
+                known.add(entry.location().toString());
+            }
+            config.setKnownInstances(known);
+        } else {
+            loadConfig();
+            // Stale or missing, record the config we just parsed
+            scheduleSnapshot();
+        }
+        scanInstances(snapshot);
     }
 
     private void loadConfig() {
@@ -48,35 +95,238 @@ public class InstanceManager {
         } catch (IOException e) {
             logger.error("Failed to save config", e);
         }
+        scheduleSnapshot();
     }
 
-    private void scanInstances() {
+    // Instances from the snapshot are listed as they were last time, everything else as a
+    // placeholder. Each one is then checked in parallel, so one slow or dead mount can't hold
+    // up startup or the other instances; instance.json is only parsed again if its mtime moved.
+    private void scanInstances(InstanceSnapshot snapshot) {
         instances.clear();
         if (config.getKnownInstances() == null)
             return;
 
-        Iterator<String> iterator = config.getKnownInstances().iterator();
-        while (iterator.hasNext()) {
-            String pathStr = iterator.next();
-            Path path = Paths.get(pathStr);
-            if (!Files.exists(path)) {
-                // Keep it? Or remove it? Maybe user unplugged a drive.
-                // Let's keep it for now but mark valid? Or just don't load.
-                // For now, let's skip loading.
-                continue;
+        Map<String, InstanceSnapshot.Entry> cached = new HashMap<>();
+        if (snapshot != null) {
+            for (InstanceSnapshot.Entry entry : snapshot.entries) {
+                if (entry.instance() != null) {
+                    cached.put(entry.location().toString(), entry);
+                }
+            }
+        }
+
+        for (String pathStr : config.getKnownInstances()) {
+            listInstance(pathStr, cached.get(pathStr));
+        }
+    }
+
+    // Listed right away, as in the snapshot or as a placeholder, then read in the background
+    private void listInstance(String pathStr, InstanceSnapshot.Entry entry) {
+        Path path = Paths.get(pathStr);
+        ServerInstance shown;
+        if (entry != null) {
+            shown = entry.instance();
+            metadataMtimes.put(pathStr, entry.metadataMtime());
+        } else {
+            shown = new ServerInstance(
+                    path.getFileName() != null ? path.getFileName().toString() : pathStr, ServerType.CUSTOM, "",
+                    path);
+            shown.setAvailability(InstanceAvailability.LOADING);
+        }
+        instances.add(shown);
+
+        CompletableFuture<ServerInstance> load = new CompletableFuture<>();
+        Thread.ofVirtual().name("scan-" + shown.getName()).start(() -> {
+            try {
+                long mtime = InstanceSnapshot.mtime(FileUtil.getInstanceMetadataPath(path));
+                ServerInstance loaded = shown;
+                if (entry == null || mtime != entry.metadataMtime()) {
+                    loaded = loadInstance(path);
+                    // The mtime from before the read, if it changes again meanwhile we just read it next time too
+                    metadataMtimes.put(pathStr, mtime);
+                }
+                // The mount answered, from here on changes are pushed to us
+                watchInstance(pathStr, path);
+                load.complete(loaded);
+            } catch (Throwable t) {
+                load.completeExceptionally(t);
+            }
+        });
+        // A hung mount never answers, give up on it but keep listening in case it comes back
+        load.copy().orTimeout(SCAN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                logger.warn("Instance " + path + " did not respond within " + SCAN_TIMEOUT + ", marking offline");
+            } else {
+                logger.warn("Instance " + path + " is unavailable: " + cause);
+            }
+            stateExecutor.accept(() -> shown.setAvailability(InstanceAvailability.OFFLINE));
+            return null;
+        });
+        load.thenAccept(loaded -> stateExecutor.accept(() -> {
+            if (loaded == shown) {
+                // Unchanged, only needs to come back if the timeout gave up on it
+                shown.setAvailability(InstanceAvailability.AVAILABLE);
+                return;
+            }
+            if (entry != null) {
+                // Edited on disk since the snapshot
+                updateInPlace(shown, loaded);
+            } else {
+                int index = instances.indexOf(shown);
+                if (index >= 0) {
+                    instances.set(index, loaded);
+                }
             }
+            scheduleSnapshot();
+        }));
+    }
 
-            Path metaPath = FileUtil.getInstanceMetadataPath(path);
-            if (Files.exists(metaPath)) {
-                try {
-                    ServerInstance instance = JsonUtil.load(metaPath, ServerInstance.class);
-                    instance.setLocation(path);
-                    instances.add(instance);
-                } catch (Exception e) {
-                    logger.error("Failed to load instance metadata from " + path, e);
+    // Picks up instances added or removed by another process, so a daemon sees what the app
+    // creates, imports and deletes. Running ones stay listed until the next change so they
+    // can still be stopped.
+    public void watchConfig() {
+        try {
+            Files.createDirectories(FileUtil.APP_DIR);
+        } catch (IOException e) {
+            logger.warn("Cannot watch " + FileUtil.CONFIG_FILE + ": " + e);
+            return;
+        }
+        Path configPath = FileUtil.CONFIG_FILE.toAbsolutePath().normalize();
+        fileWatcher.watch(FileUtil.APP_DIR, changes -> {
+            for (FileWatcher.Change change : changes) {
+                if (change.path().equals(configPath) || change.kind() == FileWatcher.Kind.OVERFLOW) {
+                    // Off the watcher thread like any other read
+                    Thread.ofVirtual().name("reload-config").start(this::configChanged);
+                    return;
                 }
             }
+        });
+    }
+
+    private void configChanged() {
+        AppConfig loaded;
+        try {
+            if (!Files.exists(FileUtil.CONFIG_FILE)) {
+                return;
+            }
+            loaded = JsonUtil.load(FileUtil.CONFIG_FILE, AppConfig.class);
+        } catch (IOException e) {
+            // Caught mid-write, the write's own event brings us back
+            logger.warn("Failed to reload config: " + e);
+            return;
         }
+        Set<String> known = loaded.getKnownInstances() != null ? loaded.getKnownInstances() : new HashSet<>();
+        loaded.setKnownInstances(known);
+        stateExecutor.accept(() -> {
+            for (ServerInstance instance : List.copyOf(instances)) {
+                String key = instance.getLocation().toAbsolutePath().toString();
+                if (!known.contains(key) && !instance.isRunning()) {
+                    metadataMtimes.remove(key);
+                    FileWatcher.Subscription watch = watches.remove(key);
+                    if (watch != null) {
+                        watch.close();
+                    }
+                    instances.remove(instance);
+                    logger.info("Instance " + key + " was removed");
+                }
+            }
+            for (String pathStr : known) {
+                if (findInstance(pathStr) == null) {
+                    logger.info("Instance " + pathStr + " was added");
+                    listInstance(pathStr, null);
+                }
+            }
+            config = loaded;
+            scheduleSnapshot();
+        });
+    }
+
+    // Copies freshly read metadata into the listed instance, so whoever holds it (editor,
+    // running process) keeps seeing the same object. Re-setting it redraws the sidebar.
+    private void updateInPlace(ServerInstance current, ServerInstance loaded) {
+        copyMetadata(loaded, current);
+        current.setAvailability(InstanceAvailability.AVAILABLE);
+        int index = instances.indexOf(current);
+        if (index >= 0) {
+            instances.set(index, current);
+        }
+    }
+
+    private void watchInstance(String key, Path location) {
+        Path metaPath = FileUtil.getInstanceMetadataPath(location);
+        FileWatcher.Subscription previous = watches.put(key, fileWatcher.watch(metaPath.getParent(), changes -> {
+            for (FileWatcher.Change change : changes) {
+                if (change.path().equals(metaPath.toAbsolutePath().normalize())
+                        || change.kind() == FileWatcher.Kind.OVERFLOW) {
+                    // Off the watcher thread, the mount may be slow
+                    Thread.ofVirtual().name("reload-" + location.getFileName())
+                            .start(() -> metadataChanged(key, location));
+                    return;
+                }
+            }
+        }));
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    // instance.json was touched. Our own saves are recognised by their mtime and skipped.
+    private void metadataChanged(String key, Path location) {
+        long mtime = InstanceSnapshot.mtime(FileUtil.getInstanceMetadataPath(location));
+        Long known = metadataMtimes.get(key);
+        if (known != null && known == mtime) {
+            return;
+        }
+        ServerInstance loaded = null;
+        try {
+            loaded = loadInstance(location);
+            metadataMtimes.put(key, mtime);
+        } catch (IOException e) {
+            logger.warn("Instance " + location + " is unavailable: " + e);
+        }
+        ServerInstance fresh = loaded;
+        stateExecutor.accept(() -> {
+            ServerInstance current = findInstance(key);
+            if (current == null) {
+                return;
+            }
+            if (fresh == null) {
+                current.setAvailability(InstanceAvailability.OFFLINE);
+                return;
+            }
+            updateInPlace(current, fresh);
+            scheduleSnapshot();
+        });
+    }
+
+    private ServerInstance findInstance(String key) {
+        for (ServerInstance instance : instances) {
+            if (instance.getLocation().toAbsolutePath().toString().equals(key)) {
+                return instance;
+            }
+        }
+        return null;
+    }
+
+    private static void copyMetadata(ServerInstance from, ServerInstance to) {
+        to.setName(from.getName());
+        to.setType(from.getType());
+        to.setVersion(from.getVersion());
+        to.setCreated(from.getCreated());
+        to.setLastOpened(from.getLastOpened());
+        to.setMinMemory(from.getMinMemory());
+        to.setMaxMemory(from.getMaxMemory());
+    }
+
+    private ServerInstance loadInstance(Path path) throws IOException {
+        Path metaPath = FileUtil.getInstanceMetadataPath(path);
+        if (!Files.exists(metaPath)) {
+            throw new IOException("No instance metadata at " + metaPath);
+        }
+        ServerInstance instance = JsonUtil.load(metaPath, ServerInstance.class);
+        instance.setLocation(path);
+        return instance;
     }
 
     public void addInstance(ServerInstance instance) {
@@ -86,10 +336,26 @@ public class InstanceManager {
         }
         instances.add(instance);
         saveInstanceMetadata(instance);
+        watchInstance(instance.getLocation().toAbsolutePath().toString(), instance.getLocation());
+    }
+
+    // Lists an instance folder that already has its metadata, e.g. one extracted from an archive
+    public ServerInstance openInstance(Path location) throws IOException {
+        ServerInstance instance = loadInstance(location.toAbsolutePath().normalize());
+        if (findInstance(instance.getLocation().toAbsolutePath().toString()) != null) {
+            throw new IOException(location + " is already in the list");
+        }
+        addInstance(instance);
+        return instance;
     }
 
     public void removeInstance(ServerInstance instance) {
         config.getKnownInstances().remove(instance.getLocation().toAbsolutePath().toString());
+        metadataMtimes.remove(instance.getLocation().toAbsolutePath().toString());
+        FileWatcher.Subscription watch = watches.remove(instance.getLocation().toAbsolutePath().toString());
+        if (watch != null) {
+            watch.close();
+        }
         saveConfig();
         instances.remove(instance);
     }
@@ -116,9 +382,37 @@ public class InstanceManager {
         try {
             Path metaPath = FileUtil.getInstanceMetadataPath(instance.getLocation());
             JsonUtil.save(metaPath, instance);
+            metadataMtimes.put(instance.getLocation().toAbsolutePath().toString(), InstanceSnapshot.mtime(metaPath));
         } catch (IOException e) {
             logger.error("Failed to save instance metadata for " + instance.getName(), e);
         }
+        scheduleSnapshot();
+    }
+
+    // Any number of changes in one go end up as a single write on the next pulse
+    private void scheduleSnapshot() {
+        if (snapshotPending.compareAndSet(false, true)) {
+            stateExecutor.accept(this::writeSnapshot);
+        }
+    }
+
+    private void writeSnapshot() {
+        snapshotPending.set(false);
+        List<InstanceSnapshot.Entry> entries = new ArrayList<>();
+        for (ServerInstance instance : instances) {
+            String key = instance.getLocation().toAbsolutePath().toString();
+            Long mtime = metadataMtimes.get(key);
+            // Placeholders that never loaded are only remembered by path
+            entries.add(new InstanceSnapshot.Entry(Paths.get(key), mtime != null ? mtime : InstanceSnapshot.NO_FILE,
+                    mtime != null ? instance : null));
+        }
+        try {
+            new InstanceSnapshot(InstanceSnapshot.mtime(FileUtil.CONFIG_FILE), config.getDefaultBaseDirectory(),
+                    entries).write(SNAPSHOT_FILE);
+        } catch (IOException e) {
+            // Next start just reads the JSON files
+            logger.warn("Failed to save instance snapshot", e);
+        }
     }
 
     public ObservableList<ServerInstance> getInstances() {
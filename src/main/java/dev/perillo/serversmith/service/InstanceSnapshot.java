@@ -0,0 +1,142 @@
+package dev.perillo.serversmith.service;
+
+import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.model.ServerType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Everything startup needs from config.json and the instance.json files, in
+// one small binary file read front to back. Each part remembers the mtime of
+// the JSON it came from, so the caller can tell what changed behind our back
+// and re-read only that.
+final class InstanceSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(InstanceSnapshot.class);
+    private static final int MAGIC = 0x53534931; // "SSI1"
+    private static final int FORMAT = 1;
+    static final long NO_FILE = -1;
+
+    // instance is null when we never managed to read its metadata, then only the path is known
+    record Entry(Path location, long metadataMtime, ServerInstance instance) {
+    }
+
+    final long configMtime;
+    final String defaultBaseDirectory;
+    final List<Entry> entries;
+
+    InstanceSnapshot(long configMtime, String defaultBaseDirectory, List<Entry> entries) {
+        this.configMtime = configMtime;
+        this.defaultBaseDirectory = defaultBaseDirectory;
+        this.entries = entries;
+    }
+
+    static long mtime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return NO_FILE;
+        }
+    }
+
+    // Null if there is none or it can't be used, the caller falls back to the JSON files
+    static InstanceSnapshot read(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return null;
+            }
+            long configMtime = in.readLong();
+            String baseDir = readString(in);
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Path location = Paths.get(in.readUTF());
+                long mtime = in.readLong();
+                ServerInstance instance = null;
+                if (in.readBoolean()) {
+                    instance = new ServerInstance();
+                    instance.setName(in.readUTF());
+                    String type = readString(in);
+                    instance.setType(type != null ? ServerType.valueOf(type) : null);
+                    instance.setVersion(readString(in));
+                    instance.setCreated(readTime(in));
+                    instance.setLastOpened(readTime(in));
+                    instance.setMinMemory(in.readInt());
+                    instance.setMaxMemory(in.readInt());
+                    instance.setLocation(location);
+                }
+                entries.add(new Entry(location, mtime, instance));
+            }
+            return new InstanceSnapshot(configMtime, baseDir, entries);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable instance snapshot " + file, e);
+            return null;
+        }
+    }
+
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(configMtime);
+            writeString(out, defaultBaseDirectory);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.location().toString());
+                out.writeLong(entry.metadataMtime());
+                ServerInstance instance = entry.instance();
+                out.writeBoolean(instance != null);
+                if (instance != null) {
+                    out.writeUTF(instance.getName());
+                    writeString(out, instance.getType() != null ? instance.getType().name() : null);
+                    writeString(out, instance.getVersion());
+                    writeTime(out, instance.getCreated());
+                    writeTime(out, instance.getLastOpened());
+                    out.writeInt(instance.getMinMemory());
+                    out.writeInt(instance.getMaxMemory());
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+    }
+}
@@ -0,0 +1,52 @@
+package dev.perillo.serversmith.service;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+// Budget of bytes and operations per second for background I/O that shares a
+// disk with a running server. Callers ask before each read or write and sleep
+// when they're ahead of the budget; up to a second's worth can go in a burst.
+// Thread-safe, all threads using one throttle share its budget.
+public final class IoThrottle {
+    public static final IoThrottle UNLIMITED = new IoThrottle(0, 0);
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+    private final long opsPerSecond;
+    // Time at which everything granted so far has been paid for
+    private long next = System.nanoTime() - BURST_NANOS;
+
+    // 0 means no limit
+    public IoThrottle(long bytesPerSecond, long opsPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.opsPerSecond = opsPerSecond;
+    }
+
+    public void acquire(long bytes, int ops) throws InterruptedIOException {
+        long cost = 0;
+        if (bytesPerSecond > 0) {
+            cost = bytes * 1_000_000_000L / bytesPerSecond;
+        }
+        if (opsPerSecond > 0) {
+            cost = Math.max(cost, ops * 1_000_000_000L / opsPerSecond);
+        }
+        if (cost == 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // Unused budget only carries over up to the burst
+            next = Math.max(next, now - BURST_NANOS) + cost;
+            wait = next - now;
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+}
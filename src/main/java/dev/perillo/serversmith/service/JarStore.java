@@ -0,0 +1,209 @@
+package dev.perillo.serversmith.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.perillo.serversmith.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+// Content-addressed store for downloaded jars. Every file is kept once under
+// objects/<sha256> no matter how many URLs or instances refer to it, and
+// instances get a hard link to it instead of their own copy. index.json maps
+// each URL to the hashes of what it served last time.
+// Linked jars share their inode with the store, so they must be replaced (as
+// Files.copy with REPLACE_EXISTING does) rather than written in place.
+public class JarStore {
+    private static final Logger logger = LoggerFactory.getLogger(JarStore.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public record Entry(String sha256, String sha1, long size) {
+    }
+
+    private final Path root;
+    private final Path objects;
+    private final Path indexFile;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    public JarStore() {
+        this(FileUtil.CACHE_DIR);
+    }
+
+    public JarStore(Path root) {
+        this.root = root;
+        this.objects = root.resolve("objects");
+        this.indexFile = root.resolve("index.json");
+        loadIndex();
+    }
+
+    // The stored object for the URL if we have it and it matches the published hashes
+    public Path find(String url, String sha1, String sha256) {
+        Entry entry = index.get(url);
+        if (entry == null || !matches(entry, sha1, sha256)) {
+            return null;
+        }
+        Path object = objectPath(entry.sha256());
+        try {
+            if (Files.size(object) == entry.size()) {
+                return object;
+            }
+            logger.warn("Cached object " + object + " has the wrong size, downloading again");
+        } catch (IOException e) {
+            // Missing, e.g. the cache was cleaned by hand
+        }
+        index.remove(url, entry);
+        return null;
+    }
+
+    // Copies the stream into the store, hashing it on the way. Throws if it doesn't match the
+    // published hashes, so a bad download never lands in the store or an instance.
+    public Path store(String url, InputStream in, String sha1, String sha256, LongConsumer progress)
+            throws IOException {
+        Files.createDirectories(objects);
+        Path temp = Files.createTempFile(root, "download-", ".part");
+        try {
+            Hasher hasher = new Hasher();
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                    hasher.update(buffer, n);
+                    if (progress != null) {
+                        progress.accept(hasher.size);
+                    }
+                }
+            }
+            return commit(url, temp, hasher.entry(), sha1, sha256);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Where a resumable download of the URL is assembled before it's adopted
+    public Path partFile(String url) {
+        Hasher hasher = new Hasher();
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        hasher.update(bytes, bytes.length);
+        return root.resolve("partial").resolve(hasher.entry().sha256().substring(0, 32) + ".part");
+    }
+
+    // Moves a file downloaded some other way into the store, same checks as store()
+    public Path adopt(String url, Path file, String sha1, String sha256) throws IOException {
+        Hasher hasher = new Hasher();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                hasher.update(buffer, n);
+            }
+        }
+        try {
+            return commit(url, file, hasher.entry(), sha1, sha256);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private Path commit(String url, Path file, Entry entry, String sha1, String sha256) throws IOException {
+        if (!matches(entry, sha1, sha256)) {
+            throw new IOException("Checksum mismatch for " + url + ": expected "
+                    + (sha256 != null ? "sha256 " + sha256 : "sha1 " + sha1) + ", got sha256 " + entry.sha256()
+                    + " / sha1 " + entry.sha1());
+        }
+
+        Path object = objectPath(entry.sha256());
+        Files.createDirectories(object.getParent());
+        if (!Files.exists(object)) {
+            try {
+                Files.move(file, object, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(file, object, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        index.put(url, entry);
+        saveIndex();
+        return object;
+    }
+
+    // Hard link where the file system allows it, a plain copy otherwise (other drive, FAT, ...)
+    public void materialize(Path object, Path destination) throws IOException {
+        Files.createDirectories(destination.getParent());
+        Files.deleteIfExists(destination);
+        try {
+            Files.createLink(destination, object);
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.info("Cannot link " + object + " (" + e.getMessage() + "), copying instead");
+            Files.copy(object, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path objectPath(String sha256) {
+        return objects.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    private static boolean matches(Entry entry, String sha1, String sha256) {
+        return (sha256 == null || sha256.equalsIgnoreCase(entry.sha256()))
+                && (sha1 == null || sha1.equalsIgnoreCase(entry.sha1()));
+    }
+
+    // SHA-1 and SHA-256 in one pass
+    private static final class Hasher {
+        private final MessageDigest sha1 = digest("SHA-1");
+        private final MessageDigest sha256 = digest("SHA-256");
+        private long size;
+
+        void update(byte[] buffer, int n) {
+            sha1.update(buffer, 0, n);
+            sha256.update(buffer, 0, n);
+            size += n;
+        }
+
+        Entry entry() {
+            return new Entry(HexFormat.of().formatHex(sha256.digest()), HexFormat.of().formatHex(sha1.digest()),
+                    size);
+        }
+
+        private static MessageDigest digest(String algorithm) {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void loadIndex() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try {
+            index.putAll(mapper.readValue(indexFile.toFile(), new TypeReference<Map<String, Entry>>() {
+            }));
+        } catch (IOException e) {
+            // Only costs a re-download per URL, the objects themselves are still there
+            logger.warn("Ignoring unreadable jar cache index " + indexFile, e);
+        }
+    }
+
+    private synchronized void saveIndex() throws IOException {
+        Path temp = indexFile.resolveSibling("index.json.tmp");
+        mapper.writeValue(temp.toFile(), Map.copyOf(index));
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,79 @@
+package dev.perillo.serversmith.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Splits a process's output into lines at the byte level, into one reused
+// LogLine, in place of BufferedReader.readLine() and the String it makes per
+// line. Lines end at "\n", "\r\n" or a lone "\r", like readLine(). A line
+// without an end in sight is cut every MAX_LINE bytes, so a server spewing
+// binary can't make us buffer without bound.
+class LineDecoder {
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final int MAX_LINE = 1024 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final LogLine line = new LogLine();
+    private int pos;
+    private int limit;
+    // The last line ended in '\r', a '\n' right after it belongs to it
+    private boolean skipLf;
+
+    LineDecoder(InputStream in) {
+        this.in = in;
+    }
+
+    // The next line, or null at the end of the stream. The same LogLine comes back every
+    // time, so it's only good until the next call.
+    LogLine next() throws IOException {
+        line.clear();
+        boolean started = false;
+        while (true) {
+            if (pos == limit) {
+                int n = in.read(buffer, 0, buffer.length);
+                if (n < 0) {
+                    if (!started) {
+                        return null;
+                    }
+                    break; // Last line without an end
+                }
+                pos = 0;
+                limit = n;
+                continue;
+            }
+            if (skipLf) {
+                skipLf = false;
+                if (buffer[pos] == '\n') {
+                    pos++;
+                    continue;
+                }
+            }
+            started = true;
+            int start = pos;
+            int end = start;
+            int max = Math.min(limit, start + MAX_LINE - line.rawLength());
+            while (end < max && buffer[end] != '\n' && buffer[end] != '\r') {
+                end++;
+            }
+            line.append(buffer, start, end - start);
+            if (end < limit && end < max) {
+                skipLf = buffer[end] == '\r';
+                pos = end + 1;
+                break;
+            }
+            pos = end;
+            if (line.rawLength() >= MAX_LINE) {
+                break;
+            }
+        }
+        line.decode();
+        return line;
+    }
+
+    // True once everything read so far has been handed out and nothing more is waiting,
+    // i.e. the end of a burst of output
+    boolean idle() throws IOException {
+        return pos == limit && in.available() == 0;
+    }
+}
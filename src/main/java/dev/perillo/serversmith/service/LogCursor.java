@@ -0,0 +1,80 @@
+package dev.perillo.serversmith.service;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// One reader's position in an instance's console output. The output is the
+// console log on disk, numbered from the first line ever written, so a cursor
+// can start anywhere still on disk and any number of them can read at their own
+// pace. The writer only releases a permit per flush, however many cursors there
+// are and however far behind they are, so nothing a reader does can hold up the
+// server's stdout. A reader that falls so far behind that its lines get rotated
+// away is told how many it missed and carries on from the oldest one left.
+public class LogCursor implements Closeable {
+    // Lines from first on; skipped were rotated away before this reader got to them
+    public record Batch(long first, long skipped, List<String> lines) {
+    }
+
+    private final ConsoleLog log;
+    private final Semaphore wake = new Semaphore(0);
+    private final Runnable listener = wake::release;
+    private volatile long next;
+    private volatile boolean closed;
+
+    // Negative from counts back from the end: -100 is the last hundred lines
+    LogCursor(ConsoleLog log, long from) {
+        this.log = log;
+        this.next = Math.max(from < 0 ? log.getLineCount() + from : from, log.getFirstLine());
+        log.addListener(listener);
+    }
+
+    // Number of the next line this cursor will return
+    public long position() {
+        return next;
+    }
+
+    // Up to max lines from the cursor on. Waits up to the timeout if there are none yet,
+    // returns an empty batch if none came or the cursor was closed meanwhile.
+    public Batch next(int max, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!closed) {
+            long first = log.getFirstLine();
+            long skipped = Math.max(0, first - next);
+            long from = next + skipped;
+            if (from < log.getLineCount()) {
+                List<String> lines;
+                try {
+                    lines = log.readLines(from, max);
+                } catch (IndexOutOfBoundsException e) {
+                    continue; // Rotated away while we read, count it as skipped on the next round
+                }
+                next = from + lines.size();
+                return new Batch(from, skipped, lines);
+            }
+            // Permits from flushes we've already read past are stale
+            wake.drainPermits();
+            if (from < log.getLineCount()) {
+                continue; // Flushed between the check and the drain
+            }
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || !wake.tryAcquire(left, TimeUnit.NANOSECONDS)) {
+                break;
+            }
+        }
+        return new Batch(next, 0, List.of());
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        log.removeListener(listener);
+        // Wakes up a reader waiting in next()
+        wake.release();
+    }
+}
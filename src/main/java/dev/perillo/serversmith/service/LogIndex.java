@@ -0,0 +1,444 @@
+package dev.perillo.serversmith.service;
+
+import dev.perillo.serversmith.model.LogLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+// Inverted index over an instance's ConsoleLog. A background thread follows the
+// log and adds each committed line's message words and level to posting lists,
+// so queries intersect a few lists instead of scanning history. The index lives
+// in memory and is built from the log the first time it is searched in a session,
+// on a virtual thread, so instances nobody searches cost nothing. It only covers
+// what the log still holds: postings of rotated lines are dropped and so are terms
+// left without any. Pure numbers (coordinates, ids, ports) aren't indexed at all,
+// there are too many of them; a query for one is checked against the text instead.
+public class LogIndex {
+    private static final Logger logger = LoggerFactory.getLogger(LogIndex.class);
+    private static final int BATCH = 4096;
+    private static final int MIN_TOKEN = 2;
+    private static final int MAX_TOKEN = 64;
+    private static final int HEADER_LIMIT = 128;
+    // Phrase candidates are gathered this many lines at a time, newest first, and no
+    // more than PHRASE_BUDGET of them are read back from the log per search
+    private static final int PHRASE_WINDOW = 1 << 16;
+    private static final int PHRASE_BUDGET = 20_000;
+
+    private final ConsoleLog log;
+    private final Map<String, PostingList> terms = new HashMap<>();
+    private final PostingList[] levels = new PostingList[LogLevel.values().length];
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // A lock rather than a monitor so the waiting worker doesn't pin its carrier
+    private final ReentrantLock signalLock = new ReentrantLock();
+    private final Condition signal = signalLock.newCondition();
+    private final Runnable logListener = this::wake;
+    private volatile long indexedTo;
+    private volatile boolean running;
+    private Thread worker;
+
+    public record SearchResult(List<Long> lines, long matches, boolean exact) {
+    }
+
+    public LogIndex(ConsoleLog log) {
+        this.log = log;
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new PostingList();
+        }
+    }
+
+    public ConsoleLog getLog() {
+        return log;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        log.addListener(logListener);
+        worker = Thread.ofVirtual().name("log-index-" + log.getDirectory().getParent().getParent().getFileName())
+                .start(this::run);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        log.removeListener(logListener);
+        wake();
+    }
+
+    // Lines below this are searchable
+    public long getIndexedTo() {
+        return indexedTo;
+    }
+
+    // Newest matches first, at most limit of them. The first search starts indexing, until
+    // it catches up only lines below getIndexedTo() are found.
+    public SearchResult search(LogQuery query, int limit) {
+        start();
+        lock.readLock().lock();
+        try {
+            long from = Math.max(log.getFirstLine(), query.after() == null ? 0
+                    : log.findLineAt(query.after().getEpochSecond()));
+            long to = indexedTo;
+            if (query.before() != null) {
+                to = Math.min(to, log.findLineAt(query.before().getEpochSecond()));
+            }
+            if (from >= to) {
+                return new SearchResult(List.of(), 0, true);
+            }
+
+            // Phrases need all their words present before we bother reading the line
+            Set<String> required = new HashSet<>(query.terms());
+            for (String phrase : query.phrases()) {
+                tokenize(phrase, required::add);
+            }
+            List<PostingList> lists = new ArrayList<>();
+            for (String term : required) {
+                if (!indexed(term)) {
+                    continue;
+                }
+                PostingList list = terms.get(term);
+                if (list == null) {
+                    return new SearchResult(List.of(), 0, true);
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(PostingList::size));
+
+            List<String> numbers = query.terms().stream().filter(term -> !indexed(term)).toList();
+            if (!query.phrases().isEmpty() || !numbers.isEmpty()) {
+                return searchText(lists, query, numbers, from, to, limit);
+            }
+            LongRing hits = new LongRing(limit);
+            if (!lists.isEmpty() || !query.levels().isEmpty()) {
+                candidates(lists, query.levels(), from, to, hits::add);
+            } else {
+                for (long line = Math.max(from, to - limit); line < to; line++) {
+                    hits.add(line);
+                }
+                hits.total = to - from;
+            }
+            return new SearchResult(hits.newestFirst(limit), hits.total, true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Lines in [from, to) that have all the terms and one of the levels, oldest first
+    private void candidates(List<PostingList> lists, Set<LogLevel> wanted, long from, long to, LongConsumer out) {
+        if (!lists.isEmpty()) {
+            intersect(lists, wanted, from, to, out);
+        } else if (!wanted.isEmpty()) {
+            unionLevels(wanted, from, to, out);
+        } else {
+            for (long line = from; line < to; line++) {
+                out.accept(line);
+            }
+        }
+    }
+
+    private void intersect(List<PostingList> lists, Set<LogLevel> wanted, long from, long to, LongConsumer hits) {
+        PostingList.Cursor driver = lists.get(0).cursor();
+        PostingList.Cursor[] others = new PostingList.Cursor[lists.size() - 1];
+        for (int i = 1; i < lists.size(); i++) {
+            others[i - 1] = lists.get(i).cursor();
+        }
+        PostingList.Cursor[] levelCursors = levelCursors(wanted);
+
+        boolean more = driver.advanceTo(from);
+        while (more) {
+            long line = driver.value();
+            if (line >= to) {
+                return;
+            }
+            long ahead = -1;
+            for (PostingList.Cursor other : others) {
+                if (!other.advanceTo(line)) {
+                    return;
+                }
+                if (other.value() != line) {
+                    ahead = other.value();
+                    break;
+                }
+            }
+            if (ahead >= 0) {
+                // Leapfrog the driver to where the other list continues
+                more = driver.advanceTo(ahead);
+                continue;
+            }
+            if (levelCursors == null || anyAt(levelCursors, line)) {
+                hits.accept(line);
+            }
+            more = driver.next();
+        }
+    }
+
+    private void unionLevels(Set<LogLevel> wanted, long from, long to, LongConsumer hits) {
+        PostingList.Cursor[] cursors = levelCursors(wanted);
+        boolean[] live = new boolean[cursors.length];
+        for (int i = 0; i < cursors.length; i++) {
+            live[i] = cursors[i].advanceTo(from);
+        }
+        while (true) {
+            int min = -1;
+            for (int i = 0; i < cursors.length; i++) {
+                if (live[i] && (min < 0 || cursors[i].value() < cursors[min].value())) {
+                    min = i;
+                }
+            }
+            if (min < 0 || cursors[min].value() >= to) {
+                return;
+            }
+            hits.accept(cursors[min].value());
+            live[min] = cursors[min].next();
+        }
+    }
+
+    private PostingList.Cursor[] levelCursors(Set<LogLevel> wanted) {
+        if (wanted.isEmpty()) {
+            return null;
+        }
+        return wanted.stream().map(level -> levels[level.ordinal()].cursor()).toArray(PostingList.Cursor[]::new);
+    }
+
+    private static boolean anyAt(PostingList.Cursor[] cursors, long line) {
+        boolean found = false;
+        for (PostingList.Cursor cursor : cursors) {
+            if (cursor.advanceTo(line) && cursor.value() == line) {
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    // Phrases and numbers can only be checked against the text, so candidates are gathered a
+    // window at a time from the newest and read back until there are enough hits or the budget
+    // is spent. Whatever is left over is only counted, which makes the total an upper bound.
+    private SearchResult searchText(List<PostingList> lists, LogQuery query, List<String> numbers, long from,
+            long to, int limit) {
+        Set<String> words = new HashSet<>();
+        List<Long> result = new ArrayList<>();
+        LongRing window = new LongRing(PHRASE_WINDOW);
+        long unchecked = 0;
+        int checked = 0;
+        long hi = to;
+        while (hi > from && result.size() < limit && checked < PHRASE_BUDGET) {
+            long lo = Math.max(from, hi - PHRASE_WINDOW);
+            window.clear();
+            candidates(lists, query.levels(), lo, hi, window::add);
+            hi = lo;
+            for (int i = 0; i < window.size(); i++) {
+                if (result.size() >= limit || checked >= PHRASE_BUDGET) {
+                    unchecked += window.size() - i;
+                    break;
+                }
+                long line = window.newest(i);
+                if (line < log.getFirstLine()) {
+                    hi = from; // rotated away, and everything older with it
+                    break;
+                }
+                checked++;
+                String text = log.readLine(line);
+                if (!numbers.isEmpty()) {
+                    words.clear();
+                    tokenize(text.substring(messageStart(text)), words::add);
+                    if (!words.containsAll(numbers)) {
+                        continue;
+                    }
+                }
+                String lower = text.toLowerCase(Locale.ROOT);
+                if (query.phrases().stream().allMatch(lower::contains)) {
+                    result.add(line);
+                }
+            }
+        }
+        if (hi > from) {
+            long[] rest = new long[1];
+            candidates(lists, query.levels(), from, hi, line -> rest[0]++);
+            unchecked += rest[0];
+        }
+        return new SearchResult(result, result.size() + unchecked, unchecked == 0);
+    }
+
+    private void run() {
+        long next = log.getFirstLine();
+        long trimmedTo = next;
+        Set<String> lineTerms = new HashSet<>();
+        while (running) {
+            try {
+                long first = log.getFirstLine();
+                if (first > trimmedTo) {
+                    lock.writeLock().lock();
+                    try {
+                        trim(first);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    trimmedTo = first;
+                }
+                next = Math.max(next, first);
+                long end = log.getLineCount();
+                if (next >= end) {
+                    signalLock.lock();
+                    try {
+                        while (running && log.getLineCount() <= next) {
+                            signal.await(1, TimeUnit.SECONDS);
+                        }
+                    } finally {
+                        signalLock.unlock();
+                    }
+                    continue;
+                }
+
+                // Read outside the lock so searches are only blocked while postings change
+                List<String> batch = log.readLines(next, (int) Math.min(BATCH, end - next));
+                lock.writeLock().lock();
+                try {
+                    for (String line : batch) {
+                        add(next++, line, lineTerms);
+                    }
+                    indexedTo = next;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Console indexing failed at line " + next, e);
+                return;
+            }
+        }
+    }
+
+    private void add(long lineNumber, String line, Set<String> lineTerms) {
+        LogLevel level = LogLevel.parse(line);
+        if (level != null) {
+            levels[level.ordinal()].add(lineNumber);
+        }
+        lineTerms.clear();
+        tokenize(line.substring(messageStart(line)), lineTerms::add);
+        for (String term : lineTerms) {
+            if (!indexed(term)) {
+                continue;
+            }
+            terms.computeIfAbsent(term, t -> new PostingList()).add(lineNumber);
+        }
+    }
+
+    // Forgets the lines rotated out of the log, and the terms only they had
+    private void trim(long first) {
+        terms.values().removeIf(list -> {
+            list.trimBelow(first);
+            return list.size() == 0;
+        });
+        for (PostingList list : levels) {
+            list.trimBelow(first);
+        }
+    }
+
+    private static boolean indexed(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            if (!Character.isDigit(term.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void wake() {
+        signalLock.lock();
+        try {
+            signal.signalAll();
+        } finally {
+            signalLock.unlock();
+        }
+    }
+
+    // Skips "[12:00:00] [Server thread/INFO]: " so timestamps don't flood the index
+    static int messageStart(String line) {
+        int header = line.indexOf("]: ");
+        return header >= 0 && header < HEADER_LIMIT ? header + 3 : 0;
+    }
+
+    static void tokenize(String text, Consumer<String> out) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                int length = i - start;
+                if (length >= MIN_TOKEN && length <= MAX_TOKEN) {
+                    out.accept(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    // Keeps the newest `capacity` line numbers seen, and counts all of them
+    private static final class LongRing {
+        private long[] values = new long[16];
+        private final int capacity;
+        private int size;
+        private int head;
+        long total;
+
+        LongRing(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+            head = 0;
+            total = 0;
+        }
+
+        // i-th newest value kept
+        long newest(int i) {
+            return values[size < capacity ? size - 1 - i : Math.floorMod(head - 1 - i, capacity)];
+        }
+
+        void add(long value) {
+            total++;
+            if (size < capacity) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, (int) Math.min(capacity, (long) size * 2));
+                }
+                values[size++] = value;
+            } else {
+                values[head] = value;
+                head = (head + 1) % capacity;
+            }
+        }
+
+        List<Long> newestFirst(int limit) {
+            int n = Math.min(limit, size);
+            List<Long> result = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                result.add(newest(i));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package dev.perillo.serversmith.service;
+
+import dev.perillo.serversmith.model.LogLevel;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+// One line of server output, filled in place by LineDecoder and reused for the
+// next line, so reading stdout creates no objects per line. It keeps the bytes
+// exactly as the server printed them, which is what goes into the console
+// history, and as a CharSequence the text with ANSI escapes taken out, which is
+// what matching and parsing look at. The header fields are found the first time
+// they're asked for, as offsets into that text. Strings are only made when someone asks for one.
+public final class LogLine implements CharSequence {
+    private static final int HEADER_LIMIT = 96;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private byte[] raw = new byte[256];
+    private int rawLength;
+    private char[] text = new char[256];
+    private int length;
+    // No escapes and nothing but ASCII, so the text is the raw bytes
+    private boolean plain;
+    private int timeStart;
+    private int timeEnd;
+    private int threadStart;
+    private int threadEnd;
+    private int messageStart;
+    private LogLevel level;
+    private boolean headerParsed;
+    private String string;
+
+    LogLine() {
+    }
+
+    // Starts a new line, dropping the previous one
+    void clear() {
+        rawLength = 0;
+        length = 0;
+        headerParsed = false;
+        string = null;
+    }
+
+    void append(byte[] bytes, int offset, int count) {
+        if (rawLength + count > raw.length) {
+            raw = Arrays.copyOf(raw, Math.max(raw.length * 2, rawLength + count));
+        }
+        System.arraycopy(bytes, offset, raw, rawLength, count);
+        rawLength += count;
+    }
+
+    int rawLength() {
+        return rawLength;
+    }
+
+    // Decodes the raw bytes into the text. Malformed UTF-8 comes out as U+FFFD, like
+    // InputStreamReader would have made it.
+    void decode() {
+        if (text.length < rawLength) {
+            text = new char[Math.max(text.length * 2, rawLength)];
+        }
+        byte[] in = raw;
+        char[] out = text;
+        int n = rawLength;
+        int o = 0;
+        int i = 0;
+        boolean ascii = true;
+        while (i < n) {
+            int b = in[i];
+            // Printable ASCII first, it's nearly all of it
+            if (b > 0x1B) {
+                out[o++] = (char) b;
+                i++;
+                continue;
+            }
+            if (b >= 0) {
+                if (b == 0x1B) {
+                    ascii = false;
+                    i = skipEscape(in, i + 1, n);
+                } else {
+                    out[o++] = (char) b;
+                    i++;
+                }
+                continue;
+            }
+            ascii = false;
+            // Lead byte ranges and the allowed range of the first continuation, per the
+            // Unicode well-formed table, so overlongs and surrogates are caught up front
+            int lead = b & 0xFF;
+            int extra;
+            int cp;
+            int lo = 0x80;
+            int hi = 0xBF;
+            if (lead >= 0xC2 && lead <= 0xDF) {
+                extra = 1;
+                cp = lead & 0x1F;
+            } else if (lead >= 0xE0 && lead <= 0xEF) {
+                extra = 2;
+                cp = lead & 0x0F;
+                if (lead == 0xE0) {
+                    lo = 0xA0;
+                } else if (lead == 0xED) {
+                    hi = 0x9F;
+                }
+            } else if (lead >= 0xF0 && lead <= 0xF4) {
+                extra = 3;
+                cp = lead & 0x07;
+                if (lead == 0xF0) {
+                    lo = 0x90;
+                } else if (lead == 0xF4) {
+                    hi = 0x8F;
+                }
+            } else {
+                out[o++] = '\uFFFD';
+                i++;
+                continue;
+            }
+            int j = i + 1;
+            int k = 0;
+            for (; k < extra && j < n; k++, j++) {
+                int c = in[j] & 0xFF;
+                if (c < lo || c > hi) {
+                    break;
+                }
+                cp = (cp << 6) | (c & 0x3F);
+                lo = 0x80;
+                hi = 0xBF;
+            }
+            if (k < extra) {
+                // One replacement for the broken sequence, the byte that broke it starts the next
+                out[o++] = '\uFFFD';
+            } else if (cp >= 0x10000) {
+                out[o++] = Character.highSurrogate(cp);
+                out[o++] = Character.lowSurrogate(cp);
+            } else {
+                out[o++] = (char) cp;
+            }
+            i = j;
+        }
+        length = o;
+        plain = ascii;
+    }
+
+    // Past an escape sequence starting after the ESC at from: CSI ("ESC [ ... final"),
+    // OSC ("ESC ] ... BEL" or "... ESC \") or a two byte one
+    private static int skipEscape(byte[] in, int from, int n) {
+        if (from >= n) {
+            return n;
+        }
+        int i = from + 1;
+        if (in[from] == '[') {
+            while (i < n && (in[i] < 0x40 || in[i] > 0x7E)) {
+                i++;
+            }
+            return Math.min(i + 1, n);
+        }
+        if (in[from] == ']') {
+            while (i < n && in[i] != 0x07 && !(in[i] == 0x1B && i + 1 < n && in[i + 1] == '\\')) {
+                i++;
+            }
+            return i < n && in[i] == 0x1B ? i + 2 : Math.min(i + 1, n);
+        }
+        return i;
+    }
+
+    // "[12:00:00] [Server thread/INFO]: ...", "[12:00:00 INFO]: ...", "[12:00:00] [main/WARN] [mod/]: ..."
+    // Found on first use, most lines are never asked
+    private void parseHeader() {
+        if (headerParsed) {
+            return;
+        }
+        headerParsed = true;
+        timeStart = timeEnd = threadStart = threadEnd = -1;
+        messageStart = 0;
+        level = LogLevel.parse(this);
+        int limit = Math.min(length, HEADER_LIMIT);
+        if (limit == 0 || text[0] != '[') {
+            return;
+        }
+        int i = 1;
+        while (i < limit && (Character.isDigit(text[i]) || text[i] == ':' || text[i] == '.')) {
+            i++;
+        }
+        if (i > 1) {
+            timeStart = 1;
+            timeEnd = i;
+        }
+        // The thread is the first bracket after the time that has a "/level" in it
+        for (int open = indexOf('[', timeEnd > 0 ? i : 0, limit); open >= 0; open = indexOf('[', open + 1, limit)) {
+            int close = indexOf(']', open + 1, limit);
+            int slash = indexOf('/', open + 1, close < 0 ? limit : close);
+            if (slash > open + 1) {
+                threadStart = open + 1;
+                threadEnd = slash;
+                break;
+            }
+        }
+        int header = indexOf("]: ", 0);
+        if (header >= 0 && header < HEADER_LIMIT) {
+            messageStart = header + 3;
+        }
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int indexOf(String needle, int from) {
+        int n = needle.length();
+        if (n == 0) {
+            return Math.min(Math.max(from, 0), length);
+        }
+        char first = needle.charAt(0);
+        if (plain && first < 0x80) {
+            return indexOfPlain(needle, Math.max(from, 0));
+        }
+        outer:
+        for (int i = Math.max(from, 0), last = length - n; i <= last; i++) {
+            if (text[i] != first) {
+                continue;
+            }
+            for (int k = 1; k < n; k++) {
+                if (text[i + k] != needle.charAt(k)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    // Looks for the first character eight bytes at a time: xor with it repeated makes the
+    // matching bytes zero, and (x - ONES) & ~x & HIGHS flags the lowest zero byte exactly
+    private int indexOfPlain(String needle, int from) {
+        int n = needle.length();
+        int last = length - n;
+        byte first = (byte) needle.charAt(0);
+        long pattern = ONES * first;
+        int i = from;
+        while (i <= last) {
+            if (i + Long.BYTES <= length) {
+                long word = (long) LONGS.get(raw, i) ^ pattern;
+                long found = (word - ONES) & ~word & HIGHS;
+                if (found == 0) {
+                    i += Long.BYTES;
+                    continue;
+                }
+                i += Long.numberOfTrailingZeros(found) >>> 3;
+                if (i > last) {
+                    return -1;
+                }
+            } else if (raw[i] != first) {
+                i++;
+                continue;
+            }
+            int k = 1;
+            while (k < n && raw[i + k] == needle.charAt(k)) {
+                k++;
+            }
+            if (k == n) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    public int indexOf(String needle) {
+        return indexOf(needle, 0);
+    }
+
+    public boolean contains(String needle) {
+        return indexOf(needle, 0) >= 0;
+    }
+
+    // Level from the header, null for lines without one such as stack trace continuations
+    public LogLevel level() {
+        parseHeader();
+        return level;
+    }
+
+    // Offsets into the text, -1 if the header has no such field
+    public int timeStart() {
+        parseHeader();
+        return timeStart;
+    }
+
+    public int timeEnd() {
+        parseHeader();
+        return timeEnd;
+    }
+
+    public int threadStart() {
+        parseHeader();
+        return threadStart;
+    }
+
+    public int threadEnd() {
+        parseHeader();
+        return threadEnd;
+    }
+
+    // Where the message after "]: " begins, 0 without a header
+    public int messageStart() {
+        parseHeader();
+        return messageStart;
+    }
+
+    // The line as the server printed it, escapes and all
+    public String raw() {
+        return new String(raw, 0, rawLength, StandardCharsets.UTF_8);
+    }
+
+    void writeTo(ConsoleLog log) throws IOException {
+        log.append(raw, 0, rawLength);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return text[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        Objects.checkFromToIndex(start, end, length);
+        return new String(text, start, end - start);
+    }
+
+    // The text without escapes, made once per line
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = new String(text, 0, length);
+        }
+        return string;
+    }
+}
@@ -0,0 +1,66 @@
+package dev.perillo.serversmith.service;
+
+import dev.perillo.serversmith.util.FxPulse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Collects log lines from a reader thread and hands them to the FX thread in
+// batches, at most one batch per pulse. Publishing never blocks: when the
+// subscriber falls behind the oldest queued lines are dropped and a marker
+// line reports how many were skipped.
+public class LogPipeline {
+    public static final int DEFAULT_CAPACITY = 10_000;
+    private static final int MAX_BATCH = 2_000;
+
+    private final ArrayBlockingQueue<String> queue;
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final Consumer<List<String>> sink;
+    private final FxPulse pulse = new FxPulse(this::drain);
+
+    public LogPipeline(Consumer<List<String>> sink) {
+        this(DEFAULT_CAPACITY, sink);
+    }
+
+    public LogPipeline(int capacity, Consumer<List<String>> sink) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.sink = sink;
+    }
+
+    // Safe to call from any thread
+    public void publish(String line) {
+        while (!queue.offer(line)) {
+            // Full: drop the oldest line so the console keeps showing the latest output
+            if (queue.poll() != null) {
+                skipped.incrementAndGet();
+            }
+        }
+        pulse.request();
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    // Runs on the FX thread, once per pulse while there is something queued
+    private void drain() {
+        int dropped = skipped.getAndSet(0);
+        List<String> batch = new ArrayList<>(Math.min(queue.size(), MAX_BATCH) + 1);
+        if (dropped > 0) {
+            batch.add("[ServerSmith] " + dropped + " lines skipped");
+        }
+        queue.drainTo(batch, MAX_BATCH);
+
+        // Leftovers go out on the next pulse
+        if (!queue.isEmpty()) {
+            pulse.request();
+        }
+
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+    }
+}
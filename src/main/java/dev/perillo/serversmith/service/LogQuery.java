@@ -0,0 +1,115 @@
+package dev.perillo.serversmith.service;
+
+import dev.perillo.serversmith.model.LogLevel;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// A console search. Parsed from what the user types, e.g.
+//   steve "lost connection" level:warn,error since:2h
+//   after:2026-10-18T12:00 before:2026-10-18T13:00 overloaded
+public record LogQuery(List<String> terms, List<String> phrases, Set<LogLevel> levels, Instant after,
+        Instant before) {
+
+    public boolean isEmpty() {
+        return terms.isEmpty() && phrases.isEmpty() && levels.isEmpty() && after == null && before == null;
+    }
+
+    public static LogQuery parse(String text) {
+        List<String> terms = new ArrayList<>();
+        List<String> phrases = new ArrayList<>();
+        Set<LogLevel> levels = EnumSet.noneOf(LogLevel.class);
+        Instant after = null;
+        Instant before = null;
+
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '"') {
+                int close = text.indexOf('"', i + 1);
+                if (close < 0) {
+                    close = text.length();
+                }
+                String phrase = text.substring(i + 1, close).trim().toLowerCase(Locale.ROOT);
+                if (!phrase.isEmpty()) {
+                    phrases.add(phrase);
+                }
+                i = close + 1;
+                continue;
+            }
+            int end = i;
+            while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+                end++;
+            }
+            String word = text.substring(i, end);
+            i = end;
+
+            int colon = word.indexOf(':');
+            String key = colon > 0 ? word.substring(0, colon).toLowerCase(Locale.ROOT) : "";
+            String value = colon > 0 ? word.substring(colon + 1) : word;
+            switch (key) {
+                case "level":
+                    for (String name : value.split(",")) {
+                        LogLevel level = LogLevel.parse("[" + name.toUpperCase(Locale.ROOT) + "]");
+                        if (level != null) {
+                            levels.add(level);
+                        }
+                    }
+                    break;
+                case "since":
+                    Duration ago = parseDuration(value);
+                    if (ago != null) {
+                        after = Instant.now().minus(ago);
+                    }
+                    break;
+                case "after":
+                    after = parseTime(value, after);
+                    break;
+                case "before":
+                    before = parseTime(value, before);
+                    break;
+                default:
+                    LogIndex.tokenize(word, terms::add);
+            }
+        }
+        return new LogQuery(terms, phrases, levels, after, before);
+    }
+
+    private static Duration parseDuration(String value) {
+        if (value.length() < 2) {
+            return null;
+        }
+        try {
+            long amount = Long.parseLong(value.substring(0, value.length() - 1));
+            return switch (value.charAt(value.length() - 1)) {
+                case 's' -> Duration.ofSeconds(amount);
+                case 'm' -> Duration.ofMinutes(amount);
+                case 'h' -> Duration.ofHours(amount);
+                case 'd' -> Duration.ofDays(amount);
+                default -> null;
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Instant parseTime(String value, Instant fallback) {
+        try {
+            return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package dev.perillo.serversmith.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.perillo.serversmith.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Version manifests and other small API responses, kept parsed in memory and
+// as raw bytes on disk. Callers get whatever is cached right away; once it's
+// older than maxAge a conditional request (ETag / Last-Modified) refreshes it
+// in the background. Only a URL that was never fetched waits for the network,
+// so version lists show up instantly and keep working offline.
+public class ManifestCache {
+    private static final Logger logger = LoggerFactory.getLogger(ManifestCache.class);
+
+    @FunctionalInterface
+    public interface Parser<T> {
+        T parse(byte[] body) throws IOException;
+    }
+
+    public record Meta(String url, String etag, String lastModified, long fetchedAt) {
+    }
+
+    // Value and meta are published together, a reader never sees one without the other
+    private record Cached<T>(T value, Meta meta) {
+    }
+
+    private static final class Entry<T> {
+        volatile Cached<T> cached;
+        CompletableFuture<T> refresh;
+    }
+
+    private final HttpClient client;
+    private final Path dir;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Entry<?>> entries = new ConcurrentHashMap<>();
+
+    public ManifestCache(HttpClient client) {
+        this(client, FileUtil.CACHE_DIR.resolve("manifests"));
+    }
+
+    public ManifestCache(HttpClient client, Path dir) {
+        this.client = client;
+        this.dir = dir;
+    }
+
+    public <T> CompletableFuture<T> get(String url, Duration maxAge, Parser<T> parser) {
+        @SuppressWarnings("unchecked")
+        Entry<T> entry = (Entry<T>) entries.computeIfAbsent(url, u -> new Entry<T>());
+        Cached<T> cached = entry.cached;
+        if (cached != null) {
+            refreshIfStale(url, entry, cached, maxAge, parser);
+            return CompletableFuture.completedFuture(cached.value());
+        }
+        // First use this session, the disk copy is read off the calling thread
+        return CompletableFuture.supplyAsync(() -> {
+            synchronized (entry) {
+                if (entry.cached == null) {
+                    loadFromDisk(url, entry, parser);
+                }
+            }
+            return entry.cached;
+        }).thenCompose(loaded -> {
+            if (loaded == null) {
+                // Nothing to serve yet, this one has to wait
+                return refresh(url, entry, parser);
+            }
+            refreshIfStale(url, entry, loaded, maxAge, parser);
+            return CompletableFuture.completedFuture(loaded.value());
+        });
+    }
+
+    private <T> void refreshIfStale(String url, Entry<T> entry, Cached<T> cached, Duration maxAge,
+            Parser<T> parser) {
+        if (System.currentTimeMillis() - cached.meta().fetchedAt() > maxAge.toMillis()) {
+            refresh(url, entry, parser);
+        }
+    }
+
+    // Starts a revalidation unless one is already running, the future has the fresh value
+    private <T> CompletableFuture<T> refresh(String url, Entry<T> entry, Parser<T> parser) {
+        synchronized (entry) {
+            if (entry.refresh != null) {
+                return entry.refresh;
+            }
+            CompletableFuture<T> refresh = CompletableFuture.supplyAsync(() -> revalidate(url, entry, parser));
+            entry.refresh = refresh;
+            refresh.whenComplete((value, error) -> {
+                synchronized (entry) {
+                    if (entry.refresh == refresh) {
+                        entry.refresh = null;
+                    }
+                }
+            });
+            return refresh;
+        }
+    }
+
+    private <T> T revalidate(String url, Entry<T> entry, Parser<T> parser) {
+        Cached<T> cached = entry.cached;
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).GET();
+            if (cached != null) {
+                Meta meta = cached.meta();
+                if (meta.etag() != null) {
+                    request.header("If-None-Match", meta.etag());
+                }
+                if (meta.lastModified() != null) {
+                    request.header("If-Modified-Since", meta.lastModified());
+                }
+            }
+            HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+
+            if (response.statusCode() == 304 && cached != null) {
+                Meta meta = new Meta(url, cached.meta().etag(), cached.meta().lastModified(),
+                        System.currentTimeMillis());
+                entry.cached = new Cached<>(cached.value(), meta);
+                saveMeta(url, meta);
+                return cached.value();
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + " for " + url);
+            }
+
+            T value = parser.parse(response.body());
+            Meta fresh = new Meta(url, response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null), System.currentTimeMillis());
+            save(url, response.body(), fresh);
+            entry.cached = new Cached<>(value, fresh);
+            return value;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (cached != null) {
+                // Offline or the API is down, what we have is better than nothing
+                logger.warn("Could not refresh " + url + ", using cached copy: " + e);
+                return cached.value();
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    private <T> void loadFromDisk(String url, Entry<T> entry, Parser<T> parser) {
+        Path body = bodyFile(url);
+        Path metaFile = metaFile(url);
+        if (!Files.exists(body) || !Files.exists(metaFile)) {
+            return;
+        }
+        try {
+            Meta meta = mapper.readValue(metaFile.toFile(), Meta.class);
+            entry.cached = new Cached<>(parser.parse(Files.readAllBytes(body)), meta);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable cached copy of " + url, e);
+        }
+    }
+
+    private void save(String url, byte[] body, Meta meta) {
+        try {
+            Files.createDirectories(dir);
+            Path temp = bodyFile(url).resolveSibling(bodyFile(url).getFileName() + ".tmp");
+            Files.write(temp, body);
+            Files.move(temp, bodyFile(url), StandardCopyOption.REPLACE_EXISTING);
+            saveMeta(url, meta);
+        } catch (IOException e) {
+            logger.warn("Could not cache " + url, e);
+        }
+    }
+
+    private void saveMeta(String url, Meta meta) {
+        try {
+            Files.createDirectories(dir);
+            Path temp = metaFile(url).resolveSibling(metaFile(url).getFileName() + ".tmp");
+            mapper.writeValue(temp.toFile(), meta);
+            Files.move(temp, metaFile(url), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Could not cache " + url, e);
+        }
+    }
+
+    private Path bodyFile(String url) {
+        return dir.resolve(key(url) + ".body");
+    }
+
+    private Path metaFile(String url) {
+        return dir.resolve(key(url) + ".meta.json");
+    }
+
+    private static String key(String url) {
+        return UUID.nameUUIDFromBytes(url.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
@@ -0,0 +1,172 @@
+package dev.perillo.serversmith.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Pulls the few fields we use out of the launcher and API responses with a
+// streaming parser. Nothing we don't need becomes a node or even a string, and
+// lookups return as soon as they have their answer.
+final class ManifestReader {
+    private static final JsonFactory factory = new JsonFactory();
+
+    record PaperBuild(String build, String name, String sha256) {
+    }
+
+    private ManifestReader() {
+    }
+
+    // version_manifest_v2.json: {"latest": {...}, "versions": [{"id", "type", "url", "sha1", "releaseTime", ...}]}
+    static VersionManifest versionManifest(byte[] body) throws IOException {
+        Map<String, VersionManifest.Version> versions = new LinkedHashMap<>();
+        List<String> releases = new ArrayList<>();
+        try (JsonParser p = factory.createParser(body)) {
+            if (!enterArray(p, "versions")) {
+                throw new IOException("Not a version manifest");
+            }
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                String id = null, type = null, url = null, sha1 = null, time = null;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    p.nextToken();
+                    switch (field) {
+                        case "id" -> id = p.getText();
+                        case "type" -> type = p.getText();
+                        case "url" -> url = p.getText();
+                        case "sha1" -> sha1 = p.getText();
+                        case "releaseTime" -> time = p.getText();
+                        default -> p.skipChildren();
+                    }
+                }
+                VersionManifest.Version version = new VersionManifest.Version(id, type, url, sha1, time);
+                versions.put(id, version);
+                if ("release".equals(type)) {
+                    releases.add(id);
+                }
+            }
+        }
+        return new VersionManifest(versions, Collections.unmodifiableList(releases));
+    }
+
+    // Version JSON: {"downloads": {"server": {"url", "sha1", "size"}, ...}, "libraries": [...], ...}
+    // Stops at the server download, before the long library list
+    static DownloadService.DownloadTarget serverDownload(byte[] body) throws IOException {
+        try (JsonParser p = factory.createParser(body)) {
+            if (!enterObject(p, "downloads") || !enterObject(p, "server")) {
+                return null;
+            }
+            String url = null, sha1 = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "url" -> url = p.getText();
+                    case "sha1" -> sha1 = p.getText();
+                    default -> p.skipChildren();
+                }
+            }
+            return url != null ? new DownloadService.DownloadTarget(url, sha1, null) : null;
+        }
+    }
+
+    // Paper builds: {"builds": [{"build": 1, "downloads": {"application": {"name", "sha256"}}}, ...]}
+    // The newest build is the last one
+    static PaperBuild latestPaperBuild(byte[] body) throws IOException {
+        PaperBuild latest = null;
+        try (JsonParser p = factory.createParser(body)) {
+            if (!enterArray(p, "builds")) {
+                return null;
+            }
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                String build = null, name = null, sha256 = null;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    p.nextToken();
+                    if (field.equals("build")) {
+                        build = p.getText();
+                    } else if (field.equals("downloads") && enterObject(p, "application")) {
+                        while (p.nextToken() == JsonToken.FIELD_NAME) {
+                            String key = p.currentName();
+                            p.nextToken();
+                            switch (key) {
+                                case "name" -> name = p.getText();
+                                case "sha256" -> sha256 = p.getText();
+                                default -> p.skipChildren();
+                            }
+                        }
+                        // Rest of "downloads", e.g. mojang-mappings
+                        skipRest(p);
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+                if (build != null && name != null) {
+                    latest = new PaperBuild(build, name, sha256);
+                }
+            }
+        }
+        return latest;
+    }
+
+    // {"versions": ["a", "b", ...]}, used by the Paper project and NeoForge maven listings
+    static List<String> stringArray(byte[] body, String field) throws IOException {
+        List<String> values = new ArrayList<>();
+        try (JsonParser p = factory.createParser(body)) {
+            if (!enterArray(p, field)) {
+                return values;
+            }
+            while (p.nextToken() == JsonToken.VALUE_STRING) {
+                values.add(p.getText());
+            }
+        }
+        return values;
+    }
+
+    // With the parser on an object's START_OBJECT (or the start of the document), moves into
+    // the named field's array. Skips everything before it.
+    private static boolean enterArray(JsonParser p, String name) throws IOException {
+        return enter(p, name, JsonToken.START_ARRAY);
+    }
+
+    private static boolean enterObject(JsonParser p, String name) throws IOException {
+        return enter(p, name, JsonToken.START_OBJECT);
+    }
+
+    private static boolean enter(JsonParser p, String name, JsonToken expected) throws IOException {
+        if (p.currentToken() == null) {
+            p.nextToken();
+        }
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (field.equals(name)) {
+                if (value == expected) {
+                    return true;
+                }
+                p.skipChildren();
+                skipRest(p);
+                return false;
+            }
+            p.skipChildren();
+        }
+        return false;
+    }
+
+    // Skips to the end of the object we're in
+    private static void skipRest(JsonParser p) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            p.nextToken();
+            p.skipChildren();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package dev.perillo.serversmith.service;
+
+import java.util.Arrays;
+
+// The last CAPACITY samples of one server's resource usage, one primitive ring
+// per metric. Written by the sampler thread, read by the dashboard.
+public class MetricSeries {
+    public static final int CAPACITY = 120;
+
+    public enum Metric {
+        CPU, // percent of one core, so can go above 100
+        RSS, // bytes
+        THREADS,
+        READ, // bytes per second from storage
+        WRITE // bytes per second to storage
+    }
+
+    private final long[] times = new long[CAPACITY];
+    private final double[][] values = new double[Metric.values().length][CAPACITY];
+    private int head;
+    private int size;
+
+    synchronized void add(long epochMillis, double cpu, long rss, int threads, double read, double write) {
+        times[head] = epochMillis;
+        values[Metric.CPU.ordinal()][head] = cpu;
+        values[Metric.RSS.ordinal()][head] = rss;
+        values[Metric.THREADS.ordinal()][head] = threads;
+        values[Metric.READ.ordinal()][head] = read;
+        values[Metric.WRITE.ordinal()][head] = write;
+        head = (head + 1) % CAPACITY;
+        if (size < CAPACITY) {
+            size++;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized double latest(Metric metric) {
+        return size == 0 ? 0 : values[metric.ordinal()][Math.floorMod(head - 1, CAPACITY)];
+    }
+
+    public synchronized long latestTime() {
+        return size == 0 ? 0 : times[Math.floorMod(head - 1, CAPACITY)];
+    }
+
+    // Copies the samples oldest first into out, returns how many were copied
+    public synchronized int copy(Metric metric, double[] out) {
+        int n = Math.min(size, out.length);
+        double[] ring = values[metric.ordinal()];
+        int start = Math.floorMod(head - n, CAPACITY);
+        for (int i = 0; i < n; i++) {
+            out[i] = ring[(start + i) % CAPACITY];
+        }
+        return n;
+    }
+
+    synchronized void clear() {
+        for (double[] ring : values) {
+            Arrays.fill(ring, 0);
+        }
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,103 @@
+package dev.perillo.serversmith.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Samples CPU, memory, threads and disk I/O of every running server once a
+// second from /proc. One thread and one read buffer serve all servers, and the
+// samples land in preallocated rings, so the steady state doesn't allocate.
+// On systems without /proc the series simply stay empty.
+public class MetricsService {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsService.class);
+    private static final long INTERVAL_MILLIS = 1_000;
+    private static final boolean SUPPORTED = Files.isDirectory(Path.of("/proc/self"));
+
+    private final Map<String, MetricSeries> series = new ConcurrentHashMap<>();
+    private final Map<String, ProcSampler> samplers = new ConcurrentHashMap<>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final byte[] buffer = new byte[8192];
+    private Thread worker;
+
+    // Starts sampling the process under the key, replacing what was kept from its last run
+    public synchronized void track(String key, long pid) {
+        MetricSeries s = getSeries(key);
+        s.clear();
+        if (SUPPORTED) {
+            try {
+                ProcSampler old = samplers.put(key, new ProcSampler(pid));
+                if (old != null) {
+                    old.close();
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot sample process " + pid + ": " + e.getMessage());
+            }
+        }
+        // Keeps ticking for the listeners even when there's nothing to sample
+        if (worker == null) {
+            worker = new Thread(this::run, "metrics-sampler");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    // The series stays around so the dashboard can still show the last minutes
+    public void untrack(String key) {
+        ProcSampler sampler = samplers.remove(key);
+        if (sampler != null) {
+            sampler.close();
+        }
+    }
+
+    public MetricSeries getSeries(String key) {
+        return series.computeIfAbsent(key, k -> new MetricSeries());
+    }
+
+    // Called on the sampler thread after every round
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized void stop() {
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+        samplers.values().forEach(ProcSampler::close);
+        samplers.clear();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long nanos = System.nanoTime();
+            long millis = System.currentTimeMillis();
+            for (Map.Entry<String, ProcSampler> entry : samplers.entrySet()) {
+                MetricSeries s = series.get(entry.getKey());
+                if (s != null && !entry.getValue().sample(nanos, millis, buffer, s)) {
+                    // Exited between rounds, untrack() will follow from the exit handler
+                    samplers.remove(entry.getKey(), entry.getValue());
+                    entry.getValue().close();
+                }
+            }
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+            try {
+                Thread.sleep(INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package dev.perillo.serversmith.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Append-only, content-addressed blob store for backups. Blobs go into pack
+// files of up to PACK_SIZE and index.bin records where each one landed, keyed
+// by the first 128 bits of its SHA-256. Nothing is ever rewritten: index
+// records are only appended once the pack data they point at is on disk, so a
+// backup that dies halfway leaves some unreferenced bytes and nothing worse.
+final class PackStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(PackStore.class);
+    private static final long PACK_SIZE = 1L << 30;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    // Key, pack number, offset, length
+    private static final int INDEX_RECORD = 16 + 4 + 8 + 4;
+
+    record Key(long hi, long lo) {
+        static Key hash(MessageDigest sha256, byte[] data, int off, int len) {
+            sha256.update(data, off, len);
+            ByteBuffer digest = ByteBuffer.wrap(sha256.digest());
+            return new Key(digest.getLong(0), digest.getLong(8));
+        }
+
+        static Key read(DataInput in) throws IOException {
+            return new Key(in.readLong(), in.readLong());
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeLong(hi);
+            out.writeLong(lo);
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private final Path dir;
+    private final Path indexFile;
+    private final KeyTable table = new KeyTable();
+    private final ByteArrayOutputStream pendingIndex = new ByteArrayOutputStream();
+    private final Map<Integer, FileChannel> readers = new HashMap<>();
+
+    private int pack;
+    private long packOffset;
+    private FileOutputStream packFile;
+    private BufferedOutputStream packOut;
+
+    PackStore(Path dir) throws IOException {
+        this.dir = dir;
+        this.indexFile = dir.resolve("index.bin");
+        Files.createDirectories(dir);
+        loadIndex();
+        // Carry on in the newest pack, a crashed run's leftovers at its end are never referenced
+        while (Files.exists(packPath(pack + 1))) {
+            pack++;
+        }
+    }
+
+    // Stores the blob unless it's already there. True if it was new.
+    synchronized boolean put(Key key, byte[] data, int off, int len) throws IOException {
+        if (table.find(key) >= 0) {
+            return false;
+        }
+        if (packOut == null || packOffset + len > PACK_SIZE && packOffset > 0) {
+            openPack(packOut == null ? pack : pack + 1);
+        }
+        packOut.write(data, off, len);
+        table.put(key, pack, packOffset, len);
+
+        DataOutputStream record = new DataOutputStream(pendingIndex);
+        key.write(record);
+        record.writeInt(pack);
+        record.writeLong(packOffset);
+        record.writeInt(len);
+        packOffset += len;
+        return true;
+    }
+
+    synchronized int length(Key key) throws IOException {
+        int slot = table.find(key);
+        if (slot < 0) {
+            throw new IOException("Backup data " + key + " is missing from " + dir);
+        }
+        return table.lengths[slot];
+    }
+
+    synchronized byte[] get(Key key) throws IOException {
+        int slot = table.find(key);
+        if (slot < 0) {
+            throw new IOException("Backup data " + key + " is missing from " + dir);
+        }
+        int blobPack = table.packs[slot];
+        if (blobPack == pack && packOut != null) {
+            packOut.flush();
+        }
+        FileChannel channel = readers.get(blobPack);
+        if (channel == null) {
+            channel = FileChannel.open(packPath(blobPack), StandardOpenOption.READ);
+            readers.put(blobPack, channel);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(table.lengths[slot]);
+        long position = table.offsets[slot];
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Pack " + packPath(blobPack) + " is truncated");
+            }
+        }
+        return buffer.array();
+    }
+
+    // Makes everything put so far durable: pack data first, then the index records for it
+    synchronized void flush() throws IOException {
+        if (packOut != null) {
+            packOut.flush();
+            packFile.getChannel().force(false);
+        }
+        if (pendingIndex.size() > 0) {
+            try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer records = ByteBuffer.wrap(pendingIndex.toByteArray());
+                while (records.hasRemaining()) {
+                    index.write(records);
+                }
+                index.force(false);
+            }
+            pendingIndex.reset();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        if (packOut != null) {
+            packOut.close();
+            packOut = null;
+        }
+        for (FileChannel channel : readers.values()) {
+            channel.close();
+        }
+        readers.clear();
+    }
+
+    private void openPack(int number) throws IOException {
+        if (packOut != null) {
+            packOut.flush();
+            packFile.getChannel().force(false);
+            packOut.close();
+        }
+        pack = number;
+        Path path = packPath(number);
+        packOffset = Files.exists(path) ? Files.size(path) : 0;
+        packFile = new FileOutputStream(path.toFile(), true);
+        packOut = new BufferedOutputStream(packFile, BUFFER_SIZE);
+    }
+
+    private Path packPath(int number) {
+        return dir.resolve(String.format("pack-%05d.dat", number));
+    }
+
+    private void loadIndex() throws IOException {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        long records = Files.size(indexFile) / INDEX_RECORD;
+        if (Files.size(indexFile) % INDEX_RECORD != 0) {
+            // Torn last record, its data was never acknowledged. Cut it off so new records line up.
+            logger.warn("Dropping incomplete record at the end of " + indexFile);
+            try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+                index.truncate(records * INDEX_RECORD);
+            }
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile), BUFFER_SIZE))) {
+            for (long i = 0; i < records; i++) {
+                table.put(Key.read(in), in.readInt(), in.readLong(), in.readInt());
+            }
+        }
+    }
+
+    // Open addressing over parallel arrays, a few dozen bytes per blob instead of a HashMap
+    // node, a key and a value object. A big world has millions of chunks.
+    private static final class KeyTable {
+        long[] his = new long[1 << 12];
+        long[] los = new long[1 << 12];
+        int[] packs = new int[1 << 12];
+        long[] offsets = new long[1 << 12];
+        int[] lengths = new int[1 << 12];
+        boolean[] used = new boolean[1 << 12];
+        int size;
+
+        int find(Key key) {
+            int mask = his.length - 1;
+            for (int slot = (int) key.lo() & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (his[slot] == key.hi() && los[slot] == key.lo()) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        void put(Key key, int pack, long offset, int length) {
+            if (find(key) >= 0) {
+                return;
+            }
+            if (size + 1 > his.length * 3 / 4) {
+                grow();
+            }
+            int mask = his.length - 1;
+            int slot = (int) key.lo() & mask;
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            his[slot] = key.hi();
+            los[slot] = key.lo();
+            packs[slot] = pack;
+            offsets[slot] = offset;
+            lengths[slot] = length;
+            size++;
+        }
+
+        private void grow() {
+            long[] oldHis = his, oldLos = los, oldOffsets = offsets;
+            int[] oldPacks = packs, oldLengths = lengths;
+            boolean[] oldUsed = used;
+            int capacity = his.length * 2;
+            his = new long[capacity];
+            los = new long[capacity];
+            packs = new int[capacity];
+            offsets = new long[capacity];
+            lengths = new int[capacity];
+            used = new boolean[capacity];
+            size = 0;
+            for (int i = 0; i < oldHis.length; i++) {
+                if (oldUsed[i]) {
+                    put(new Key(oldHis[i], oldLos[i]), oldPacks[i], oldOffsets[i], oldLengths[i]);
+                }
+            }
+        }
+    }
+}
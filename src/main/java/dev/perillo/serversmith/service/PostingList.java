@@ -0,0 +1,160 @@
+package dev.perillo.serversmith.service;
+
+import java.util.Arrays;
+
+// Sorted line numbers stored as varint deltas, with a skip entry every
+// SKIP_INTERVAL postings so cursors can jump ahead during intersections.
+// Appends, trims and reads must be coordinated by the owner (LogIndex's lock).
+final class PostingList {
+    private static final int SKIP_INTERVAL = 128;
+
+    private byte[] data = new byte[16];
+    private int length;
+    private int count;
+    private long last = -1;
+    // Value before the first posting, the first delta starts from it
+    private long base = -1;
+
+    // Skip k points at posting (k + 1) * SKIP_INTERVAL: the value before it and its byte offset
+    private long[] skipBase = new long[4];
+    private int[] skipOffset = new int[4];
+    private int skips;
+
+    void add(long line) {
+        if (line <= last) {
+            return; // already have this line
+        }
+        if (count > 0 && count % SKIP_INTERVAL == 0) {
+            if (skips == skipBase.length) {
+                skipBase = Arrays.copyOf(skipBase, skips * 2);
+                skipOffset = Arrays.copyOf(skipOffset, skips * 2);
+            }
+            skipBase[skips] = last;
+            skipOffset[skips] = length;
+            skips++;
+        }
+        long delta = line - last;
+        if (length + 10 > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        while ((delta & ~0x7FL) != 0) {
+            data[length++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        data[length++] = (byte) delta;
+        last = line;
+        count++;
+    }
+
+    // Drops the postings below line a skip block at a time, so up to SKIP_INTERVAL - 1 of them
+    // can stay behind; cursors step over those like any other posting below their target
+    void trimBelow(long line) {
+        if (last < line) {
+            base = last;
+            length = 0;
+            count = 0;
+            skips = 0;
+            data = new byte[16];
+            return;
+        }
+        int lo = 0, hi = skips - 1, best = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (skipBase[mid] < line) {
+                best = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (best < 0) {
+            return;
+        }
+        int offset = skipOffset[best];
+        base = skipBase[best];
+        count -= (best + 1) * SKIP_INTERVAL;
+        length -= offset;
+        System.arraycopy(data, offset, data, 0, length);
+        skips -= best + 1;
+        System.arraycopy(skipBase, best + 1, skipBase, 0, skips);
+        System.arraycopy(skipOffset, best + 1, skipOffset, 0, skips);
+        for (int i = 0; i < skips; i++) {
+            skipOffset[i] -= offset;
+        }
+        if (data.length > 64 && length < data.length / 4) {
+            data = Arrays.copyOf(data, Math.max(16, length * 2));
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    long last() {
+        return last;
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    final class Cursor {
+        private final int limit = count;
+        private int index;
+        private int pos;
+        private long value = base;
+
+        long value() {
+            return value;
+        }
+
+        boolean next() {
+            if (index >= limit) {
+                return false;
+            }
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += delta;
+            index++;
+            return true;
+        }
+
+        // Moves to the first posting >= target, false if there is none
+        boolean advanceTo(long target) {
+            if (index > 0 && value >= target) {
+                return true;
+            }
+            // Largest skip whose preceding value is still below the target
+            int lo = 0, hi = skips - 1, best = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (skipBase[mid] < target) {
+                    best = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (best >= 0) {
+                int skipIndex = (best + 1) * SKIP_INTERVAL;
+                if (skipIndex > index && skipIndex < limit) {
+                    index = skipIndex;
+                    pos = skipOffset[best];
+                    value = skipBase[best];
+                }
+            }
+            while (next()) {
+                if (value >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
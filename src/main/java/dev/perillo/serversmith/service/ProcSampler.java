@@ -0,0 +1,161 @@
+package dev.perillo.serversmith.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+// Reads one process's /proc/<pid>/stat, status and io. The files stay open and
+// are re-read from offset 0 each time (procfs regenerates them on every read),
+// and parsing works on the caller's byte buffer, so a sample allocates nothing.
+final class ProcSampler implements Closeable {
+    // USER_HZ. It's 100 on every Linux we'd run on and there's no way to ask without native code
+    private static final int CLOCK_TICKS = 100;
+    private static final byte[] VM_RSS = "VmRSS:".getBytes();
+    private static final byte[] THREADS = "Threads:".getBytes();
+    private static final byte[] READ_BYTES = "read_bytes:".getBytes();
+    private static final byte[] WRITE_BYTES = "write_bytes:".getBytes();
+
+    private final RandomAccessFile stat;
+    private final RandomAccessFile status;
+    private final RandomAccessFile io;
+
+    private long lastNanos;
+    private long lastTicks = -1;
+    private long lastRead = -1;
+    private long lastWrite = -1;
+
+    ProcSampler(long pid) throws IOException {
+        String dir = "/proc/" + pid + "/";
+        stat = new RandomAccessFile(dir + "stat", "r");
+        status = new RandomAccessFile(dir + "status", "r");
+        RandomAccessFile ioFile;
+        try {
+            ioFile = new RandomAccessFile(dir + "io", "r");
+        } catch (IOException e) {
+            // Some kernels restrict io to privileged readers, the other metrics still work
+            ioFile = null;
+        }
+        io = ioFile;
+    }
+
+    // Appends a sample to the series, false once the process is gone
+    boolean sample(long nanos, long epochMillis, byte[] buf, MetricSeries series) {
+        try {
+            int n = read(stat, buf);
+            // The command name is in parentheses and may contain anything, fields start after the last ')'
+            int pos = lastIndexOf(buf, n, (byte) ')');
+            if (pos < 0) {
+                return false;
+            }
+            // utime and stime are fields 14 and 15, i.e. the 12th and 13th after the name
+            pos = skipFields(buf, n, pos + 2, 11);
+            long utime = parseLong(buf, n, pos);
+            long stime = parseLong(buf, n, skipFields(buf, n, pos, 1));
+            long ticks = utime + stime;
+
+            n = read(status, buf);
+            long rss = parseLong(buf, n, find(buf, n, VM_RSS)) * 1024;
+            int threads = (int) parseLong(buf, n, find(buf, n, THREADS));
+
+            long readBytes = -1;
+            long writeBytes = -1;
+            if (io != null) {
+                n = read(io, buf);
+                readBytes = parseLong(buf, n, find(buf, n, READ_BYTES));
+                writeBytes = parseLong(buf, n, find(buf, n, WRITE_BYTES));
+            }
+
+            double seconds = (nanos - lastNanos) / 1e9;
+            boolean first = lastTicks < 0;
+            double cpu = first ? 0 : (ticks - lastTicks) * 100.0 / CLOCK_TICKS / seconds;
+            double readRate = first || readBytes < 0 ? 0 : (readBytes - lastRead) / seconds;
+            double writeRate = first || writeBytes < 0 ? 0 : (writeBytes - lastWrite) / seconds;
+            series.add(epochMillis, cpu, rss, threads, readRate, writeRate);
+
+            lastNanos = nanos;
+            lastTicks = ticks;
+            lastRead = readBytes;
+            lastWrite = writeBytes;
+            return true;
+        } catch (IOException e) {
+            // ESRCH once the process has exited
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(stat);
+        closeQuietly(status);
+        closeQuietly(io);
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static int read(RandomAccessFile file, byte[] buf) throws IOException {
+        file.seek(0);
+        int n = 0;
+        while (n < buf.length) {
+            int r = file.read(buf, n, buf.length - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+
+    private static int lastIndexOf(byte[] buf, int n, byte b) {
+        for (int i = n - 1; i >= 0; i--) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipFields(byte[] buf, int n, int pos, int count) {
+        for (int skipped = 0; skipped < count && pos < n; pos++) {
+            if (buf[pos] == ' ') {
+                skipped++;
+            }
+        }
+        return pos;
+    }
+
+    // Position right after the key, or n if it's missing
+    private static int find(byte[] buf, int n, byte[] key) {
+        outer: for (int i = 0; i + key.length <= n; i++) {
+            // Keys start a line
+            if (i > 0 && buf[i - 1] != '\n') {
+                continue;
+            }
+            for (int k = 0; k < key.length; k++) {
+                if (buf[i + k] != key[k]) {
+                    continue outer;
+                }
+            }
+            return i + key.length;
+        }
+        return n;
+    }
+
+    // Skips leading blanks, 0 if there is no number
+    private static long parseLong(byte[] buf, int n, int pos) {
+        while (pos < n && (buf[pos] == ' ' || buf[pos] == '\t')) {
+            pos++;
+        }
+        long value = 0;
+        while (pos < n && buf[pos] >= '0' && buf[pos] <= '9') {
+            value = value * 10 + (buf[pos++] - '0');
+        }
+        return value;
+    }
+}
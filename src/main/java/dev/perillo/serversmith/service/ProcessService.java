@@ -1,29 +1,84 @@
 package dev.perillo.serversmith.service;
 
 import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.model.ServerState;
+import dev.perillo.serversmith.util.FileUtil;
 import javafx.application.Platform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class ProcessService {
     private static final Logger logger = LoggerFactory.getLogger(ProcessService.class);
-    private final Map<String, ServerProcess> processes = new ConcurrentHashMap<>();
+    private static final long HEALTH_INTERVAL_MILLIS = 1_000;
+    private static final long TICK_POLL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int SUBSCRIBER_BATCH = 1_000;
 
-    public void startServer(ServerInstance instance, int minMem, int maxMem, Consumer<String> onLog)
+    private final Map<String, SupervisedProcess> processes = new ConcurrentHashMap<>();
+    private final Map<String, ConsoleLog> consoleLogs = new ConcurrentHashMap<>();
+    private final Map<String, LogIndex> logIndexes = new ConcurrentHashMap<>();
+    private final MetricsService metrics = new MetricsService();
+    private final Map<String, TickMonitor> tickMonitors = new ConcurrentHashMap<>();
+    private final Map<String, BackupService> backups = new ConcurrentHashMap<>();
+    // Lock files of the instances this process has claimed, held until shutdown
+    private final Map<String, FileChannel> claims = new ConcurrentHashMap<>();
+    // Serializes start and shutdown so an instance can't be launched twice
+    private final ReentrantLock lifecycleLock = new ReentrantLock();
+    // Where instance state changes are applied: the FX thread in the app, the state thread in the daemon
+    private final Consumer<Runnable> stateExecutor;
+    private volatile boolean shuttingDown;
+    private Thread supervisor;
+
+    public ProcessService() {
+        this(Platform::runLater);
+    }
+
+    public ProcessService(Consumer<Runnable> stateExecutor) {
+        this.stateExecutor = stateExecutor;
+    }
+
+    public void startServer(ServerInstance instance, int minMem, int maxMem) throws IOException {
+        startServer(instance, minMem, maxMem, null);
+    }
+
+    public void startServer(ServerInstance instance, int minMem, int maxMem, Consumer<List<String>> onLog)
             throws IOException {
-        if (processes.containsKey(instance.getLocation().toString())) {
-            throw new IllegalStateException("Server already running");
+        lifecycleLock.lock();
+        try {
+            if (shuttingDown) {
+                throw new IllegalStateException("ServerSmith is shutting down");
+            }
+            if (processes.containsKey(instance.getLocation().toString())) {
+                throw new IllegalStateException("Server already running");
+            }
+            launch(instance, minMem, maxMem, onLog);
+        } finally {
+            lifecycleLock.unlock();
         }
+    }
+
+    private void launch(ServerInstance instance, int minMem, int maxMem, Consumer<List<String>> onLog)
+            throws IOException {
+        String key = instance.getLocation().toString();
 
         File instanceDir = instance.getLocation().toFile();
         // Find jar? Usually "server.jar" but NeoForge might be different?
@@ -34,6 +89,7 @@ public class ProcessService {
         // "-jar", "<jar>", "nogui")
         // So we look for the main jar.
 
+        claim(instance);
         File jarFile = new File(instanceDir, "server.jar");
         if (!jarFile.exists()) {
             // Try to find any jar? Or specific neoforged?
@@ -69,83 +125,239 @@ public class ProcessService {
         pb.redirectErrorStream(true);
 
         Process process = pb.start();
-        ServerProcess serverProcess = new ServerProcess(process, instance, onLog);
-        processes.put(instance.getLocation().toString(), serverProcess);
-
-        // Update status
-        instance.setRunning(true); // Should notify UI if bound
+        LogPipeline pipeline = onLog != null ? new LogPipeline(onLog) : null;
+        TickMonitor ticks = getTickMonitor(instance);
+        ticks.reset();
+        SupervisedProcess supervised = new SupervisedProcess(process, instance, getConsoleLog(instance), pipeline,
+                ticks, stateExecutor);
+        supervised.log("[ServerSmith] Starting " + jarFile.getName());
+        processes.put(key, supervised);
+        metrics.track(key, process.pid());
+        ensureSupervisor();
 
-        // Start log reader
-        new Thread(serverProcess::readLog).start();
-
-        // On exit
-        process.onExit().thenRun(() -> {
-            processes.remove(instance.getLocation().toString());
-            Platform.runLater(() -> instance.setRunning(false));
-            if (onLog != null)
-                onLog.accept("Server stopped.");
+        // Exit is only reported once the reader has drained the last output
+        supervised.start(p -> {
+            processes.remove(key, p);
+            metrics.untrack(key);
         });
     }
 
     public void stopServer(ServerInstance instance) {
-        ServerProcess proc = processes.get(instance.getLocation().toString());
+        SupervisedProcess proc = processes.get(instance.getLocation().toString());
         if (proc != null) {
-            proc.sendCommand("stop");
+            proc.stop();
         }
     }
 
     public void killServer(ServerInstance instance) {
-        ServerProcess proc = processes.get(instance.getLocation().toString());
+        SupervisedProcess proc = processes.get(instance.getLocation().toString());
         if (proc != null) {
-            proc.process.destroyForcibly();
+            proc.kill();
         }
     }
 
     public void sendCommand(ServerInstance instance, String command) {
-        ServerProcess proc = processes.get(instance.getLocation().toString());
+        SupervisedProcess proc = processes.get(instance.getLocation().toString());
         if (proc != null) {
             proc.sendCommand(command);
         }
     }
 
-    public boolean isRunning(ServerInstance instance) {
-        return processes.containsKey(instance.getLocation().toString());
+    // Completes with the first output line that matches. Call it before sending the command
+    // that should produce the line. Fails if the server isn't running or exits first.
+    public CompletableFuture<String> awaitLog(ServerInstance instance, Predicate<String> match) {
+        SupervisedProcess proc = processes.get(instance.getLocation().toString());
+        return proc != null ? proc.awaitLine(match)
+                : CompletableFuture.failedFuture(new IllegalStateException(instance.getName() + " is not running"));
     }
 
-    private static class ServerProcess {
-        final Process process;
-        final ServerInstance instance;
-        final Consumer<String> onLog;
+    // Completes with the exit code once the server is fully stopped, or right away if it isn't running
+    public CompletableFuture<Integer> onExit(ServerInstance instance) {
+        SupervisedProcess proc = processes.get(instance.getLocation().toString());
+        return proc != null ? proc.onExit() : CompletableFuture.completedFuture(0);
+    }
 
-        ServerProcess(Process process, ServerInstance instance, Consumer<String> onLog) {
-            this.process = process;
-            this.instance = instance;
-            this.onLog = onLog;
+    // Stops every server, waits up to the timeout for them to exit, then kills the rest
+    public void shutdown(Duration timeout) {
+        lifecycleLock.lock();
+        try {
+            shuttingDown = true;
+        } finally {
+            lifecycleLock.unlock();
         }
 
-        void readLog() {
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (onLog != null) {
-                        String finalLine = line;
-                        Platform.runLater(() -> onLog.accept(finalLine));
+        List<SupervisedProcess> running = new ArrayList<>(processes.values());
+        running.forEach(SupervisedProcess::stop);
+        CompletableFuture<?>[] exits = running.stream().map(SupervisedProcess::onExit)
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(exits).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Servers did not stop within " + timeout + ", killing them");
+            running.forEach(SupervisedProcess::kill);
+            CompletableFuture.allOf(exits).orTimeout(10, TimeUnit.SECONDS).exceptionally(t -> null).join();
+        } catch (Exception e) {
+            logger.error("Interrupted while stopping servers", e);
+            running.forEach(SupervisedProcess::kill);
+        }
+
+        if (supervisor != null) {
+            supervisor.interrupt();
+        }
+        metrics.stop();
+        logIndexes.values().forEach(LogIndex::stop);
+        consoleLogs.values().forEach(ConsoleLog::close);
+        for (FileChannel claim : claims.values()) {
+            try {
+                claim.close();
+            } catch (IOException e) {
+                logger.warn("Failed to release " + claim, e);
+            }
+        }
+    }
+
+    // Only one process may run an instance or write its console history. The app and a daemon
+    // both opening the same log would each recover it on open, truncating what the other is
+    // still appending, and both could launch the server on the same world.
+    private synchronized void claim(ServerInstance instance) throws IOException {
+        String key = instance.getLocation().toString();
+        if (claims.containsKey(key)) {
+            return;
+        }
+        Path path = FileUtil.getInstanceLockPath(instance.getLocation());
+        Files.createDirectories(path.getParent());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // Another ProcessService in this JVM has it
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException(instance.getName() + " is in use by another ServerSmith process");
+        }
+        claims.put(key, channel);
+    }
+
+    private void ensureSupervisor() {
+        if (supervisor != null) {
+            return;
+        }
+        supervisor = Thread.ofVirtual().name("process-supervisor").start(() -> {
+            long lastPoll = System.nanoTime();
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(HEALTH_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long now = System.nanoTime();
+                boolean poll = now - lastPoll >= TICK_POLL_NANOS;
+                if (poll) {
+                    lastPoll = now;
+                }
+                for (SupervisedProcess proc : processes.values()) {
+                    proc.checkHealth(now);
+                    if (poll) {
+                        proc.pollTicks(TickMonitor.pollCommands(proc.instance.getType()));
                     }
                 }
-            } catch (IOException e) {
-                logger.error("Error reading log for " + instance.getName(), e);
             }
+        });
+    }
+
+    // Console history for the instance, opened on first use and kept for the session.
+    // Null if it can't be opened, see openConsoleLog for why.
+    public ConsoleLog getConsoleLog(ServerInstance instance) {
+        try {
+            return openConsoleLog(instance);
+        } catch (IOException e) {
+            logger.error("Failed to open console log for " + instance.getName(), e);
+            return null;
+        }
+    }
+
+    // Claims the instance first, so it fails if another process has it
+    public synchronized ConsoleLog openConsoleLog(ServerInstance instance) throws IOException {
+        String key = instance.getLocation().toString();
+        ConsoleLog log = consoleLogs.get(key);
+        if (log == null) {
+            claim(instance);
+            log = ConsoleLog.open(FileUtil.getInstanceConsoleDir(instance.getLocation()));
+            consoleLogs.put(key, log);
         }
+        return log;
+    }
+
+    // A reader of the instance's console output from line 'from' on, negative counts back from
+    // the end. Works whether or not the server is running, output of later runs keeps coming.
+    public LogCursor openCursor(ServerInstance instance, long from) throws IOException {
+        return new LogCursor(openConsoleLog(instance), from);
+    }
 
-        void sendCommand(String cmd) {
+    // Pushes console output to the subscriber in batches on a thread of its own, until the
+    // returned cursor is closed. A subscriber that takes its time only falls behind itself.
+    public LogCursor subscribe(ServerInstance instance, long from, Consumer<LogCursor.Batch> subscriber)
+            throws IOException {
+        LogCursor cursor = openCursor(instance, from);
+        Thread.ofVirtual().name("log-subscriber-" + instance.getName()).start(() -> {
             try {
-                OutputStream out = process.getOutputStream();
-                out.write((cmd + "\n").getBytes(StandardCharsets.UTF_8));
-                out.flush();
-            } catch (IOException e) {
-                logger.error("Error sending command to " + instance.getName(), e);
+                while (!cursor.isClosed()) {
+                    LogCursor.Batch batch = cursor.next(SUBSCRIBER_BATCH, 1, TimeUnit.SECONDS);
+                    if (!batch.lines().isEmpty()) {
+                        subscriber.accept(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.error("Log subscriber for " + instance.getName() + " failed, unsubscribing", e);
+            } finally {
+                cursor.close();
             }
+        });
+        return cursor;
+    }
+
+    public ServerState getState(ServerInstance instance) {
+        SupervisedProcess proc = processes.get(instance.getLocation().toString());
+        return proc != null ? proc.getState() : ServerState.STOPPED;
+    }
+
+    public boolean isRunning(ServerInstance instance) {
+        return processes.containsKey(instance.getLocation().toString());
+    }
+
+    // Search index over the console history, built in the background from its first search
+    public LogIndex getLogIndex(ServerInstance instance) {
+        ConsoleLog log = getConsoleLog(instance);
+        if (log == null) {
+            return null;
         }
+        return logIndexes.computeIfAbsent(instance.getLocation().toString(), key -> new LogIndex(log));
+    }
+
+    // TPS/MSPT of the instance's current or last run
+    public TickMonitor getTickMonitor(ServerInstance instance) {
+        return tickMonitors.computeIfAbsent(instance.getLocation().toString(), key -> new TickMonitor());
+    }
+
+    // Resource usage of the instance's current or last run
+    public MetricSeries getMetrics(ServerInstance instance) {
+        return metrics.getSeries(instance.getLocation().toString());
+    }
+
+    // One per instance, so two backups of the same world never run at once
+    public BackupService getBackupService(ServerInstance instance) {
+        return backups.computeIfAbsent(instance.getLocation().toString(),
+                key -> new BackupService(instance.getLocation()));
+    }
+
+    public MetricsService getMetricsService() {
+        return metrics;
     }
 }
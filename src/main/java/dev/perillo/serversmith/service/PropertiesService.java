@@ -18,6 +18,8 @@ public class PropertiesService {
     private final Path filePath;
     private final List<String> lines = new ArrayList<>();
     private final Map<String, Integer> keyLineIndex = new HashMap<>();
+    // mtime of the version we loaded or saved last, to tell our own writes from someone else's
+    private volatile long knownMtime = -1;
 
     public PropertiesService(Path filePath) {
         this.filePath = filePath;
@@ -30,6 +32,7 @@ public class PropertiesService {
         try {
             lines.clear();
             keyLineIndex.clear();
+            knownMtime = mtime();
             List<String> fileLines = Files.readAllLines(filePath, StandardCharsets.UTF_8);
             for (int i = 0; i < fileLines.size(); i++) {
                 String line = fileLines.get(i);
@@ -83,8 +86,31 @@ public class PropertiesService {
             Path tempFile = filePath.resolveSibling(filePath.getFileName() + ".tmp");
             Files.write(tempFile, lines, StandardCharsets.UTF_8);
             Files.move(tempFile, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            knownMtime = mtime();
         } catch (IOException e) {
             logger.error("Failed to save properties to " + filePath, e);
         }
     }
+
+    // Calls onChange (on the watcher thread) when something else rewrites the file, e.g. the
+    // server on startup or an editor. The caller decides when to load() it.
+    public FileWatcher.Subscription watch(FileWatcher watcher, Runnable onChange) {
+        return watcher.watch(filePath.getParent(), changes -> {
+            for (FileWatcher.Change change : changes) {
+                if ((change.path().equals(filePath.toAbsolutePath().normalize())
+                        || change.kind() == FileWatcher.Kind.OVERFLOW) && mtime() != knownMtime) {
+                    onChange.run();
+                    return;
+                }
+            }
+        });
+    }
+
+    private long mtime() {
+        try {
+            return Files.getLastModifiedTime(filePath).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
 }
@@ -0,0 +1,291 @@
+package dev.perillo.serversmith.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+// Downloads one large file as fixed-size chunks over several connections, each
+// written at its own offset of a preallocated file. A journal next to the file
+// records how far every chunk got, so a download that was interrupted (app
+// closed, network gone) picks up where it stopped instead of at byte 0.
+// A chunk's progress only goes into the journal after the data behind it has
+// been forced to disk, every SYNC_BYTES or so, so a resume after a crash never
+// trusts bytes that didn't make it. Files without a checksum rely on this.
+final class RangedDownload {
+    private static final Logger logger = LoggerFactory.getLogger(RangedDownload.class);
+    static final long MIN_SIZE = 8L * 1024 * 1024;
+    private static final long CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final int CONNECTIONS = 4;
+    private static final int ATTEMPTS = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long SYNC_BYTES = 1024 * 1024;
+    private static final int JOURNAL_MAGIC = 0x53534A31; // "SSJ1"
+
+    private final HttpClient client;
+    private final String url;
+    private final Path file;
+    private final Path journalFile;
+    private final AtomicLong received = new AtomicLong();
+
+    private long length;
+    private String validator;
+    private long[] done;
+    private FileChannel journal;
+
+    RangedDownload(HttpClient client, String url, Path file) {
+        this.client = client;
+        this.url = url;
+        this.file = file;
+        this.journalFile = file.resolveSibling(file.getFileName() + ".journal");
+    }
+
+    // False if the server can't serve ranges or the file is too small to be worth it; the
+    // caller then streams it in one go. Otherwise the complete file is at `file` on return.
+    boolean run(LongConsumer progress) throws IOException, InterruptedException {
+        if (!probe()) {
+            discard();
+            return false;
+        }
+        int chunks = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        if (!resume(chunks)) {
+            done = new long[chunks];
+            Files.deleteIfExists(file);
+            Files.createDirectories(file.getParent());
+        }
+
+        // Reserve the space up front so chunks can land anywhere
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(length);
+        }
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE);
+                FileChannel journalChannel = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+            journal = journalChannel;
+            writeJournalHeader();
+
+            for (long d : done) {
+                received.addAndGet(d);
+            }
+            if (progress != null) {
+                progress.accept(received.get());
+            }
+
+            Semaphore connections = new Semaphore(CONNECTIONS);
+            List<Future<?>> tasks = new ArrayList<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < chunks; i++) {
+                    if (done[i] == chunkLength(i)) {
+                        continue;
+                    }
+                    int chunk = i;
+                    tasks.add(executor.submit(() -> {
+                        connections.acquire();
+                        try {
+                            fetchChunk(chunk, out, progress);
+                        } finally {
+                            connections.release();
+                        }
+                        return null;
+                    }));
+                }
+                try {
+                    for (Future<?> task : tasks) {
+                        task.get();
+                    }
+                } catch (ExecutionException e) {
+                    // Stop the other chunks before the executor waits for them
+                    tasks.forEach(t -> t.cancel(true));
+                    if (e.getCause() instanceof IOException io) {
+                        throw io;
+                    }
+                    throw new IOException("Download of " + url + " failed", e.getCause());
+                }
+            }
+            out.force(false);
+        }
+        Files.deleteIfExists(journalFile);
+        return true;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    // Drops the journal, the next attempt starts from scratch
+    void discard() throws IOException {
+        Files.deleteIfExists(journalFile);
+    }
+
+    private boolean probe() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).header("Range", "bytes=0-0").GET().build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        // Closed unread: a server that ignores Range answers with the whole file, which the
+        // fallback is about to download anyway
+        response.body().close();
+        if (response.statusCode() != 206) {
+            return false;
+        }
+        // "bytes 0-0/123456"
+        String range = response.headers().firstValue("Content-Range").orElse("");
+        int slash = range.lastIndexOf('/');
+        if (slash < 0 || range.endsWith("*")) {
+            return false;
+        }
+        try {
+            length = Long.parseLong(range.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        // If-Range only accepts strong ETags
+        validator = response.headers().firstValue("ETag").filter(tag -> !tag.startsWith("W/"))
+                .or(() -> response.headers().firstValue("Last-Modified")).orElse("");
+        return length >= MIN_SIZE;
+    }
+
+    private void fetchChunk(int chunk, FileChannel out, LongConsumer progress)
+            throws IOException, InterruptedException {
+        IOException last = null;
+        for (int attempt = 1; attempt <= ATTEMPTS; attempt++) {
+            long start = chunk * CHUNK_SIZE + done[chunk];
+            long end = chunk * CHUNK_SIZE + chunkLength(chunk) - 1;
+            if (start > end) {
+                return;
+            }
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .header("Range", "bytes=" + start + "-" + end).GET();
+            if (!validator.isEmpty()) {
+                // Full body instead of a range if the file changed since we started
+                builder.header("If-Range", validator);
+            }
+            try {
+                HttpResponse<InputStream> response = client.send(builder.build(),
+                        HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream in = response.body()) {
+                    if (response.statusCode() != 206) {
+                        throw new IOException("Expected a partial response for " + url + " but got HTTP "
+                                + response.statusCode() + ", the file may have changed");
+                    }
+                    copy(in, out, chunk, start, end, progress);
+                }
+                return;
+            } catch (IOException e) {
+                if (Thread.interrupted()) {
+                    // Cancelled because another chunk failed, don't retry
+                    throw new InterruptedException();
+                }
+                last = e;
+                logger.warn("Chunk " + chunk + " of " + url + " failed (attempt " + attempt + "): " + e.getMessage());
+            }
+        }
+        throw last;
+    }
+
+    private void copy(InputStream in, FileChannel out, int chunk, long start, long end, LongConsumer progress)
+            throws IOException {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long position = start;
+        long unsynced = 0;
+        int n;
+        while (position <= end && (n = in.read(bytes, 0, (int) Math.min(bytes.length, end - position + 1))) != -1) {
+            buffer.clear().limit(n);
+            while (buffer.hasRemaining()) {
+                position += out.write(buffer, position);
+            }
+            done[chunk] += n;
+            unsynced += n;
+            if (unsynced >= SYNC_BYTES || position > end) {
+                out.force(false);
+                recordProgress(chunk);
+                unsynced = 0;
+            }
+            long total = received.addAndGet(n);
+            if (progress != null) {
+                progress.accept(total);
+            }
+        }
+        if (position <= end) {
+            throw new IOException("Connection closed " + (end - position + 1) + " bytes early");
+        }
+    }
+
+    private long chunkLength(int chunk) {
+        return Math.min(CHUNK_SIZE, length - chunk * CHUNK_SIZE);
+    }
+
+    // Journal layout: magic, length, chunk size, validator (length-prefixed UTF-8), then one
+    // long per chunk with the bytes it has written so far
+    private int headerSize() {
+        return 4 + 8 + 8 + 4 + validator.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private void writeJournalHeader() throws IOException {
+        byte[] tag = validator.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(headerSize() + done.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(JOURNAL_MAGIC).putLong(length).putLong(CHUNK_SIZE).putInt(tag.length).put(tag);
+        for (long d : done) {
+            header.putLong(d);
+        }
+        header.flip();
+        journal.truncate(0);
+        while (header.hasRemaining()) {
+            journal.write(header, header.position());
+        }
+    }
+
+    private void recordProgress(int chunk) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, done[chunk]);
+        journal.write(value, headerSize() + chunk * 8L);
+    }
+
+    // Picks up a previous attempt if it was for the same file, same size and same version
+    private boolean resume(int chunks) {
+        if (!Files.exists(journalFile) || !Files.exists(file)) {
+            return false;
+        }
+        try {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(journalFile)).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.getInt() != JOURNAL_MAGIC || data.getLong() != length || data.getLong() != CHUNK_SIZE) {
+                return false;
+            }
+            byte[] tag = new byte[data.getInt()];
+            data.get(tag);
+            if (validator.isEmpty() || !validator.equals(new String(tag, StandardCharsets.UTF_8))
+                    || data.remaining() < chunks * 8) {
+                return false;
+            }
+            done = new long[chunks];
+            for (int i = 0; i < chunks; i++) {
+                done[i] = Math.max(0, Math.min(chunkLength(i), data.getLong()));
+            }
+            logger.info("Resuming download of " + url);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+}
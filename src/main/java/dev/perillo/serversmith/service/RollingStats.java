@@ -0,0 +1,85 @@
+package dev.perillo.serversmith.service;
+
+import java.util.Arrays;
+
+// Statistics over the last `window` values. Besides the ring in arrival order
+// it keeps the same values sorted, updated with a binary search and one
+// arraycopy per add, so percentiles, min and max are plain array reads.
+public class RollingStats {
+    private final double[] ring;
+    private final double[] sorted;
+    private int head;
+    private int size;
+    private long total;
+
+    public RollingStats(int window) {
+        ring = new double[window];
+        sorted = new double[window];
+    }
+
+    public synchronized void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (size == ring.length) {
+            remove(ring[head]);
+        } else {
+            size++;
+        }
+        ring[head] = value;
+        head = (head + 1) % ring.length;
+        insert(value);
+        total++;
+    }
+
+    private void remove(double value) {
+        int at = Arrays.binarySearch(sorted, 0, size, value);
+        System.arraycopy(sorted, at + 1, sorted, at, size - at - 1);
+    }
+
+    // Called with size already counting the new value
+    private void insert(double value) {
+        int at = Arrays.binarySearch(sorted, 0, size - 1, value);
+        if (at < 0) {
+            at = -at - 1;
+        }
+        System.arraycopy(sorted, at, sorted, at + 1, size - 1 - at);
+        sorted[at] = value;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Values seen since the last clear, including those that left the window
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized double latest() {
+        return size == 0 ? Double.NaN : ring[Math.floorMod(head - 1, ring.length)];
+    }
+
+    public synchronized double min() {
+        return size == 0 ? Double.NaN : sorted[0];
+    }
+
+    public synchronized double max() {
+        return size == 0 ? Double.NaN : sorted[size - 1];
+    }
+
+    // Nearest-rank percentile, p in 0..100
+    public synchronized double percentile(double p) {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        int rank = (int) Math.ceil(p / 100 * size);
+        return sorted[Math.max(0, Math.min(size - 1, rank - 1))];
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+        total = 0;
+    }
+}
@@ -0,0 +1,309 @@
+package dev.perillo.serversmith.service;
+
+import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.model.ServerState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// One running server. Three virtual threads do the blocking work: one drains
+// stdout into the console log, one feeds queued commands to stdin and one waits
+// for the process to exit. Every state change goes through a single lock, so
+// stop, kill and exit can't interleave. Stdout is split into lines by
+// LineDecoder, so the reader makes no garbage of its own per line.
+class SupervisedProcess {
+    private static final Logger logger = LoggerFactory.getLogger(SupervisedProcess.class);
+    private static final long STOP_GRACE_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long TERMINATE_GRACE_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long READER_DRAIN_MILLIS = 5_000;
+    private static final String END_OF_COMMANDS = "\u0000";
+
+    private record LineWaiter(Predicate<String> match, CompletableFuture<String> line) {
+    }
+
+    final ServerInstance instance;
+    final Process process;
+    private final LogPipeline pipeline;
+    private final Consumer<Runnable> stateExecutor;
+    private final TickMonitor ticks;
+    private volatile ConsoleLog consoleLog;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final BlockingQueue<String> commands = new LinkedBlockingQueue<>();
+    private final CompletableFuture<Integer> exit = new CompletableFuture<>();
+    private final List<LineWaiter> lineWaiters = new CopyOnWriteArrayList<>();
+    private ServerState state = ServerState.STARTING;
+    private long stopRequestedAt;
+    private boolean terminateSent;
+    private Thread reader;
+
+    SupervisedProcess(Process process, ServerInstance instance, ConsoleLog consoleLog, LogPipeline pipeline,
+            TickMonitor ticks, Consumer<Runnable> stateExecutor) {
+        this.process = process;
+        this.instance = instance;
+        this.consoleLog = consoleLog;
+        this.pipeline = pipeline;
+        this.ticks = ticks;
+        this.stateExecutor = stateExecutor;
+    }
+
+    void start(Consumer<SupervisedProcess> onExit) {
+        String name = instance.getName();
+        publishState(ServerState.STARTING);
+        reader = Thread.ofVirtual().name("log-" + name).start(this::readLog);
+        Thread.ofVirtual().name("stdin-" + name).start(this::writeCommands);
+        Thread.ofVirtual().name("exit-" + name).start(() -> awaitExit(onExit));
+    }
+
+    ServerState getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    CompletableFuture<Integer> onExit() {
+        return exit;
+    }
+
+    // Asks the server to save and quit, escalating in checkHealth() if it doesn't
+    void stop() {
+        lock.lock();
+        try {
+            if (state == ServerState.STOPPED || stopRequestedAt != 0) {
+                return;
+            }
+            setState(ServerState.STOPPING);
+            stopRequestedAt = System.nanoTime();
+            commands.offer("stop");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void kill() {
+        lock.lock();
+        try {
+            if (state == ServerState.STOPPED) {
+                return;
+            }
+            setState(ServerState.STOPPING);
+            process.destroyForcibly();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean sendCommand(String cmd) {
+        lock.lock();
+        try {
+            if (state == ServerState.STOPPED) {
+                return false;
+            }
+            log("> " + cmd);
+            return commands.offer(cmd);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Completes with the next output line that matches, fails if the server exits first
+    CompletableFuture<String> awaitLine(Predicate<String> match) {
+        LineWaiter waiter = new LineWaiter(match, new CompletableFuture<>());
+        lineWaiters.add(waiter);
+        waiter.line().whenComplete((line, e) -> lineWaiters.remove(waiter));
+        if (exit.isDone()) {
+            waiter.line().completeExceptionally(new IllegalStateException("Server is not running"));
+        }
+        return waiter.line();
+    }
+
+    // Sends the tick health commands without echoing them, only once the server is up
+    void pollTicks(List<String> pollCommands) {
+        lock.lock();
+        try {
+            if (state != ServerState.RUNNING || !ticks.isPollingSupported()) {
+                return;
+            }
+            commands.addAll(pollCommands);
+        } finally {
+            lock.unlock();
+        }
+        ticks.polled();
+    }
+
+    // Called about once a second by the supervisor
+    void checkHealth(long now) {
+        lock.lock();
+        try {
+            if (state != ServerState.STOPPING || stopRequestedAt == 0) {
+                return;
+            }
+            long waited = now - stopRequestedAt;
+            if (!terminateSent && waited > STOP_GRACE_NANOS) {
+                log("[ServerSmith] Server did not stop in time, terminating");
+                process.destroy();
+                terminateSent = true;
+            } else if (terminateSent && waited > STOP_GRACE_NANOS + TERMINATE_GRACE_NANOS) {
+                log("[ServerSmith] Server still running, killing");
+                process.destroyForcibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void log(String line) {
+        record(line, true);
+    }
+
+    private void readLog() {
+        try (InputStream out = process.getInputStream()) {
+            LineDecoder decoder = new LineDecoder(out);
+            LogLine line;
+            boolean starting = true;
+            while ((line = decoder.next()) != null) {
+                if (starting && line.contains("Done (") && line.contains("For help")) {
+                    markRunning();
+                    starting = false;
+                }
+                ticks.accept(line);
+                if (!lineWaiters.isEmpty()) {
+                    String text = line.toString();
+                    for (LineWaiter waiter : lineWaiters) {
+                        if (waiter.match().test(text)) {
+                            waiter.line().complete(text);
+                        }
+                    }
+                }
+                // Flush once the burst is over so readers see whole bursts at a time
+                record(line, decoder.idle());
+            }
+        } catch (IOException e) {
+            logger.error("Error reading log for " + instance.getName(), e);
+        }
+    }
+
+    private void writeCommands() {
+        try {
+            OutputStream out = process.getOutputStream();
+            while (true) {
+                String cmd = commands.take();
+                // Identity check on purpose, a typed command is never this instance
+                if (cmd == END_OF_COMMANDS) {
+                    return;
+                }
+                out.write((cmd + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.error("Error sending command to " + instance.getName(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitExit(Consumer<SupervisedProcess> onExit) {
+        int code = -1;
+        try {
+            code = process.waitFor();
+            // Let the reader drain what the server printed on its way out
+            reader.join(READER_DRAIN_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commands.offer(END_OF_COMMANDS);
+
+        lock.lock();
+        try {
+            setState(ServerState.STOPPED);
+            log("Server stopped.");
+        } finally {
+            lock.unlock();
+        }
+        onExit.accept(this);
+        exit.complete(code);
+        for (LineWaiter waiter : lineWaiters) {
+            waiter.line().completeExceptionally(new IllegalStateException("Server stopped"));
+        }
+    }
+
+    private void markRunning() {
+        lock.lock();
+        try {
+            if (state == ServerState.STARTING) {
+                setState(ServerState.RUNNING);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private void setState(ServerState next) {
+        state = next;
+        publishState(next);
+    }
+
+    private void publishState(ServerState next) {
+        stateExecutor.accept(() -> instance.setState(next));
+    }
+
+    private void record(String line, boolean flush) {
+        ConsoleLog log = consoleLog;
+        if (log != null) {
+            try {
+                log.append(line);
+                if (flush) {
+                    log.flush();
+                }
+            } catch (IOException e) {
+                historyFailed(e);
+            }
+        }
+        // Batched onto the FX thread by the pipeline, never blocks this reader
+        if (pipeline != null) {
+            pipeline.publish(line);
+        }
+    }
+
+    // Server output goes to the history as the bytes it printed, a String is only made
+    // for the pipeline
+    private void record(LogLine line, boolean flush) {
+        ConsoleLog log = consoleLog;
+        if (log != null) {
+            try {
+                line.writeTo(log);
+                if (flush) {
+                    log.flush();
+                }
+            } catch (IOException e) {
+                historyFailed(e);
+            }
+        }
+        if (pipeline != null) {
+            pipeline.publish(line.raw());
+        }
+    }
+
+    // Keep draining stdout even if history can't be written
+    private void historyFailed(IOException e) {
+        logger.error("Failed to write console log for " + instance.getName(), e);
+        consoleLog = null;
+    }
+}
@@ -0,0 +1,178 @@
+package dev.perillo.serversmith.service;
+
+import dev.perillo.serversmith.model.ServerType;
+
+import java.util.List;
+
+// Picks tick health out of server output: "Can't keep up!" warnings and the
+// replies to the tps/mspt commands the supervisor sends on a schedule. Runs on
+// the log reader thread for every line, so it's a handful of substring checks
+// and numbers are parsed in place without creating strings. Lines come without
+// their ANSI colors, which would otherwise pass for digits.
+public class TickMonitor {
+    private static final int WINDOW = 240;
+    private static final double TARGET_TPS = 20;
+
+    private static final String LAG = "Can't keep up!";
+    // Paper: "TPS from last 1m, 5m, 15m: 20.0, 19.98, 19.97" (numbers are color coded)
+    private static final String PAPER_TPS = "TPS from last 1m, 5m, 15m: ";
+    // Paper: "Server tick times (avg/min/max) from last 5s, 10s, 1m:" then "◴ 1.2/0.8/3.4, ..." on the next line
+    private static final String PAPER_MSPT = "Server tick times";
+    // Vanilla 1.20.3+ "tick query": "Average time per tick: 2.3ms (Target: 50.0ms)"
+    private static final String VANILLA_MSPT = "Average time per tick: ";
+    // NeoForge: "Overall: Mean tick time: 1.234 ms. Mean TPS: 20.000"
+    private static final String NEOFORGE_MSPT = "Mean tick time: ";
+    private static final String NEOFORGE_TPS = "Mean TPS: ";
+    private static final String UNKNOWN_COMMAND = "Unknown or incomplete command";
+
+    private final RollingStats tps = new RollingStats(WINDOW);
+    private final RollingStats mspt = new RollingStats(WINDOW);
+    private volatile long lagEvents;
+    private volatile long ticksSkipped;
+    private volatile boolean pollingSupported = true;
+    private volatile boolean awaitingReply;
+
+    // Reader thread only
+    private boolean expectMspt;
+    private int end;
+
+    public RollingStats getTps() {
+        return tps;
+    }
+
+    public RollingStats getMspt() {
+        return mspt;
+    }
+
+    public long getLagEvents() {
+        return lagEvents;
+    }
+
+    public long getTicksSkipped() {
+        return ticksSkipped;
+    }
+
+    void reset() {
+        tps.clear();
+        mspt.clear();
+        lagEvents = 0;
+        ticksSkipped = 0;
+        pollingSupported = true;
+    }
+
+    boolean isPollingSupported() {
+        return pollingSupported;
+    }
+
+    // Commands whose output accept() understands, none if we don't know the server
+    static List<String> pollCommands(ServerType type) {
+        if (type == null) {
+            return List.of();
+        }
+        return switch (type) {
+            case PAPER -> List.of("tps", "mspt");
+            case VANILLA -> List.of("tick query");
+            case NEOFORGE -> List.of("neoforge tps");
+            default -> List.of();
+        };
+    }
+
+    void polled() {
+        awaitingReply = true;
+    }
+
+    void accept(LogLine line) {
+        if (expectMspt) {
+            expectMspt = false;
+            // Average of the 5s window, the first of the avg/min/max triples
+            double avg = number(line, line.messageStart());
+            if (!Double.isNaN(avg)) {
+                addMspt(avg, false);
+                return;
+            }
+        }
+
+        int at;
+        if ((at = line.indexOf(LAG)) >= 0) {
+            // "... Running 2345ms or 46 ticks behind"
+            int running = line.indexOf("Running ", at);
+            if (running >= 0) {
+                number(line, running);
+                double ticks = number(line, end);
+                lagEvents++;
+                if (!Double.isNaN(ticks)) {
+                    ticksSkipped += (long) ticks;
+                }
+            }
+        } else if ((at = line.indexOf(PAPER_TPS)) >= 0) {
+            tps.add(Math.min(TARGET_TPS, number(line, at + PAPER_TPS.length())));
+            awaitingReply = false;
+        } else if (line.indexOf(PAPER_MSPT) >= 0) {
+            expectMspt = true;
+            awaitingReply = false;
+        } else if ((at = line.indexOf(VANILLA_MSPT)) >= 0) {
+            addMspt(number(line, at + VANILLA_MSPT.length()), true);
+            awaitingReply = false;
+        } else if ((at = line.indexOf(NEOFORGE_MSPT)) >= 0) {
+            // Only the overall line, per-dimension lines start with "Dim"
+            if (line.indexOf("Overall") >= 0) {
+                addMspt(number(line, at + NEOFORGE_MSPT.length()), false);
+                int tpsAt = line.indexOf(NEOFORGE_TPS, at);
+                if (tpsAt >= 0) {
+                    tps.add(number(line, tpsAt + NEOFORGE_TPS.length()));
+                }
+            }
+            awaitingReply = false;
+        } else if (awaitingReply && line.indexOf(UNKNOWN_COMMAND) >= 0) {
+            // Older versions without the command, stop filling the console with errors
+            awaitingReply = false;
+            pollingSupported = false;
+        }
+    }
+
+    private void addMspt(double value, boolean deriveTps) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        mspt.add(value);
+        if (deriveTps) {
+            tps.add(value <= 0 ? TARGET_TPS : Math.min(TARGET_TPS, 1000 / value));
+        }
+    }
+
+    // First decimal number at or after from, skipping § color codes and other
+    // decoration. Leaves the index after it in `end`. NaN if there is none.
+    private double number(CharSequence line, int from) {
+        int i = from;
+        int n = line.length();
+        while (i < n) {
+            char c = line.charAt(i);
+            if (c == '§') {
+                i += 2;
+            } else if (c >= '0' && c <= '9') {
+                break;
+            } else {
+                i++;
+            }
+        }
+        if (i >= n) {
+            end = n;
+            return Double.NaN;
+        }
+        long whole = 0;
+        while (i < n && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+            whole = whole * 10 + (line.charAt(i++) - '0');
+        }
+        double value = whole;
+        if (i + 1 < n && line.charAt(i) == '.' && Character.isDigit(line.charAt(i + 1))) {
+            double scale = 0.1;
+            i++;
+            while (i < n && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+                value += (line.charAt(i++) - '0') * scale;
+                scale /= 10;
+            }
+        }
+        end = i;
+        return value;
+    }
+}
@@ -0,0 +1,32 @@
+package dev.perillo.serversmith.service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+// Mojang's version_manifest_v2.json, indexed by version id. Keeps the
+// manifest's order, newest first. Built by ManifestReader.
+final class VersionManifest {
+    // releaseTime is kept as text, parsing hundreds of timestamps nobody looks at dominated the load
+    record Version(String id, String type, String url, String sha1, String releaseTime) {
+        Instant released() {
+            return releaseTime != null ? Instant.parse(releaseTime) : null;
+        }
+    }
+
+    private final Map<String, Version> versions;
+    private final List<String> releases;
+
+    VersionManifest(Map<String, Version> versions, List<String> releases) {
+        this.versions = versions;
+        this.releases = releases;
+    }
+
+    Version get(String id) {
+        return versions.get(id);
+    }
+
+    List<String> releases() {
+        return releases;
+    }
+}
@@ -0,0 +1,177 @@
+package dev.perillo.serversmith.ui;
+
+import dev.perillo.serversmith.service.ConsoleLog;
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Console lines exposed as an ObservableList so a ListView can virtualize over
+// them. Lines live in a fixed-capacity ring indexed by absolute line number,
+// parsed into StyledLines as they come in so drawing never parses again.
+//
+// Detached, the ring is the whole buffer: once full every append evicts the
+// oldest lines, so the cost of an append does not depend on uptime.
+// Attached to a ConsoleLog, the list spans the entire on-disk history and the
+// ring only caches decoded lines; anything else is read from the log on demand.
+public class ConsoleBuffer extends ObservableListBase<StyledLine> {
+    public static final int DEFAULT_CAPACITY = 50_000;
+
+    private final StyledLine[] lines;
+    private final long[] slotLine;
+    private ConsoleLog log;
+    private long first; // absolute number of index 0
+    private long end; // one past the last line
+
+    public ConsoleBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ConsoleBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.lines = new StyledLine[capacity];
+        this.slotLine = new long[capacity];
+        Arrays.fill(slotLine, -1);
+    }
+
+    public int getCapacity() {
+        return lines.length;
+    }
+
+    public ConsoleLog getLog() {
+        return log;
+    }
+
+    public long getFirstLine() {
+        return first;
+    }
+
+    // Shows the log's history without reading any of it up front
+    public void attach(ConsoleLog log) {
+        clear();
+        this.log = log;
+        first = log.getFirstLine();
+        end = first;
+        sync();
+    }
+
+    public void detach() {
+        clear();
+        log = null;
+        first = 0;
+        end = 0;
+    }
+
+    // Catches up with lines the attached log has committed since the last call
+    public void sync() {
+        if (log == null) {
+            return;
+        }
+        long newFirst = log.getFirstLine();
+        long newEnd = log.getLineCount();
+        if (newFirst == first && newEnd == end) {
+            return;
+        }
+        beginChange();
+        if (newFirst > first) {
+            // Old segments were rotated away
+            int dropped = (int) (Math.min(newFirst, end) - first);
+            first = newFirst;
+            if (dropped > 0) {
+                nextRemove(0, Collections.nCopies(dropped, null));
+            }
+            end = Math.max(end, first);
+        }
+        int from = size();
+        end = newEnd;
+        nextAdd(from, size());
+        endChange();
+    }
+
+    public void append(String line) {
+        appendAll(List.of(line));
+    }
+
+    public void appendAll(List<String> batch) {
+        if (log != null) {
+            throw new IllegalStateException("Attached buffers follow their log");
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        int capacity = lines.length;
+        // Only the tail of an oversized batch can survive anyway
+        int from = Math.max(0, batch.size() - capacity);
+        int incoming = batch.size() - from;
+        int overflow = Math.max(0, size() + incoming - capacity);
+
+        beginChange();
+        if (overflow > 0) {
+            List<StyledLine> removed = new ArrayList<>(overflow);
+            for (int i = 0; i < overflow; i++) {
+                int slot = slot(first);
+                removed.add(lines[slot]);
+                lines[slot] = null;
+                slotLine[slot] = -1;
+                first++;
+            }
+            nextRemove(0, removed);
+        }
+        int start = size();
+        for (int i = from; i < batch.size(); i++) {
+            int slot = slot(end);
+            lines[slot] = StyledLine.parse(batch.get(i));
+            slotLine[slot] = end;
+            end++;
+        }
+        nextAdd(start, size());
+        endChange();
+    }
+
+    @Override
+    public StyledLine get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        long line = first + index;
+        int slot = slot(line);
+        if (slotLine[slot] != line) {
+            if (log == null) {
+                return null;
+            }
+            try {
+                lines[slot] = StyledLine.parse(log.readLine(line));
+            } catch (IndexOutOfBoundsException e) {
+                return StyledLine.parse(""); // rotated away since the last sync
+            }
+            slotLine[slot] = line;
+        }
+        return lines[slot];
+    }
+
+    @Override
+    public int size() {
+        return (int) (end - first);
+    }
+
+    @Override
+    public void clear() {
+        int size = size();
+        Arrays.fill(lines, null);
+        Arrays.fill(slotLine, -1);
+        first = end;
+        if (size > 0) {
+            beginChange();
+            nextRemove(0, Collections.nCopies(size, null));
+            endChange();
+        }
+    }
+
+    private int slot(long line) {
+        return (int) (line % lines.length);
+    }
+}
@@ -0,0 +1,228 @@
+package dev.perillo.serversmith.ui;
+
+import dev.perillo.serversmith.model.LogLevel;
+import dev.perillo.serversmith.util.FxPulse;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableListBase;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// A filtered view of a ConsoleBuffer: the lines at some levels and/or matching a
+// regex, kept as a list of absolute line numbers into the buffer rather than
+// copies of the lines. Each line is tested once, when it reaches the buffer;
+// lines rotated out of the buffer drop off the front. Nothing is ever filtered
+// again from scratch, so any number of these can follow one buffer at once.
+//
+// When created it goes back at most the buffer's capacity, which for a buffer
+// attached to a ConsoleLog means the newest lines rather than all of the history.
+// Those are tested SLICE lines per pulse rather than all at once, as each one can
+// mean a read from the log, so applying a filter never stalls the FX thread.
+// Lines without a header (stack traces and the like) take the level of the line
+// before them, so a WARN keeps its trace.
+public class ConsoleFilter extends ObservableListBase<StyledLine> {
+    private static final LogLevel[] LEVELS = LogLevel.values();
+    private static final int INITIAL_SIZE = 1024;
+    private static final int SLICE = 2_000;
+
+    private final ConsoleBuffer buffer;
+    private final Set<LogLevel> levels;
+    private final Matcher matcher;
+    private final ListChangeListener<StyledLine> listener = change -> update();
+    private final FxPulse pulse = new FxPulse(this::update);
+    private boolean disposed;
+    // Still working through the lines that were in the buffer when it started
+    private boolean catchingUp;
+    private Runnable onProgress;
+
+    // Absolute numbers of the matching lines, oldest first from head
+    private long[] matches = new long[INITIAL_SIZE];
+    private int head;
+    private int count;
+    // Level of every line tested so far, from testedFrom up to testedTo: 0 for none,
+    // else ordinal + 1, so counts can be taken back when lines rotate out
+    private byte[] tested = new byte[INITIAL_SIZE];
+    private int testedHead;
+    private long testedFrom;
+    private long testedTo;
+    private final int[] counts = new int[LEVELS.length];
+    // Level of the last line that had one
+    private LogLevel current;
+
+    // Empty levels means any level, a null pattern any text
+    public ConsoleFilter(ConsoleBuffer buffer, Set<LogLevel> levels, Pattern pattern) {
+        this.buffer = buffer;
+        this.levels = levels.isEmpty() ? EnumSet.noneOf(LogLevel.class) : EnumSet.copyOf(levels);
+        this.matcher = pattern != null ? pattern.matcher("") : null;
+        long first = buffer.getFirstLine();
+        restart(first, first + buffer.size());
+        update();
+        buffer.addListener(listener);
+    }
+
+    // Stops following the buffer
+    public void dispose() {
+        disposed = true;
+        buffer.removeListener(listener);
+    }
+
+    public boolean isCatchingUp() {
+        return catchingUp;
+    }
+
+    // Run after every slice of catching up, including the last
+    public void setOnProgress(Runnable onProgress) {
+        this.onProgress = onProgress;
+    }
+
+    public ConsoleBuffer getBuffer() {
+        return buffer;
+    }
+
+    public Set<LogLevel> getLevels() {
+        return Collections.unmodifiableSet(levels);
+    }
+
+    // Absolute line number of the index-th match
+    public long getLine(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return matches[head + index];
+    }
+
+    // Lines at this level among those tested, matching or not
+    public int getCount(LogLevel level) {
+        return counts[level.ordinal()];
+    }
+
+    // Lines tested that are still in the buffer
+    public long getTestedCount() {
+        return testedTo - testedFrom;
+    }
+
+    @Override
+    public StyledLine get(int index) {
+        int offset = (int) (getLine(index) - buffer.getFirstLine());
+        if (offset < 0 || offset >= buffer.size()) {
+            return StyledLine.parse(""); // rotated away, we hear about it next
+        }
+        return buffer.get(offset);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    // Catches up with the buffer, only ever looking at lines not tested yet, a slice at a time
+    private void update() {
+        if (disposed) {
+            return;
+        }
+        long first = buffer.getFirstLine();
+        long end = first + buffer.size();
+        beginChange();
+        if (first < testedFrom || end < testedTo) {
+            // The buffer started over, e.g. attached to a log
+            drop(testedTo);
+            restart(first, end);
+        } else {
+            drop(first);
+        }
+        int from = count;
+        long stop = Math.min(end, testedTo + SLICE);
+        for (long line = testedTo; line < stop; line++) {
+            test(buffer.get((int) (line - first)));
+        }
+        if (count > from) {
+            nextAdd(from, count);
+        }
+        endChange();
+
+        if (stop < end) {
+            pulse.request();
+        }
+        if (catchingUp) {
+            catchingUp = stop < end;
+            if (onProgress != null) {
+                onProgress.run();
+            }
+        }
+    }
+
+    private void restart(long first, long end) {
+        testedFrom = testedTo = Math.max(first, end - buffer.getCapacity());
+        current = null;
+        catchingUp = true;
+    }
+
+    // Forgets everything before line
+    private void drop(long line) {
+        long limit = Math.min(line, testedTo);
+        for (; testedFrom < limit; testedFrom++) {
+            int level = tested[testedHead++];
+            if (level > 0) {
+                counts[level - 1]--;
+            }
+        }
+        if (testedTo < line) {
+            testedFrom = testedTo = line;
+        }
+        int removed = 0;
+        while (removed < count && matches[head + removed] < line) {
+            removed++;
+        }
+        if (removed > 0) {
+            head += removed;
+            count -= removed;
+            nextRemove(0, Collections.nCopies(removed, null));
+        }
+    }
+
+    private void test(StyledLine line) {
+        LogLevel level = line.level();
+        if (level != null) {
+            current = level;
+        } else {
+            level = current;
+        }
+        if (testedHead + (int) (testedTo - testedFrom) == tested.length) {
+            tested = compact(tested, testedHead, (int) (testedTo - testedFrom));
+            testedHead = 0;
+        }
+        tested[testedHead + (int) (testedTo - testedFrom)] = (byte) (level != null ? level.ordinal() + 1 : 0);
+        testedTo++;
+        if (level != null) {
+            counts[level.ordinal()]++;
+        }
+
+        if (!levels.isEmpty() && (level == null || !levels.contains(level))) {
+            return;
+        }
+        if (matcher != null && !matcher.reset(line.text()).find()) {
+            return;
+        }
+        if (head + count == matches.length) {
+            matches = compact(matches, head, count);
+            head = 0;
+        }
+        matches[head + count++] = testedTo - 1;
+    }
+
+    // Slides the live part to the front, growing only when it fills over half the array
+    private static byte[] compact(byte[] array, int from, int length) {
+        byte[] target = length > array.length / 2 ? new byte[array.length * 2] : array;
+        System.arraycopy(array, from, target, 0, length);
+        return target;
+    }
+
+    private static long[] compact(long[] array, int from, int length) {
+        long[] target = length > array.length / 2 ? new long[array.length * 2] : array;
+        System.arraycopy(array, from, target, 0, length);
+        return target;
+    }
+}
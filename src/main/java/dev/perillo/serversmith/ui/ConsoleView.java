@@ -0,0 +1,323 @@
+package dev.perillo.serversmith.ui;
+
+import dev.perillo.serversmith.model.LogLevel;
+import dev.perillo.serversmith.service.ConsoleLog;
+import dev.perillo.serversmith.util.FxPulse;
+import javafx.geometry.VPos;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontPosture;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.Text;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// Console backed by a ConsoleBuffer. The ListView only creates cells for the
+// rows on screen, so memory stays flat no matter how much the server prints.
+// When attached to a ConsoleLog the whole history is scrollable and new lines
+// are picked up once per pulse. Each visible row draws its StyledLine's runs
+// onto a canvas, at fixed columns of the monospaced font, so colored output
+// costs a few fillText calls per row and nothing is laid out twice.
+// A ConsoleFilter can stand in for the buffer to show only some of the lines.
+public class ConsoleView {
+    private static final double ROW_HEIGHT = 18;
+    // Past this a row's canvas stops growing, the rest of a huge line is cut off
+    private static final double MAX_CANVAS_WIDTH = 8192;
+    private static final double CANVAS_STEP = 512;
+
+    private final ConsoleBuffer buffer;
+    private final ListView<StyledLine> listView;
+    private final Fonts fonts = new Fonts();
+    private ConsoleFilter filter;
+    private Runnable onFilterChanged;
+    private final FxPulse syncPulse = new FxPulse(this::sync);
+    private final Runnable logListener = syncPulse::request;
+
+    public ConsoleView() {
+        this(new ConsoleBuffer());
+    }
+
+    public ConsoleView(ConsoleBuffer buffer) {
+        this.buffer = buffer;
+        listView = new ListView<>(buffer);
+        listView.getStyleClass().add("console-view");
+        // Fixed height lets the flow skip measuring every row
+        listView.setFixedCellSize(ROW_HEIGHT);
+        listView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        listView.setCellFactory(lv -> new LineCell(fonts));
+
+        listView.setOnKeyPressed(e -> {
+            if (e.isShortcutDown() && e.getCode() == KeyCode.C) {
+                copySelection();
+            }
+        });
+    }
+
+    public Node getView() {
+        return listView;
+    }
+
+    public ConsoleBuffer getBuffer() {
+        return buffer;
+    }
+
+    public ConsoleFilter getFilter() {
+        return filter;
+    }
+
+    // Told whenever the filter is set or dropped, including by the view itself, and as a new
+    // filter catches up with the lines already there
+    public void setOnFilterChanged(Runnable onFilterChanged) {
+        this.onFilterChanged = onFilterChanged;
+    }
+
+    // Shows only lines at these levels matching the pattern, or everything again when
+    // there are no levels and no pattern
+    public void setFilter(Set<LogLevel> levels, Pattern pattern) {
+        if (filter != null) {
+            filter.dispose();
+            filter = null;
+        }
+        listView.getSelectionModel().clearSelection();
+        if (levels.isEmpty() && pattern == null) {
+            listView.setItems(buffer);
+        } else {
+            filter = new ConsoleFilter(buffer, levels, pattern);
+            // Matches keep coming in below for a few pulses, stay on the tail meanwhile
+            filter.setOnProgress(() -> {
+                scrollToEnd();
+                if (onFilterChanged != null) {
+                    onFilterChanged.run();
+                }
+            });
+            listView.setItems(filter);
+        }
+        scrollToEnd();
+        if (onFilterChanged != null) {
+            onFilterChanged.run();
+        }
+    }
+
+    public void attach(ConsoleLog log) {
+        dispose();
+        buffer.attach(log);
+        log.addListener(logListener);
+        scrollToEnd();
+    }
+
+    public boolean isAttached() {
+        return buffer.getLog() != null;
+    }
+
+    // Stops following the log, call before throwing the view away
+    public void dispose() {
+        if (filter != null) {
+            setFilter(Set.of(), null);
+        }
+        ConsoleLog log = buffer.getLog();
+        if (log != null) {
+            log.removeListener(logListener);
+            buffer.detach();
+        }
+    }
+
+    // Jumps to an absolute line number, e.g. a search hit
+    public void scrollToLine(long line) {
+        if (filter != null) {
+            setFilter(Set.of(), null); // the line may be filtered out, and its neighbours are the point
+        }
+        long index = line - buffer.getFirstLine();
+        if (index >= 0 && index < buffer.size()) {
+            listView.scrollTo((int) Math.max(0, index - 5));
+            listView.getSelectionModel().clearAndSelect((int) index);
+        }
+    }
+
+    public void appendLine(String line) {
+        appendLines(List.of(line));
+    }
+
+    public void appendLines(List<String> lines) {
+        boolean follow = isAtBottom();
+        buffer.appendAll(lines);
+        if (follow) {
+            scrollToEnd();
+        }
+    }
+
+    private void sync() {
+        boolean follow = isAtBottom();
+        buffer.sync();
+        if (follow) {
+            scrollToEnd();
+        }
+    }
+
+    private void scrollToEnd() {
+        int size = listView.getItems().size();
+        if (size > 0) {
+            listView.scrollTo(size - 1);
+        }
+    }
+
+    public void clear() {
+        listView.getSelectionModel().clearSelection();
+        buffer.clear();
+    }
+
+    // Only keep auto-scrolling while the user is looking at the tail
+    private boolean isAtBottom() {
+        int size = listView.getItems().size();
+        if (size == 0 || !(listView.lookup(".virtual-flow") instanceof VirtualFlow<?> flow)) {
+            return true;
+        }
+        IndexedCell<?> last = flow.getLastVisibleCell();
+        return last == null || last.getIndex() >= size - 1;
+    }
+
+    private void copySelection() {
+        List<StyledLine> selected = listView.getSelectionModel().getSelectedItems();
+        if (selected.isEmpty()) {
+            return;
+        }
+        ClipboardContent content = new ClipboardContent();
+        content.putString(String.join("\n", selected.stream().map(StyledLine::text).toList()));
+        Clipboard.getSystemClipboard().setContent(content);
+    }
+
+    // Font variants and colors shared by all rows, worked out again only when CSS changes the font
+    private static final class Fonts {
+        private final Map<Integer, Color> colors = new HashMap<>();
+        private final Font[] variants = new Font[4];
+        private Font base;
+        private double charWidth;
+
+        void use(Font font) {
+            if (font.equals(base)) {
+                return;
+            }
+            base = font;
+            String family = font.getFamily();
+            double size = font.getSize();
+            variants[0] = font;
+            variants[StyledLine.BOLD] = Font.font(family, FontWeight.BOLD, FontPosture.REGULAR, size);
+            variants[StyledLine.ITALIC] = Font.font(family, FontWeight.NORMAL, FontPosture.ITALIC, size);
+            variants[StyledLine.BOLD | StyledLine.ITALIC] = Font.font(family, FontWeight.BOLD,
+                    FontPosture.ITALIC, size);
+            Text probe = new Text("0123456789");
+            probe.setFont(font);
+            charWidth = probe.getLayoutBounds().getWidth() / 10;
+        }
+
+        Font font(int flags) {
+            return variants[flags & (StyledLine.BOLD | StyledLine.ITALIC)];
+        }
+
+        Color color(int rgb) {
+            return colors.computeIfAbsent(rgb, c -> Color.rgb(c >> 16 & 0xFF, c >> 8 & 0xFF, c & 0xFF));
+        }
+    }
+
+    private static final class LineCell extends ListCell<StyledLine> {
+        private final Fonts fonts;
+        private final Canvas canvas = new Canvas(0, ROW_HEIGHT);
+        private StyledLine line;
+
+        LineCell(Fonts fonts) {
+            this.fonts = fonts;
+            // CSS sets these after the cell is made, and can change them later
+            fontProperty().addListener((obs, old, font) -> draw());
+            textFillProperty().addListener((obs, old, fill) -> draw());
+        }
+
+        @Override
+        protected void updateItem(StyledLine item, boolean empty) {
+            super.updateItem(item, empty);
+            setText(null);
+            line = empty ? null : item;
+            setGraphic(line != null ? canvas : null);
+            draw();
+        }
+
+        // Sized to the text, not the canvas, so a long line seen earlier doesn't stretch the scroll range
+        @Override
+        protected double computePrefWidth(double height) {
+            fonts.use(getFont());
+            double text = line != null ? line.text().length() * fonts.charWidth : 0;
+            return snappedLeftInset() + Math.min(text, MAX_CANVAS_WIDTH) + snappedRightInset();
+        }
+
+        private void draw() {
+            GraphicsContext gc = canvas.getGraphicsContext2D();
+            gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            if (line == null) {
+                return;
+            }
+            fonts.use(getFont());
+            double cw = fonts.charWidth;
+            String text = line.text();
+            // Canvases only grow, in steps, so scrolling past lines of different lengths
+            // doesn't reallocate them every row
+            double needed = Math.min(text.length() * cw, MAX_CANVAS_WIDTH);
+            if (canvas.getWidth() < needed) {
+                canvas.setWidth(Math.min(Math.ceil(needed / CANVAS_STEP) * CANVAS_STEP, MAX_CANVAS_WIDTH));
+            }
+            int columns = (int) Math.ceil(canvas.getWidth() / cw);
+            double y = ROW_HEIGHT / 2;
+            Paint fill = getTextFill();
+            gc.setTextBaseline(VPos.CENTER);
+
+            if (line.runCount() == 0) {
+                gc.setFont(fonts.font(0));
+                gc.setFill(fill);
+                gc.fillText(text.length() > columns ? text.substring(0, columns) : text, 0, y);
+                return;
+            }
+            for (int run = 0; run < line.runCount(); run++) {
+                int start = line.runStart(run);
+                if (start >= columns) {
+                    break;
+                }
+                double x = start * cw;
+                double width = (line.runEnd(run) - start) * cw;
+                if (line.background(run) != StyledLine.DEFAULT) {
+                    gc.setFill(fonts.color(line.background(run)));
+                    gc.fillRect(x, 0, width, ROW_HEIGHT);
+                }
+                int fg = line.foreground(run);
+                Paint ink = fg == StyledLine.DEFAULT ? fill : fonts.color(fg);
+                int flags = line.flags(run);
+                gc.setFont(fonts.font(flags));
+                gc.setFill(ink);
+                int end = line.runEnd(run);
+                gc.fillText(end > columns ? text.substring(start, columns) : line.piece(run), x, y);
+                if ((flags & (StyledLine.UNDERLINE | StyledLine.STRIKETHROUGH)) != 0) {
+                    gc.setStroke(ink);
+                    gc.setLineWidth(1);
+                    if ((flags & StyledLine.UNDERLINE) != 0) {
+                        gc.strokeLine(x, ROW_HEIGHT - 2.5, x + width, ROW_HEIGHT - 2.5);
+                    }
+                    if ((flags & StyledLine.STRIKETHROUGH) != 0) {
+                        gc.strokeLine(x, y + 0.5, x + width, y + 0.5);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package dev.perillo.serversmith.ui;
+
+import dev.perillo.serversmith.daemon.DaemonClient;
+import dev.perillo.serversmith.daemon.DaemonProtocol;
+import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.model.ServerState;
+import dev.perillo.serversmith.util.FxPulse;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Alert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// The app's side of a running daemon. While one is up the servers are its to run:
+// the window shows their state, console and metrics as the daemon reports them and
+// passes on what the user asks for, and closing it leaves the servers running.
+public class DaemonConnection {
+    private static final Logger logger = LoggerFactory.getLogger(DaemonConnection.class);
+    private static final long POLL_MILLIS = 1_000;
+
+    @FunctionalInterface
+    private interface Request {
+        void send(DaemonClient client) throws IOException;
+    }
+
+    private final DaemonClient client;
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    private DaemonConnection(DaemonClient client) {
+        this.client = client;
+    }
+
+    // The daemon named in daemon.json if it answers, else null and the app runs servers itself.
+    // Called before the window exists, so a daemon that doesn't answer costs a short ping at most.
+    public static DaemonConnection connect() {
+        DaemonClient client;
+        try {
+            client = DaemonClient.connect();
+        } catch (IOException e) {
+            return null;
+        }
+        if (!client.ping()) {
+            logger.warn("The daemon in " + DaemonProtocol.INFO_FILE + " is not answering, running servers here");
+            return null;
+        }
+        logger.info("Connected to the ServerSmith daemon");
+        return new DaemonConnection(client);
+    }
+
+    // Keeps the instances' state in step with the daemon's. One it doesn't know is stopped,
+    // nothing else runs servers while it is up.
+    public void mirror(ObservableList<ServerInstance> instances) {
+        background("daemon-poller", () -> {
+            boolean reachable = true;
+            while (!closed) {
+                Map<String, ServerState> states = new HashMap<>();
+                try {
+                    for (DaemonProtocol.Instance remote : client.instances()) {
+                        states.put(remote.location(), remote.state());
+                    }
+                    reachable = true;
+                } catch (IOException e) {
+                    if (closed) {
+                        return;
+                    }
+                    if (reachable) {
+                        logger.warn("Lost the daemon: " + e.getMessage());
+                    }
+                    reachable = false;
+                }
+                Platform.runLater(() -> {
+                    for (ServerInstance instance : instances) {
+                        ServerState state = states.getOrDefault(key(instance), ServerState.STOPPED);
+                        if (instance.getState() != state) {
+                            instance.setState(state);
+                        }
+                    }
+                });
+                if (!pause()) {
+                    return;
+                }
+            }
+        });
+    }
+
+    public void start(ServerInstance instance) {
+        send("Failed to start server", client -> client.start(key(instance)));
+    }
+
+    public void stop(ServerInstance instance) {
+        send("Failed to stop server", client -> client.stop(key(instance), false));
+    }
+
+    public void command(ServerInstance instance, String command) {
+        send("Failed to send command", client -> client.command(key(instance), command));
+    }
+
+    // Hands the instance's console output to onLines on the FX thread until the returned handle
+    // is run. A stream that drops is picked up again after the last line seen.
+    public Runnable follow(ServerInstance instance, Consumer<List<String>> onLines) {
+        AtomicBoolean stopped = new AtomicBoolean();
+        ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+        FxPulse pulse = new FxPulse(() -> {
+            List<String> batch = new ArrayList<>();
+            for (String line; (line = pending.poll()) != null; ) {
+                batch.add(line);
+            }
+            if (!stopped.get() && !batch.isEmpty()) {
+                onLines.accept(batch);
+            }
+        });
+        Thread thread = background("daemon-log-" + instance.getName(), () -> {
+            long[] next = { -1 };
+            while (!closed && !stopped.get()) {
+                try {
+                    client.streamLog(key(instance), next[0], (number, text) -> {
+                        if (stopped.get()) {
+                            // Hangs up even if the interrupt didn't reach the read
+                            throw new CancellationException();
+                        }
+                        next[0] = number + 1;
+                        pending.add(text);
+                        pulse.request();
+                    });
+                } catch (CancellationException e) {
+                    return;
+                } catch (IOException e) {
+                    if (stopped.get() || closed) {
+                        return;
+                    }
+                    logger.debug("Console stream of " + instance.getName() + " dropped: " + e.getMessage());
+                }
+                if (!pause()) {
+                    return;
+                }
+            }
+        });
+        return () -> {
+            stopped.set(true);
+            thread.interrupt();
+        };
+    }
+
+    // The instance's latest metrics on the FX thread, every second until the returned handle is run
+    public Runnable watchMetrics(ServerInstance instance, Consumer<DaemonProtocol.Metrics> onSample) {
+        AtomicBoolean stopped = new AtomicBoolean();
+        Thread thread = background("daemon-metrics-" + instance.getName(), () -> {
+            while (!closed && !stopped.get()) {
+                try {
+                    DaemonProtocol.Metrics metrics = client.metrics(key(instance));
+                    Platform.runLater(() -> {
+                        if (!stopped.get()) {
+                            onSample.accept(metrics);
+                        }
+                    });
+                } catch (IOException e) {
+                    // Shows the last sample until the daemon is back
+                }
+                if (!pause()) {
+                    return;
+                }
+            }
+        });
+        return () -> {
+            stopped.set(true);
+            thread.interrupt();
+        };
+    }
+
+    // Lets go of the daemon, its servers keep running
+    public void close() {
+        closed = true;
+        threads.forEach(Thread::interrupt);
+    }
+
+    private void send(String failure, Request request) {
+        background("daemon-request", () -> {
+            try {
+                request.send(client);
+            } catch (IOException e) {
+                Platform.runLater(() -> new Alert(Alert.AlertType.ERROR, failure + ": " + e.getMessage()).show());
+            }
+        });
+    }
+
+    private Thread background(String name, Runnable task) {
+        Thread thread = Thread.ofVirtual().name(name).unstarted(() -> {
+            try {
+                task.run();
+            } finally {
+                threads.remove(Thread.currentThread());
+            }
+        });
+        threads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    // False once interrupted
+    private static boolean pause() {
+        try {
+            Thread.sleep(POLL_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    // The daemon reports locations absolute
+    private static String key(ServerInstance instance) {
+        return instance.getLocation().toAbsolutePath().toString();
+    }
+}
@@ -1,33 +1,73 @@
 package dev.perillo.serversmith.ui;
 
+import dev.perillo.serversmith.daemon.DaemonProtocol;
+import dev.perillo.serversmith.model.InstanceAvailability;
+import dev.perillo.serversmith.model.LogLevel;
 import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.model.ServerState;
+import dev.perillo.serversmith.service.BackupService;
+import dev.perillo.serversmith.service.ConsoleLog;
+import dev.perillo.serversmith.service.FileWatcher;
+import dev.perillo.serversmith.service.InstanceArchive;
+import dev.perillo.serversmith.service.IoThrottle;
+import dev.perillo.serversmith.service.LogIndex;
+import dev.perillo.serversmith.service.LogQuery;
+import dev.perillo.serversmith.service.MetricSeries;
 import dev.perillo.serversmith.service.ProcessService;
 import dev.perillo.serversmith.service.PropertiesService;
+import dev.perillo.serversmith.service.RollingStats;
+import dev.perillo.serversmith.service.TickMonitor;
 import dev.perillo.serversmith.util.FileUtil;
+import dev.perillo.serversmith.util.FxPulse;
 import dev.perillo.serversmith.util.ImageUtil;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
+import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 import javafx.stage.FileChooser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import javafx.beans.Observable;
 import javafx.beans.binding.Bindings;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 
 import java.awt.Desktop;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class EditorController {
+    private static final Logger logger = LoggerFactory.getLogger(EditorController.class);
     private final BorderPane root = new BorderPane();
     private final ProcessService processService;
+    // Set when a daemon runs the servers, everything to do with them then goes through it
+    private final DaemonConnection daemon;
+    private final FileWatcher fileWatcher;
     private ServerInstance currentInstance;
 
     private TabPane tabPane;
-    private TextArea consoleArea;
+    private ConsoleView consoleView;
+    private Runnable metricsListener;
+    // Stop the dashboard's streams from the daemon
+    private final List<Runnable> daemonWatches = new ArrayList<>();
+    private FileWatcher.Subscription settingsWatch;
+    private FileTree fileTree;
+    private PropertiesService settingsProps;
     private Button startBtn, stopBtn;
 
     // Properties controls
@@ -43,8 +83,10 @@ public class EditorController {
     // Icon
     private ImageView iconView;
 
-    public EditorController(ProcessService processService) {
+    public EditorController(ProcessService processService, DaemonConnection daemon, FileWatcher fileWatcher) {
         this.processService = processService;
+        this.daemon = daemon;
+        this.fileWatcher = fileWatcher;
         initialize();
     }
 
@@ -59,14 +101,32 @@ public class EditorController {
 
     public void setServer(ServerInstance instance) {
         this.currentInstance = instance;
+        disposeDashboard();
         if (instance == null) {
             root.setCenter(createWelcomeView());
             return;
         }
+        if (!instance.isAvailable()) {
+            root.setCenter(createUnavailableView(instance));
+            if (instance.getAvailability() == InstanceAvailability.LOADING) {
+                instance.availabilityProperty().addListener(new ChangeListener<>() {
+                    @Override
+                    public void changed(ObservableValue<? extends InstanceAvailability> obs,
+                            InstanceAvailability old, InstanceAvailability now) {
+                        obs.removeListener(this);
+                        if (currentInstance == instance) {
+                            setServer(instance);
+                        }
+                    }
+                });
+            }
+            return;
+        }
 
         tabPane.getTabs().clear();
         tabPane.getTabs().addAll(
                 createDashboardTab(),
+                createSearchTab(),
                 createSettingsTab(),
                 createFilesTab());
         root.setCenter(tabPane);
@@ -75,6 +135,43 @@ public class EditorController {
         loadIcon();
     }
 
+    private void disposeDashboard() {
+        if (consoleView != null) {
+            consoleView.dispose();
+        }
+        if (metricsListener != null) {
+            processService.getMetricsService().removeListener(metricsListener);
+            metricsListener = null;
+        }
+        daemonWatches.forEach(Runnable::run);
+        daemonWatches.clear();
+        if (fileTree != null) {
+            fileTree.dispose();
+            fileTree = null;
+        }
+        if (settingsWatch != null) {
+            settingsWatch.close();
+            settingsWatch = null;
+        }
+        settingsProps = null;
+    }
+
+    private Parent createUnavailableView(ServerInstance instance) {
+        VBox box = new VBox(10);
+        box.setAlignment(javafx.geometry.Pos.CENTER);
+        box.setPadding(new Insets(40));
+
+        boolean loading = instance.getAvailability() == InstanceAvailability.LOADING;
+        Label title = new Label(loading ? "Loading " + instance.getName() + "..." : instance.getName() + " is offline");
+        title.setStyle("-fx-font-size: 24px; -fx-font-weight: bold; -fx-text-fill: -color-on-surface;");
+        Label subtitle = new Label(loading ? instance.getLocation().toString()
+                : "Could not read " + instance.getLocation() + ".\nCheck that the drive or network share is available.");
+        subtitle.setStyle("-fx-font-size: 14px; -fx-text-fill: -color-on-surface; -fx-opacity: 0.7;");
+
+        box.getChildren().addAll(title, subtitle);
+        return box;
+    }
+
     private Parent createWelcomeView() {
         VBox box = new VBox(20);
         box.setAlignment(javafx.geometry.Pos.CENTER);
@@ -120,31 +217,12 @@ public class EditorController {
         statusBadge.getStyleClass().add("status-badge");
 
         // Complex binding for style and text
-        statusBadge.textProperty().bind(Bindings.when(currentInstance.runningProperty())
-                .then("RUNNING")
-                .otherwise("STOPPED"));
-
-        statusBadge.styleProperty().bind(Bindings.when(currentInstance.runningProperty())
-                .then("-fx-background-color: rgba(76, 175, 80, 0.2); -fx-text-fill: #4caf50; -fx-border-color: #4caf50; -fx-border-radius: 12;") // Manual
-                                                                                                                                                 // inline
-                                                                                                                                                 // for
-                                                                                                                                                 // now
-                                                                                                                                                 // or
-                                                                                                                                                 // toggle
-                                                                                                                                                 // class
-                                                                                                                                                 // listener
-                .otherwise(
-                        "-fx-background-color: rgba(244, 67, 54, 0.2); -fx-text-fill: #f44336; -fx-border-color: #f44336; -fx-border-radius: 12;"));
-
-        // Listeners for class toggling is cleaner but binding style is easier inline
-        // for 1 file edits
-        // Let's use the CSS classes we made by adding a listener
-        currentInstance.runningProperty().addListener((obs, old, isRunning) -> {
-            statusBadge.getStyleClass().removeAll("running", "stopped");
-            statusBadge.getStyleClass().add(isRunning ? "running" : "stopped");
-        });
-        // Initial state
-        statusBadge.getStyleClass().add(currentInstance.isRunning() ? "running" : "stopped");
+        statusBadge.textProperty().bind(Bindings.createStringBinding(
+                () -> currentInstance.getState().name(), currentInstance.stateProperty()));
+
+        // Colour follows the state like the text does, amber while it's on its way up or down
+        statusBadge.styleProperty().bind(Bindings.createStringBinding(
+                () -> badgeStyle(currentInstance.getState()), currentInstance.stateProperty()));
 
         HBox titleBox = new HBox(10, serverTitle, statusBadge);
         titleBox.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
@@ -170,9 +248,26 @@ public class EditorController {
         stopBtn.disableProperty().bind(currentInstance.runningProperty().not());
 
         startBtn.setOnAction(e -> startServer());
-        stopBtn.setOnAction(e -> processService.stopServer(currentInstance));
+        stopBtn.setOnAction(e -> {
+            if (daemon != null) {
+                daemon.stop(currentInstance);
+            } else {
+                processService.stopServer(currentInstance);
+            }
+        });
+
+        Button backupBtn = new Button("Back Up");
+        backupBtn.getStyleClass().add("action-button");
+        Icons.animateHover(backupBtn);
+        backupBtn.setOnAction(e -> backUp(backupBtn));
+
+        Button exportBtn = new Button("Export");
+        exportBtn.getStyleClass().add("action-button");
+        Icons.animateHover(exportBtn);
+        exportBtn.disableProperty().bind(currentInstance.runningProperty());
+        exportBtn.setOnAction(e -> exportServer(exportBtn));
 
-        heroCard.getChildren().addAll(infoBox, startBtn, stopBtn);
+        heroCard.getChildren().addAll(infoBox, startBtn, stopBtn, backupBtn, exportBtn);
 
         // --- Terminal Section ---
         VBox terminalContainer = new VBox(0);
@@ -180,11 +275,18 @@ public class EditorController {
         terminalContainer.setPadding(Insets.EMPTY); // Terminal fills card
         VBox.setVgrow(terminalContainer, Priority.ALWAYS);
 
-        consoleArea = new TextArea();
-        consoleArea.setEditable(false);
-        consoleArea.getStyleClass().add("terminal-area");
-        consoleArea.setWrapText(true);
-        VBox.setVgrow(consoleArea, Priority.ALWAYS);
+        consoleView = new ConsoleView();
+        VBox.setVgrow(consoleView.getView(), Priority.ALWAYS);
+        if (daemon != null) {
+            // The history is the daemon's to write, it sends the tail and then whatever comes
+            daemonWatches.add(daemon.follow(currentInstance, consoleView::appendLines));
+        } else {
+            // Reattach to the persisted history instead of starting blank
+            ConsoleLog consoleLog = processService.getConsoleLog(currentInstance);
+            if (consoleLog != null) {
+                consoleView.attach(consoleLog);
+            }
+        }
 
         TextField commandField = new TextField();
         commandField.setPromptText("Enter server command...");
@@ -193,20 +295,277 @@ public class EditorController {
         commandField.setOnAction(e -> {
             String cmd = commandField.getText();
             if (!cmd.trim().isEmpty() && currentInstance.isRunning()) {
-                consoleArea.appendText("> " + cmd + "\n");
-                processService.sendCommand(currentInstance, cmd);
+                if (daemon != null) {
+                    daemon.command(currentInstance, cmd);
+                } else {
+                    if (!consoleView.isAttached()) {
+                        consoleView.appendLine("> " + cmd);
+                    }
+                    processService.sendCommand(currentInstance, cmd);
+                }
                 commandField.clear();
             }
         });
 
-        terminalContainer.getChildren().addAll(consoleArea, commandField);
+        terminalContainer.getChildren().addAll(createConsoleFilterBar(), consoleView.getView(), commandField);
 
-        content.getChildren().addAll(heroCard, terminalContainer);
+        content.getChildren().addAll(heroCard, daemon != null ? createDaemonMetricsCard() : createMetricsCard(),
+                terminalContainer);
 
         tab.setContent(content);
         return tab;
     }
 
+    private static String badgeStyle(ServerState state) {
+        String color = switch (state) {
+            case RUNNING -> "76, 175, 80";
+            case STARTING, STOPPING -> "255, 152, 0";
+            case STOPPED -> "244, 67, 54";
+        };
+        return "-fx-background-color: rgba(" + color + ", 0.2); -fx-text-fill: rgb(" + color
+                + "); -fx-border-color: rgb(" + color + "); -fx-border-radius: 12;";
+    }
+
+    // Level toggles and a regex over the console. No toggle means every level, FATAL goes with ERROR.
+    private HBox createConsoleFilterBar() {
+        List<ToggleButton> toggles = List.of(new ToggleButton("INFO"), new ToggleButton("WARN"),
+                new ToggleButton("ERROR"));
+        TextField regexField = new TextField();
+        regexField.setPromptText("Filter by regex...");
+        HBox.setHgrow(regexField, Priority.ALWAYS);
+        Label countsLabel = new Label();
+        countsLabel.setStyle("-fx-font-size: 12px; -fx-opacity: 0.7; -fx-font-family: 'monospaced';");
+
+        Runnable refreshCounts = () -> {
+            ConsoleFilter filter = consoleView.getFilter();
+            if (filter == null) {
+                countsLabel.setText("");
+                return;
+            }
+            StringBuilder sb = new StringBuilder().append(filter.size()).append(" of ")
+                    .append(filter.getTestedCount()).append(" lines");
+            if (filter.isCatchingUp()) {
+                sb.append(" so far");
+            }
+            for (LogLevel level : LogLevel.values()) {
+                if (filter.getCount(level) > 0) {
+                    sb.append("  ").append(level).append(' ').append(filter.getCount(level));
+                }
+            }
+            countsLabel.setText(sb.toString());
+        };
+        // The filter catches up with the buffer in its own listener, count after it on the next pulse
+        FxPulse countsPulse = new FxPulse(refreshCounts);
+        consoleView.getBuffer().addListener((Observable obs) -> countsPulse.request());
+
+        Runnable applyFilter = () -> {
+            Set<LogLevel> levels = EnumSet.noneOf(LogLevel.class);
+            for (ToggleButton toggle : toggles) {
+                if (toggle.isSelected()) {
+                    levels.add(LogLevel.valueOf(toggle.getText()));
+                }
+            }
+            if (levels.contains(LogLevel.ERROR)) {
+                levels.add(LogLevel.FATAL);
+            }
+            Pattern pattern = null;
+            regexField.setStyle(null);
+            if (!regexField.getText().isEmpty()) {
+                try {
+                    pattern = Pattern.compile(regexField.getText(), Pattern.CASE_INSENSITIVE);
+                } catch (PatternSyntaxException e) {
+                    regexField.setStyle("-fx-border-color: #f44336;");
+                    return;
+                }
+            }
+            consoleView.setFilter(levels, pattern);
+        };
+        consoleView.setOnFilterChanged(() -> {
+            // Dropped from outside the bar, e.g. to jump to a search hit
+            if (consoleView.getFilter() == null) {
+                toggles.forEach(toggle -> toggle.setSelected(false));
+                regexField.clear();
+                regexField.setStyle(null);
+            }
+            refreshCounts.run();
+        });
+        toggles.forEach(toggle -> toggle.setOnAction(e -> applyFilter.run()));
+        regexField.setOnAction(e -> applyFilter.run());
+
+        HBox bar = new HBox(8);
+        bar.getChildren().addAll(toggles);
+        bar.getChildren().addAll(regexField, countsLabel);
+        bar.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+        bar.setPadding(new Insets(6, 8, 6, 8));
+        return bar;
+    }
+
+    private VBox createMetricsCard() {
+        MetricSeries series = processService.getMetrics(currentInstance);
+        List<Sparkline> sparklines = List.of(
+                new Sparkline(series, MetricSeries.Metric.CPU, "CPU", v -> String.format("%.0f%%", v), 100),
+                new Sparkline(series, MetricSeries.Metric.RSS, "Memory", FileUtil::formatSize, 256 * 1024 * 1024),
+                new Sparkline(series, MetricSeries.Metric.THREADS, "Threads", v -> String.valueOf((long) v), 10),
+                new Sparkline(series, MetricSeries.Metric.READ, "Disk read", v -> FileUtil.formatSize(v) + "/s",
+                        1024 * 1024),
+                new Sparkline(series, MetricSeries.Metric.WRITE, "Disk write", v -> FileUtil.formatSize(v) + "/s",
+                        1024 * 1024));
+
+        HBox charts = new HBox(20);
+        for (Sparkline sparkline : sparklines) {
+            HBox.setHgrow(sparkline.getView(), Priority.ALWAYS);
+            charts.getChildren().add(sparkline.getView());
+        }
+
+        TickMonitor ticks = processService.getTickMonitor(currentInstance);
+        Label tickLabel = new Label();
+        tickLabel.setStyle("-fx-font-size: 12px; -fx-opacity: 0.8; -fx-font-family: 'monospaced';");
+        Runnable refreshTicks = () -> tickLabel.setText(formatTicks(ticks));
+        refreshTicks.run();
+
+        VBox card = new VBox(10, charts, tickLabel);
+        card.getStyleClass().add("card");
+
+        // Samples arrive on the sampler thread, redraw on the next pulse
+        FxPulse pulse = new FxPulse(() -> {
+            sparklines.forEach(Sparkline::refresh);
+            refreshTicks.run();
+        });
+        metricsListener = pulse::request;
+        processService.getMetricsService().addListener(metricsListener);
+        return card;
+    }
+
+    // The daemon only reports the latest sample, so figures instead of charts
+    private VBox createDaemonMetricsCard() {
+        Label metricsLabel = new Label("Waiting for the daemon to report");
+        metricsLabel.setStyle("-fx-font-size: 12px; -fx-opacity: 0.8; -fx-font-family: 'monospaced';");
+        daemonWatches.add(daemon.watchMetrics(currentInstance, m -> metricsLabel.setText(formatMetrics(m))));
+
+        VBox card = new VBox(10, metricsLabel);
+        card.getStyleClass().add("card");
+        return card;
+    }
+
+    private static String formatMetrics(DaemonProtocol.Metrics m) {
+        if (m.time() == 0) {
+            return "No samples yet, the server runs on the ServerSmith daemon";
+        }
+        StringBuilder sb = new StringBuilder(String.format("CPU %.0f%%  Memory %s  Threads %d  Disk %s/s read, %s/s"
+                + " write", m.cpu(), FileUtil.formatSize(m.rss()), m.threads(), FileUtil.formatSize(m.read()),
+                FileUtil.formatSize(m.write())));
+        if (m.tps() > 0 || m.mspt() > 0) {
+            sb.append(String.format("  TPS %.1f  MSPT %.1f", m.tps(), m.mspt()));
+        }
+        if (m.lagEvents() > 0) {
+            sb.append("  ").append(m.lagEvents()).append(" lag warnings");
+        }
+        return sb.toString();
+    }
+
+    private static String formatTicks(TickMonitor ticks) {
+        RollingStats tps = ticks.getTps();
+        RollingStats mspt = ticks.getMspt();
+        if (tps.size() == 0 && mspt.size() == 0 && ticks.getLagEvents() == 0) {
+            return "Tick health  waiting for the server to report";
+        }
+        StringBuilder sb = new StringBuilder("Tick health");
+        if (tps.size() > 0) {
+            sb.append(String.format("  TPS %.1f (min %.1f)", tps.latest(), tps.min()));
+        }
+        if (mspt.size() > 0) {
+            sb.append(String.format("  MSPT p50 %.1f  p95 %.1f  p99 %.1f  min %.1f  max %.1f", mspt.percentile(50),
+                    mspt.percentile(95), mspt.percentile(99), mspt.min(), mspt.max()));
+        }
+        if (ticks.getLagEvents() > 0) {
+            sb.append("  ").append(ticks.getLagEvents()).append(" lag warnings, ").append(ticks.getTicksSkipped())
+                    .append(" ticks skipped");
+        }
+        return sb.toString();
+    }
+
+    private static final int SEARCH_LIMIT = 500;
+
+    private Tab createSearchTab() {
+        Tab tab = new Tab("Search");
+        tab.setClosable(false);
+
+        VBox root = new VBox(15);
+        root.setPadding(new Insets(20));
+        root.setStyle("-fx-background-color: -color-background;");
+
+        // The index reads the history in place, which with a daemon is not ours to open
+        LogIndex index = daemon == null ? processService.getLogIndex(currentInstance) : null;
+
+        TextField queryField = new TextField();
+        queryField.setPromptText("Search console history, e.g. steve \"lost connection\" level:warn since:2h");
+        HBox.setHgrow(queryField, Priority.ALWAYS);
+        Button searchBtn = new Button("Search");
+        HBox searchBar = new HBox(10, queryField, searchBtn);
+        searchBar.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+
+        Label statusLabel = new Label(daemon != null
+                ? "Search is unavailable while the ServerSmith daemon runs servers."
+                : index == null ? "Console history is unavailable for this server." : "");
+        statusLabel.setStyle("-fx-font-size: 12px; -fx-opacity: 0.7;");
+
+        ListView<Long> results = new ListView<>();
+        results.getStyleClass().add("console-view");
+        results.setFixedCellSize(18);
+        VBox.setVgrow(results, Priority.ALWAYS);
+        results.setCellFactory(lv -> new ListCell<>() {
+            @Override
+            protected void updateItem(Long line, boolean empty) {
+                super.updateItem(line, empty);
+                if (empty || line == null || index == null || line < index.getLog().getFirstLine()) {
+                    setText(null);
+                } else {
+                    setText(index.getLog().readLine(line));
+                }
+            }
+        });
+        results.setOnMouseClicked(e -> {
+            Long line = results.getSelectionModel().getSelectedItem();
+            if (e.getClickCount() == 2 && line != null) {
+                tabPane.getSelectionModel().select(0);
+                consoleView.scrollToLine(line);
+            }
+        });
+
+        Runnable runSearch = () -> {
+            LogQuery query = LogQuery.parse(queryField.getText());
+            if (index == null || query.isEmpty()) {
+                return;
+            }
+            statusLabel.setText("Searching...");
+            long start = System.nanoTime();
+            CompletableFuture.supplyAsync(() -> index.search(query, SEARCH_LIMIT)).whenComplete((result, error) -> {
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                long pending = index.getLog().getLineCount() - index.getIndexedTo();
+                Platform.runLater(() -> {
+                    if (error != null) {
+                        // e.g. a segment rotated away while the hits were being read
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        logger.warn("Console search failed", cause);
+                        statusLabel.setText("Search failed: " + cause);
+                        return;
+                    }
+                    results.getItems().setAll(result.lines());
+                    statusLabel.setText((result.exact() ? "" : "up to ") + result.matches() + " matches in " + millis
+                            + " ms" + (result.matches() > SEARCH_LIMIT ? ", showing newest " + SEARCH_LIMIT : "")
+                            + (pending > 0 ? " (" + pending + " lines still indexing)" : ""));
+                });
+            });
+        };
+        queryField.setOnAction(e -> runSearch.run());
+        searchBtn.setOnAction(e -> runSearch.run());
+
+        root.getChildren().addAll(searchBar, statusLabel, results);
+        tab.setContent(root);
+        return tab;
+    }
+
     private Tab createSettingsTab() {
         Tab tab = new Tab("Settings");
         tab.setClosable(false);
@@ -214,6 +573,9 @@ public class EditorController {
         // Load properties
         Path propsFile = currentInstance.getLocation().resolve("server.properties");
         PropertiesService props = new PropertiesService(propsFile);
+        settingsProps = props;
+        // The server rewrites the file when it starts, pick that up unless there are unsaved edits
+        settingsWatch = props.watch(fileWatcher, () -> Platform.runLater(() -> reloadSettings(props)));
 
         ScrollPane scroll = new ScrollPane();
         scroll.setFitToWidth(true);
@@ -228,9 +590,8 @@ public class EditorController {
         netGrid.setHgap(15);
         netGrid.setVgap(15);
 
-        portField = new TextField(props.getProperty("server-port"));
+        portField = new TextField();
         onlineModeCheck = new CheckBox("Online Mode");
-        onlineModeCheck.setSelected(Boolean.parseBoolean(props.getProperty("online-mode")));
 
         netGrid.add(new Label("Server Port:"), 0, 0);
         netGrid.add(portField, 1, 0);
@@ -245,19 +606,15 @@ public class EditorController {
         gameGrid.setHgap(15);
         gameGrid.setVgap(15);
 
-        maxPlayersField = new TextField(props.getProperty("max-players"));
+        maxPlayersField = new TextField();
         pvpCheck = new CheckBox("Enable PvP");
-        pvpCheck.setSelected(Boolean.parseBoolean(props.getProperty("pvp")));
         whitelistCheck = new CheckBox("Whitelist Enabled");
-        whitelistCheck.setSelected(Boolean.parseBoolean(props.getProperty("white-list")));
 
         difficultyCombo = new ComboBox<>();
         difficultyCombo.getItems().addAll("peaceful", "easy", "normal", "hard");
-        difficultyCombo.setValue(props.getProperty("difficulty"));
 
         gamemodeCombo = new ComboBox<>();
         gamemodeCombo.getItems().addAll("survival", "creative", "adventure", "spectator");
-        gamemodeCombo.setValue(props.getProperty("gamemode"));
 
         gameGrid.add(new Label("Max Players:"), 0, 0);
         gameGrid.add(maxPlayersField, 1, 0);
@@ -273,8 +630,9 @@ public class EditorController {
         gameplayCard.getStyleClass().add("card");
 
         // --- Card: MOTD ---
-        motdArea = new TextArea(props.getProperty("motd"));
+        motdArea = new TextArea();
         motdArea.setPrefRowCount(3);
+        fillSettings(props);
 
         FlowPane motdToolBar = new FlowPane(5, 5); // Use FlowPane for wrapping
         String[] codes = { "&0", "&1", "&2", "&3", "&4", "&5", "&6", "&7", "&8", "&9", "&a", "&b", "&c", "&d", "&e",
@@ -399,6 +757,41 @@ public class EditorController {
         return tab;
     }
 
+    private void fillSettings(PropertiesService props) {
+        portField.setText(props.getProperty("server-port"));
+        maxPlayersField.setText(props.getProperty("max-players"));
+        onlineModeCheck.setSelected(Boolean.parseBoolean(props.getProperty("online-mode")));
+        pvpCheck.setSelected(Boolean.parseBoolean(props.getProperty("pvp")));
+        whitelistCheck.setSelected(Boolean.parseBoolean(props.getProperty("white-list")));
+        difficultyCombo.setValue(props.getProperty("difficulty"));
+        gamemodeCombo.setValue(props.getProperty("gamemode"));
+        motdArea.setText(props.getProperty("motd"));
+    }
+
+    // True if a control no longer shows what's in props
+    private boolean settingsEdited(PropertiesService props) {
+        return !Objects.equals(portField.getText(), Objects.toString(props.getProperty("server-port"), ""))
+                || !Objects.equals(maxPlayersField.getText(), Objects.toString(props.getProperty("max-players"), ""))
+                || onlineModeCheck.isSelected() != Boolean.parseBoolean(props.getProperty("online-mode"))
+                || pvpCheck.isSelected() != Boolean.parseBoolean(props.getProperty("pvp"))
+                || whitelistCheck.isSelected() != Boolean.parseBoolean(props.getProperty("white-list"))
+                || !Objects.equals(difficultyCombo.getValue(), props.getProperty("difficulty"))
+                || !Objects.equals(gamemodeCombo.getValue(), props.getProperty("gamemode"))
+                || !Objects.equals(motdArea.getText(), Objects.toString(props.getProperty("motd"), ""));
+    }
+
+    private void reloadSettings(PropertiesService props) {
+        if (settingsProps != props) {
+            return; // Another server was selected meanwhile
+        }
+        boolean edited = settingsEdited(props);
+        // Reloaded either way, so saving unsaved edits keeps whatever else changed in the file
+        props.load();
+        if (!edited) {
+            fillSettings(props);
+        }
+    }
+
     private Tab createFilesTab() {
         Tab tab = new Tab("Files");
         tab.setClosable(false);
@@ -417,81 +810,107 @@ public class EditorController {
 
         Button refreshBtn = new Button("Refresh");
         // Reuse some icon or just text for now
-        refreshBtn.setOnAction(e -> refreshFileList());
+        refreshBtn.setOnAction(e -> fileTree.refresh());
 
         toolbar.getChildren().addAll(openFolderBtn, refreshBtn);
 
-        // --- File List ---
-        fileListView = new ListView<>();
-        fileListView.getStyleClass().add("card");
-        VBox.setVgrow(fileListView, Priority.ALWAYS);
+        // --- File Tree ---
+        fileTree = new FileTree(currentInstance.getLocation(), fileWatcher, path -> openFile(path.toFile()));
+        Node treeView = fileTree.getView();
+        treeView.getStyleClass().add("card");
+        VBox.setVgrow(treeView, Priority.ALWAYS);
 
-        fileListView.setCellFactory(lv -> new ListCell<>() {
-            @Override
-            protected void updateItem(Path item, boolean empty) {
-                super.updateItem(item, empty);
-                if (empty || item == null) {
-                    setText(null);
-                    setGraphic(null);
-                } else {
-                    setText(item.getFileName().toString());
-                    boolean isDir = java.nio.file.Files.isDirectory(item);
-                    setGraphic(isDir ? Icons.getFolder() : Icons.getFile());
-
-                    // Style
-                    setStyle("-fx-padding: 8 12;");
-                }
-            }
-        });
-
-        fileListView.setOnMouseClicked(e -> {
-            if (e.getClickCount() == 2) {
-                Path selected = fileListView.getSelectionModel().getSelectedItem();
-                if (selected != null) {
-                    openFile(selected.toFile());
-                }
-            }
-        });
-
-        root.getChildren().addAll(toolbar, fileListView);
-
-        // Initial load
-        refreshFileList();
+        root.getChildren().addAll(toolbar, treeView);
 
         tab.setContent(root);
         return tab;
     }
 
-    private ListView<Path> fileListView;
-
-    private void refreshFileList() {
-        if (fileListView == null || currentInstance == null)
+    private void startServer() {
+        if (daemon != null) {
+            daemon.start(currentInstance);
             return;
-        try (var stream = java.nio.file.Files.list(currentInstance.getLocation())) {
-            fileListView.getItems().setAll(stream.sorted((p1, p2) -> {
-                boolean d1 = java.nio.file.Files.isDirectory(p1);
-                boolean d2 = java.nio.file.Files.isDirectory(p2);
-                if (d1 && !d2)
-                    return -1;
-                if (!d1 && d2)
-                    return 1;
-                return p1.getFileName().toString().compareToIgnoreCase(p2.getFileName().toString());
-            }).toList());
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-    }
-
-    private void startServer() {
         try {
-            consoleArea.clear();
-            processService.startServer(currentInstance, currentInstance.getMinMemory(), currentInstance.getMaxMemory(),
-                    line -> Platform.runLater(() -> consoleArea.appendText(line + "\n")));
+            if (consoleView.isAttached()) {
+                processService.startServer(currentInstance, currentInstance.getMinMemory(),
+                        currentInstance.getMaxMemory());
+            } else {
+                // No history on disk, stream straight into the view
+                consoleView.clear();
+                processService.startServer(currentInstance, currentInstance.getMinMemory(),
+                        currentInstance.getMaxMemory(), consoleView::appendLines);
+            }
         } catch (Exception e) {
             new Alert(Alert.AlertType.ERROR, "Failed to start server: " + e.getMessage()).show();
         }
     }
 
+    // Runs in the background; a running server keeps running, paced so it doesn't lag
+    private void backUp(Button backupBtn) {
+        ServerInstance instance = currentInstance;
+        if (daemon != null && instance.isRunning()) {
+            // Pausing autosave for a live backup goes through the process that runs the server
+            new Alert(Alert.AlertType.ERROR, instance.getName()
+                    + " runs on the ServerSmith daemon, stop it to back it up from here").show();
+            return;
+        }
+        backupBtn.setDisable(true);
+        // Anything thrown has to reach the alert, or the button stays disabled for good
+        Thread.ofVirtual().name("backup-" + instance.getName()).start(() -> {
+            try {
+                IoThrottle throttle = new IoThrottle(BackupService.LIVE_BYTES_PER_SECOND,
+                        BackupService.LIVE_OPS_PER_SECOND);
+                BackupService.Snapshot snapshot = processService.getBackupService(instance).backup(processService,
+                        instance, throttle);
+                Platform.runLater(() -> {
+                    backupBtn.setDisable(false);
+                    new Alert(Alert.AlertType.INFORMATION, "Backup " + snapshot.id() + " of " + instance.getName()
+                            + " done: " + snapshot.files() + " files, " + FileUtil.formatSize(snapshot.added())
+                            + " new").show();
+                });
+            } catch (IOException | RuntimeException ex) {
+                Platform.runLater(() -> {
+                    backupBtn.setDisable(false);
+                    new Alert(Alert.AlertType.ERROR, "Backup failed: " + ex.getMessage()).show();
+                });
+            }
+        });
+    }
+
+    // Whole instance into one archive for another machine, the server must be stopped
+    private void exportServer(Button exportBtn) {
+        ServerInstance instance = currentInstance;
+        FileChooser fc = new FileChooser();
+        fc.setTitle("Export Server");
+        fc.setInitialFileName(instance.getLocation().getFileName() + InstanceArchive.EXTENSION);
+        fc.getExtensionFilters()
+                .add(new FileChooser.ExtensionFilter("Server archives", "*" + InstanceArchive.EXTENSION));
+        File file = fc.showSaveDialog(root.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        exportBtn.disableProperty().unbind();
+        exportBtn.setDisable(true);
+        Thread.ofVirtual().name("export-" + instance.getName()).start(() -> {
+            try {
+                InstanceArchive.Result result = new InstanceArchive().export(instance.getLocation(), file.toPath(),
+                        InstanceArchive.Level.DEFAULT);
+                Platform.runLater(() -> {
+                    exportBtn.disableProperty().bind(instance.runningProperty());
+                    new Alert(Alert.AlertType.INFORMATION, "Exported " + instance.getName() + ": " + result.files()
+                            + " files, " + FileUtil.formatSize(result.size()) + " in "
+                            + FileUtil.formatSize(result.archived())).show();
+                });
+            } catch (IOException | RuntimeException ex) {
+                Platform.runLater(() -> {
+                    exportBtn.disableProperty().bind(instance.runningProperty());
+                    new Alert(Alert.AlertType.ERROR, "Export failed: " + ex.getMessage()).show();
+                });
+            }
+        });
+    }
+
     private void openFile(File file) {
         try {
             if (Desktop.isDesktopSupported()) {
@@ -0,0 +1,463 @@
+package dev.perillo.serversmith.ui;
+
+import dev.perillo.serversmith.service.FileWatcher;
+import dev.perillo.serversmith.util.FileUtil;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.LongProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleLongProperty;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.layout.HBox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Files tab. A directory is listed on a background thread the first time it's
+// expanded, reading each entry's attributes once; from then on the watcher
+// keeps it current. Directory sizes come from background walks that show a
+// running total, remember every subdirectory they pass (so expanding one later
+// costs nothing) and are then adjusted by what the watcher reports. The FX
+// thread never lists or stats anything.
+// Sizes of folders nobody has expanded aren't watched, Refresh recounts them.
+public class FileTree {
+    private static final Logger logger = LoggerFactory.getLogger(FileTree.class);
+    private static final int SIZE_WALKERS = 2;
+    private static final long PUBLISH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final class FileNode {
+        final Path path;
+        final String name;
+        final boolean directory;
+        // -1 while unknown. For directories the whole subtree.
+        final LongProperty size = new SimpleLongProperty(-1);
+        final BooleanProperty sizing = new SimpleBooleanProperty();
+
+        FileNode(Path path, String name, boolean directory, long size) {
+            this.path = path;
+            this.name = name;
+            this.directory = directory;
+            this.size.set(size);
+        }
+    }
+
+    private static final Comparator<TreeItem<FileNode>> ORDER = Comparator
+            .comparing((TreeItem<FileNode> item) -> !item.getValue().directory)
+            .thenComparing(item -> item.getValue().name, String.CASE_INSENSITIVE_ORDER);
+
+    private final class FileItem extends TreeItem<FileNode> {
+        private boolean listed;
+        // The last batch of watcher changes being read, the next one waits for it so they land in order.
+        // Only the watcher thread touches it.
+        private CompletableFuture<Void> changes = CompletableFuture.completedFuture(null);
+
+        FileItem(FileNode node) {
+            super(node);
+            if (node.directory) {
+                expandedProperty().addListener((obs, was, expanded) -> {
+                    if (expanded && !listed) {
+                        list(this);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return !getValue().directory;
+        }
+    }
+
+    private final Path root;
+    private final FileWatcher fileWatcher;
+    private final TreeView<FileNode> treeView = new TreeView<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Listings never queue behind size walks, but only a couple of walks hit the disk at once
+    private final Semaphore sizeWalkers = new Semaphore(SIZE_WALKERS);
+    private final Map<Path, Long> sizeCache = new ConcurrentHashMap<>();
+    private final Map<Path, FileWatcher.Subscription> watches = new ConcurrentHashMap<>();
+    private volatile boolean disposed;
+
+    public FileTree(Path root, FileWatcher fileWatcher, Consumer<Path> onOpen) {
+        this.root = root.toAbsolutePath().normalize();
+        this.fileWatcher = fileWatcher;
+
+        treeView.setShowRoot(false);
+        treeView.setCellFactory(tv -> new FileCell());
+        treeView.setOnMouseClicked(e -> {
+            if (e.getClickCount() == 2) {
+                TreeItem<FileNode> selected = treeView.getSelectionModel().getSelectedItem();
+                if (selected != null && selected.getValue().path != null && !selected.getValue().directory) {
+                    onOpen.accept(selected.getValue().path);
+                }
+            }
+        });
+        refresh();
+    }
+
+    public Node getView() {
+        return treeView;
+    }
+
+    // Starts over, recounting every size
+    public void refresh() {
+        closeWatches();
+        sizeCache.clear();
+        FileItem rootItem = new FileItem(new FileNode(root, root.toString(), true, -1));
+        treeView.setRoot(rootItem);
+        rootItem.setExpanded(true);
+    }
+
+    public void dispose() {
+        disposed = true;
+        executor.shutdownNow();
+        closeWatches();
+    }
+
+    private void closeWatches() {
+        watches.values().forEach(FileWatcher.Subscription::close);
+        watches.clear();
+    }
+
+    private void list(FileItem item) {
+        item.listed = true;
+        item.getChildren().setAll(List.of(new TreeItem<>(new FileNode(null, "Loading...", false, -1))));
+        Path dir = item.getValue().path;
+        executor.execute(() -> {
+            // Watch first so nothing that happens during the listing is missed
+            FileWatcher.Subscription previous = watches.put(dir,
+                    fileWatcher.watch(dir, changes -> changed(item, changes)));
+            if (previous != null) {
+                previous.close();
+            }
+            List<FileNode> nodes = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    FileNode node = read(path);
+                    if (node != null) {
+                        nodes.add(node);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot list " + dir + ": " + e);
+            }
+            List<TreeItem<FileNode>> children = new ArrayList<>(nodes.size());
+            for (FileNode node : nodes) {
+                children.add(new FileItem(node));
+            }
+            children.sort(ORDER);
+            Platform.runLater(() -> {
+                if (disposed) {
+                    return;
+                }
+                item.getChildren().setAll(children);
+                for (TreeItem<FileNode> child : children) {
+                    if (child.getValue().directory && child.getValue().size.get() < 0) {
+                        measure(child, false);
+                    }
+                }
+            });
+        });
+    }
+
+    // One attribute read per entry. Null if it vanished in the meantime.
+    private FileNode read(Path path) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            try {
+                // Broken symlink
+                attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e2) {
+                return null;
+            }
+        }
+        Path name = path.getFileName();
+        if (attributes.isDirectory()) {
+            return new FileNode(path, name.toString(), true, sizeCache.getOrDefault(path, -1L));
+        }
+        return new FileNode(path, name.toString(), false, attributes.size());
+    }
+
+    // Walks the directory in the background, showing the total so far as it goes. With
+    // propagate the result is also added to the parents, for folders that appeared later.
+    private void measure(TreeItem<FileNode> item, boolean propagate) {
+        FileNode node = item.getValue();
+        node.sizing.set(true);
+        executor.execute(() -> {
+            SizeWalk walk = new SizeWalk(node);
+            try {
+                sizeWalkers.acquire();
+                try {
+                    Files.walkFileTree(node.path, walk);
+                } finally {
+                    sizeWalkers.release();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                logger.warn("Cannot measure " + node.path + ": " + e);
+            }
+            long total = walk.total;
+            Platform.runLater(() -> {
+                node.size.set(total);
+                node.sizing.set(false);
+                if (propagate && item.getParent() != null) {
+                    adjust(item.getParent(), total);
+                }
+            });
+        });
+    }
+
+    private final class SizeWalk extends SimpleFileVisitor<Path> {
+        private final FileNode node;
+        // Running totals of the directories we're inside, innermost last
+        private final Deque<long[]> open = new ArrayDeque<>();
+        private long total;
+        private long lastPublish = System.nanoTime();
+
+        SizeWalk(FileNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (disposed) {
+                return FileVisitResult.TERMINATE;
+            }
+            Long known = sizeCache.get(dir);
+            if (known != null && !open.isEmpty()) {
+                // Counted before, e.g. a subfolder that was expanded first
+                add(known);
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            open.push(new long[1]);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            add(attrs.size());
+            long now = System.nanoTime();
+            if (now - lastPublish > PUBLISH_NANOS) {
+                lastPublish = now;
+                long soFar = total;
+                Platform.runLater(() -> node.size.set(soFar));
+            }
+            return disposed ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            long size = open.pop()[0];
+            sizeCache.put(dir, size);
+            if (!open.isEmpty()) {
+                open.peek()[0] += size;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        private void add(long bytes) {
+            total += bytes;
+            if (!open.isEmpty()) {
+                open.peek()[0] += bytes;
+            }
+        }
+    }
+
+    // Adds delta to the directory and everything above it that has a settled size
+    private void adjust(TreeItem<FileNode> dir, long delta) {
+        for (TreeItem<FileNode> item = dir; item != null; item = item.getParent()) {
+            FileNode node = item.getValue();
+            sizeCache.computeIfPresent(node.path, (path, size) -> size + delta);
+            if (node.size.get() >= 0 && !node.sizing.get()) {
+                // A walk that's still running will see the change itself
+                node.size.set(node.size.get() + delta);
+            }
+        }
+    }
+
+    // Called on the watcher thread, which must not block: whatever changed is stat'ed in the
+    // background and handed to the FX thread, one batch after the other
+    private void changed(FileItem dir, List<FileWatcher.Change> changes) {
+        if (disposed) {
+            return;
+        }
+        dir.changes = dir.changes.thenRunAsync(() -> readChanges(dir, changes), executor).exceptionally(e -> {
+            if (!disposed) {
+                logger.warn("Cannot read changes in " + dir.getValue().path + ": " + e);
+            }
+            return null;
+        });
+    }
+
+    private void readChanges(FileItem dir, List<FileWatcher.Change> changes) {
+        Map<Path, FileNode> read = new HashMap<>();
+        for (FileWatcher.Change change : changes) {
+            if (change.kind() == FileWatcher.Kind.CREATED || change.kind() == FileWatcher.Kind.MODIFIED) {
+                FileNode node = read(change.path());
+                if (node != null) {
+                    read.put(change.path(), node);
+                }
+            }
+        }
+        Platform.runLater(() -> {
+            if (!disposed) {
+                apply(dir, changes, read);
+            }
+        });
+    }
+
+    private void apply(FileItem dir, List<FileWatcher.Change> changes, Map<Path, FileNode> read) {
+        List<TreeItem<FileNode>> children = dir.getChildren();
+        for (FileWatcher.Change change : changes) {
+            if (change.kind() == FileWatcher.Kind.OVERFLOW) {
+                // Lost track, list it again
+                if (dir.getParent() == null) {
+                    refresh();
+                } else {
+                    forget(dir.getValue().path);
+                    list(dir);
+                }
+                return;
+            }
+            int index = indexOf(children, change.path());
+            TreeItem<FileNode> existing = index >= 0 ? children.get(index) : null;
+            FileNode node = read.get(change.path());
+
+            if (existing != null && (node == null || change.kind() == FileWatcher.Kind.DELETED
+                    || node.directory != existing.getValue().directory)) {
+                children.remove(index);
+                removed(dir, existing.getValue());
+                existing = null;
+            }
+            if (node == null || change.kind() == FileWatcher.Kind.DELETED) {
+                continue;
+            }
+            if (existing == null) {
+                FileItem item = new FileItem(node);
+                int at = Collections.binarySearch(children, item, ORDER);
+                children.add(at < 0 ? -at - 1 : at, item);
+                if (node.directory) {
+                    measure(item, true);
+                } else {
+                    adjust(dir, node.size.get());
+                }
+            } else if (!node.directory) {
+                long delta = node.size.get() - existing.getValue().size.get();
+                existing.getValue().size.set(node.size.get());
+                adjust(dir, delta);
+            }
+        }
+    }
+
+    private void removed(TreeItem<FileNode> dir, FileNode node) {
+        if (node.size.get() > 0) {
+            adjust(dir, -node.size.get());
+        }
+        if (node.directory) {
+            forget(node.path);
+        }
+    }
+
+    // Drops cached sizes and watches for the folder and everything in it
+    private void forget(Path dir) {
+        sizeCache.keySet().removeIf(path -> path.startsWith(dir));
+        watches.entrySet().removeIf(entry -> {
+            if (entry.getKey().startsWith(dir)) {
+                entry.getValue().close();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    // Children are kept in ORDER, so look where the entry would sort as a folder and as a file
+    private static int indexOf(List<TreeItem<FileNode>> children, Path path) {
+        String name = path.getFileName().toString();
+        for (boolean directory : new boolean[] { true, false }) {
+            TreeItem<FileNode> probe = new TreeItem<>(new FileNode(path, name, directory, -1));
+            int at = Collections.binarySearch(children, probe, ORDER);
+            if (at < 0) {
+                continue;
+            }
+            // Names that only differ in case sort as equal, the one we want is among them
+            for (int i = at; i >= 0 && ORDER.compare(children.get(i), probe) == 0; i--) {
+                if (path.equals(children.get(i).getValue().path)) {
+                    return i;
+                }
+            }
+            for (int i = at + 1; i < children.size() && ORDER.compare(children.get(i), probe) == 0; i++) {
+                if (path.equals(children.get(i).getValue().path)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static final class FileCell extends TreeCell<FileNode> {
+        private final Label name = new Label();
+        private final Label size = new Label();
+        private final HBox box = new HBox(8, name, size);
+
+        FileCell() {
+            box.setAlignment(Pos.CENTER_LEFT);
+            size.setStyle("-fx-opacity: 0.6;");
+            setStyle("-fx-padding: 4 8;");
+        }
+
+        @Override
+        protected void updateItem(FileNode item, boolean empty) {
+            super.updateItem(item, empty);
+            size.textProperty().unbind();
+            if (empty || item == null) {
+                setText(null);
+                setGraphic(null);
+                return;
+            }
+            name.setText(item.name);
+            name.setGraphic(item.path == null ? null : item.directory ? Icons.getFolder() : Icons.getFile());
+            size.textProperty().bind(Bindings.createStringBinding(
+                    () -> item.size.get() < 0 ? "" : FileUtil.formatSize(item.size.get()) + (item.sizing.get() ? "..." : ""),
+                    item.size, item.sizing));
+            setText(null);
+            setGraphic(box);
+        }
+    }
+}
@@ -1,23 +1,44 @@
 package dev.perillo.serversmith.ui;
 
 import dev.perillo.serversmith.model.ServerInstance;
+import dev.perillo.serversmith.service.FileWatcher;
+import dev.perillo.serversmith.service.InstanceArchive;
 import dev.perillo.serversmith.service.InstanceManager;
 import dev.perillo.serversmith.service.ProcessService;
+import javafx.application.Platform;
 import javafx.scene.Parent;
+import javafx.scene.control.Alert;
 import javafx.scene.control.SplitPane;
 import javafx.scene.layout.BorderPane;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 
 public class MainController {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(45);
+
     private final BorderPane root = new BorderPane();
-    private final InstanceManager instanceManager = new InstanceManager();
+    private final FileWatcher fileWatcher = new FileWatcher();
+    private final InstanceManager instanceManager = new InstanceManager(fileWatcher);
     private final ProcessService processService = new ProcessService();
+    // Set when a daemon is running: it runs the servers and this window is one of its clients
+    private final DaemonConnection daemon = DaemonConnection.connect();
 
     private final SidebarController sidebar;
     private final EditorController editor;
 
     public MainController() {
-        sidebar = new SidebarController(instanceManager, this::onServerSelected, this::onCreateRequested);
-        editor = new EditorController(processService);
+        sidebar = new SidebarController(instanceManager, this::onServerSelected, this::onCreateRequested,
+                this::onImportRequested);
+        editor = new EditorController(processService, daemon, fileWatcher);
+        if (daemon != null) {
+            daemon.mirror(instanceManager.getInstances());
+        }
 
         SplitPane split = new SplitPane();
         split.getItems().addAll(sidebar.getView(), editor.getView());
@@ -30,6 +51,20 @@ public class MainController {
         return root;
     }
 
+    public boolean isDaemonConnected() {
+        return daemon != null;
+    }
+
+    // Stops every server this window runs, blocks until they have exited. A daemon's servers
+    // keep running, the window just lets go of them.
+    public void shutdown() {
+        if (daemon != null) {
+            daemon.close();
+        }
+        processService.shutdown(SHUTDOWN_TIMEOUT);
+        fileWatcher.close();
+    }
+
     private void onServerSelected(ServerInstance instance) {
         editor.setServer(instance);
     }
@@ -37,4 +72,45 @@ public class MainController {
     private void onCreateRequested() {
         new WizardDialog(instanceManager).showAndWait();
     }
+
+    // Extracts an exported instance into a new folder under the chosen one and lists it
+    private void onImportRequested() {
+        FileChooser fc = new FileChooser();
+        fc.setTitle("Import Server");
+        fc.getExtensionFilters()
+                .add(new FileChooser.ExtensionFilter("Server archives", "*" + InstanceArchive.EXTENSION));
+        File archive = fc.showOpenDialog(root.getScene().getWindow());
+        if (archive == null) {
+            return;
+        }
+        DirectoryChooser dc = new DirectoryChooser();
+        dc.setTitle("Extract To");
+        File parent = dc.showDialog(root.getScene().getWindow());
+        if (parent == null) {
+            return;
+        }
+        String name = archive.getName();
+        if (name.endsWith(InstanceArchive.EXTENSION)) {
+            name = name.substring(0, name.length() - InstanceArchive.EXTENSION.length());
+        }
+        Path target = parent.toPath().resolve(name);
+        if (Files.exists(target)) {
+            new Alert(Alert.AlertType.ERROR, target + " already exists").show();
+            return;
+        }
+        Thread.ofVirtual().name("import-" + name).start(() -> {
+            try {
+                new InstanceArchive().extract(archive.toPath(), target);
+                Platform.runLater(() -> {
+                    try {
+                        instanceManager.openInstance(target);
+                    } catch (IOException | RuntimeException e) {
+                        new Alert(Alert.AlertType.ERROR, "Import failed: " + e.getMessage()).show();
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                Platform.runLater(() -> new Alert(Alert.AlertType.ERROR, "Import failed: " + e.getMessage()).show());
+            }
+        });
+    }
 }
@@ -19,12 +19,15 @@ public class SidebarController {
     private final InstanceManager instanceManager;
     private final Consumer<ServerInstance> onSelect;
     private final Runnable onCreate;
+    private final Runnable onImport;
     private ListView<ServerInstance> listView;
 
-    public SidebarController(InstanceManager instanceManager, Consumer<ServerInstance> onSelect, Runnable onCreate) {
+    public SidebarController(InstanceManager instanceManager, Consumer<ServerInstance> onSelect, Runnable onCreate,
+            Runnable onImport) {
         this.instanceManager = instanceManager;
         this.onSelect = onSelect;
         this.onCreate = onCreate;
+        this.onImport = onImport;
 
         initialize();
     }
@@ -57,7 +60,12 @@ public class SidebarController {
         Icons.animateHover(createBtn);
         createBtn.setOnAction(e -> onCreate.run());
 
-        root.getChildren().addAll(searchField, listView, createBtn);
+        Button importBtn = new Button("Import Server");
+        importBtn.setMaxWidth(Double.MAX_VALUE);
+        Icons.animateHover(importBtn);
+        importBtn.setOnAction(e -> onImport.run());
+
+        root.getChildren().addAll(searchField, listView, createBtn, importBtn);
     }
 
     public Parent getView() {
@@ -103,7 +111,11 @@ public class SidebarController {
                 Label nameLabel = new Label(item.getName());
                 nameLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14px; -fx-text-fill: -color-on-surface;");
 
-                Label versionLabel = new Label(item.getVersion());
+                Label versionLabel = new Label(switch (item.getAvailability()) {
+                    case LOADING -> "Loading...";
+                    case OFFLINE -> "Offline - " + item.getLocation();
+                    default -> item.getVersion();
+                });
                 versionLabel.setStyle("-fx-font-size: 11px; -fx-text-fill: -color-on-surface; -fx-opacity: 0.6;");
 
                 details.getChildren().addAll(nameLabel, versionLabel);
@@ -119,6 +131,11 @@ public class SidebarController {
                         .otherwise(Color.web("#f44336")));
 
                 cellRoot.getChildren().addAll(iconContainer, details, statusDot);
+                if (!item.isAvailable()) {
+                    cellRoot.setOpacity(0.5);
+                    statusDot.fillProperty().unbind();
+                    statusDot.setFill(Color.GRAY);
+                }
 
                 Icons.animateHover(cellRoot);
                 setGraphic(cellRoot);
@@ -138,7 +155,14 @@ public class SidebarController {
                         }
                     });
                 });
-                menu.getItems().add(deleteItem);
+                MenuItem removeItem = new MenuItem("Remove from List");
+                removeItem.setOnAction(e -> {
+                    instanceManager.removeInstance(item);
+                    listView.getSelectionModel().clearSelection();
+                });
+                // Nothing to delete on a drive we can't reach
+                deleteItem.setDisable(!item.isAvailable());
+                menu.getItems().addAll(deleteItem, removeItem);
                 setContextMenu(menu);
             }
         }
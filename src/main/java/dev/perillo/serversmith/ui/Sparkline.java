@@ -0,0 +1,104 @@
+package dev.perillo.serversmith.ui;
+
+import dev.perillo.serversmith.service.MetricSeries;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+
+import java.util.function.DoubleFunction;
+
+// Small line chart of one metric, e.g. "CPU 42%" over the last two minutes.
+// Drawn straight onto a canvas from a reused buffer, call refresh() on the FX
+// thread when new samples are in.
+public class Sparkline {
+    private static final double HEIGHT = 36;
+    private static final Color LINE = Color.web("#f97316");
+    private static final Color FILL = Color.web("#f97316", 0.15);
+
+    private final MetricSeries series;
+    private final MetricSeries.Metric metric;
+    private final String title;
+    private final DoubleFunction<String> format;
+    private final double minScale;
+    private final double[] values = new double[MetricSeries.CAPACITY];
+
+    private final Label label = new Label();
+    private final Canvas canvas = new Canvas();
+    private final VBox view;
+
+    public Sparkline(MetricSeries series, MetricSeries.Metric metric, String title, DoubleFunction<String> format,
+            double minScale) {
+        this.series = series;
+        this.metric = metric;
+        this.title = title;
+        this.format = format;
+        this.minScale = minScale;
+
+        label.setStyle("-fx-font-size: 12px; -fx-opacity: 0.8;");
+        Pane canvasPane = new Pane(canvas);
+        canvasPane.setMinHeight(HEIGHT);
+        canvasPane.setPrefHeight(HEIGHT);
+        canvasPane.setMinWidth(0);
+        canvas.widthProperty().bind(canvasPane.widthProperty());
+        canvas.heightProperty().bind(canvasPane.heightProperty());
+        canvas.widthProperty().addListener((obs, old, w) -> refresh());
+        canvas.heightProperty().addListener((obs, old, h) -> refresh());
+
+        view = new VBox(4, label, canvasPane);
+        view.setMinWidth(0);
+        refresh();
+    }
+
+    public Node getView() {
+        return view;
+    }
+
+    public void refresh() {
+        int n = series.copy(metric, values);
+        label.setText(title + "  " + (n == 0 ? "-" : format.apply(values[n - 1])));
+
+        double w = canvas.getWidth();
+        double h = canvas.getHeight();
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, w, h);
+        if (n < 2 || w <= 0 || h <= 0) {
+            return;
+        }
+
+        double max = minScale;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, values[i]);
+        }
+        // Always span the full ring so the line scrolls in from the right
+        double step = w / (MetricSeries.CAPACITY - 1);
+        double x0 = w - step * (n - 1);
+
+        g.beginPath();
+        g.moveTo(x0, h);
+        for (int i = 0; i < n; i++) {
+            g.lineTo(x0 + step * i, y(values[i], max, h));
+        }
+        g.lineTo(w, h);
+        g.closePath();
+        g.setFill(FILL);
+        g.fill();
+
+        g.beginPath();
+        g.moveTo(x0, y(values[0], max, h));
+        for (int i = 1; i < n; i++) {
+            g.lineTo(x0 + step * i, y(values[i], max, h));
+        }
+        g.setStroke(LINE);
+        g.setLineWidth(1.5);
+        g.stroke();
+    }
+
+    private static double y(double value, double max, double h) {
+        // Keep a pixel clear at the top so peaks aren't cut off by the stroke
+        return h - 1 - value / max * (h - 2);
+    }
+}
@@ -0,0 +1,399 @@
+package dev.perillo.serversmith.ui;
+
+import dev.perillo.serversmith.model.LogLevel;
+
+// A console line with its color and formatting codes parsed out, done once when
+// the line enters the ConsoleBuffer and kept with it. Understands ANSI SGR (16,
+// 256 and 24-bit colors, bold, italic, underline, strikethrough), Minecraft §
+// codes including §x hex colors, and the & codes chat plugins relay. Other
+// escape sequences are dropped. Tabs are expanded, so in the monospaced console
+// a character's index is its column.
+//
+// Styles are runs of {start, foreground, background, flags}, colors as 0xRRGGBB
+// with DEFAULT for the console's own. A line without codes has no runs at all.
+public final class StyledLine {
+    public static final int DEFAULT = -1;
+    public static final int BOLD = 1;
+    public static final int ITALIC = 2;
+    public static final int UNDERLINE = 4;
+    public static final int STRIKETHROUGH = 8;
+
+    static final int STRIDE = 4;
+    private static final int TAB = 8;
+    private static final int[] NO_RUNS = new int[0];
+    // §0-§f
+    private static final int[] MINECRAFT = {
+            0x000000, 0x0000AA, 0x00AA00, 0x00AAAA, 0xAA0000, 0xAA00AA, 0xFFAA00, 0xAAAAAA,
+            0x555555, 0x5555FF, 0x55FF55, 0x55FFFF, 0xFF5555, 0xFF55FF, 0xFFFF55, 0xFFFFFF,
+    };
+    // ANSI 0-15, the usual VGA palette
+    private static final int[] ANSI = {
+            0x000000, 0xAA0000, 0x00AA00, 0xAA5500, 0x0000AA, 0xAA00AA, 0x00AAAA, 0xAAAAAA,
+            0x555555, 0xFF5555, 0x55FF55, 0xFFFF55, 0x5555FF, 0xFF55FF, 0x55FFFF, 0xFFFFFF,
+    };
+
+    private final String text;
+    private final int[] runs;
+    // Text of each run, cut the first time the line is drawn
+    private String[] pieces;
+    // Found the first time a filter asks
+    private LogLevel level;
+    private boolean levelParsed;
+
+    private StyledLine(String text, int[] runs) {
+        this.text = text;
+        this.runs = runs;
+    }
+
+    public String text() {
+        return text;
+    }
+
+    public int runCount() {
+        return runs.length / STRIDE;
+    }
+
+    public int runStart(int run) {
+        return runs[run * STRIDE];
+    }
+
+    public int runEnd(int run) {
+        int next = (run + 1) * STRIDE;
+        return next < runs.length ? runs[next] : text.length();
+    }
+
+    public int foreground(int run) {
+        return runs[run * STRIDE + 1];
+    }
+
+    public int background(int run) {
+        return runs[run * STRIDE + 2];
+    }
+
+    public int flags(int run) {
+        return runs[run * STRIDE + 3];
+    }
+
+    // Level from the header, null for lines without one
+    public LogLevel level() {
+        if (!levelParsed) {
+            level = LogLevel.parse(text);
+            levelParsed = true;
+        }
+        return level;
+    }
+
+    String piece(int run) {
+        if (pieces == null) {
+            pieces = new String[runCount()];
+        }
+        if (pieces[run] == null) {
+            pieces[run] = text.substring(runStart(run), runEnd(run));
+        }
+        return pieces[run];
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    public static StyledLine parse(String raw) {
+        if (raw == null) {
+            return new StyledLine("", NO_RUNS);
+        }
+        if (isPlain(raw)) {
+            return new StyledLine(raw, NO_RUNS);
+        }
+        return new Parser(raw).parse();
+    }
+
+    // Nothing to parse: the common case, kept to a single scan
+    private static boolean isPlain(String raw) {
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '\u001B' || c == '§' || c == '&' || c == '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Parser {
+        private final String raw;
+        private final StringBuilder text;
+        private int[] runs = new int[8 * STRIDE];
+        private int size;
+        private int fg = DEFAULT;
+        private int bg = DEFAULT;
+        private int flags;
+        private boolean styled;
+
+        Parser(String raw) {
+            this.raw = raw;
+            this.text = new StringBuilder(raw.length());
+        }
+
+        StyledLine parse() {
+            int n = raw.length();
+            int i = 0;
+            while (i < n) {
+                char c = raw.charAt(i);
+                if (c == '\u001B') {
+                    i = escape(i + 1);
+                } else if (c == '§' && i + 1 < n) {
+                    i = formatting(i + 1, '§');
+                } else if (c == '&' && i + 1 < n && isAmpersandCode(i)) {
+                    i = formatting(i + 1, '&');
+                } else if (c == '\t') {
+                    int spaces = TAB - text.length() % TAB;
+                    text.append(" ".repeat(spaces));
+                    i++;
+                } else {
+                    text.append(c);
+                    i++;
+                }
+            }
+            if (!styled) {
+                return new StyledLine(text.toString(), NO_RUNS);
+            }
+            // Style changes with no text after them
+            while (size > 0 && runs[size - STRIDE] == text.length()) {
+                size -= STRIDE;
+            }
+            int[] result = new int[size];
+            System.arraycopy(runs, 0, result, 0, size);
+            return new StyledLine(text.toString(), result);
+        }
+
+        // Opens a run at the current position with the current style, replacing a run that
+        // would be empty and merging into the previous one when nothing changed
+        private void restyle() {
+            styled = true;
+            int at = text.length();
+            if (size > 0 && runs[size - STRIDE] == at) {
+                size -= STRIDE;
+            }
+            if (size == 0 && at > 0) {
+                add(0, DEFAULT, DEFAULT, 0);
+            }
+            if (size > 0 && runs[size - 3] == fg && runs[size - 2] == bg && runs[size - 1] == flags) {
+                return;
+            }
+            add(at, fg, bg, flags);
+        }
+
+        private void add(int start, int f, int b, int fl) {
+            if (size + STRIDE > runs.length) {
+                int[] grown = new int[runs.length * 2];
+                System.arraycopy(runs, 0, grown, 0, size);
+                runs = grown;
+            }
+            runs[size++] = start;
+            runs[size++] = f;
+            runs[size++] = b;
+            runs[size++] = fl;
+        }
+
+        // After an ESC: CSI, of which only SGR ("...m") matters, OSC or a two character one
+        private int escape(int from) {
+            int n = raw.length();
+            if (from >= n) {
+                return n;
+            }
+            char kind = raw.charAt(from);
+            if (kind == '[') {
+                int i = from + 1;
+                while (i < n && (raw.charAt(i) < 0x40 || raw.charAt(i) > 0x7E)) {
+                    i++;
+                }
+                if (i < n && raw.charAt(i) == 'm') {
+                    sgr(from + 1, i);
+                }
+                return Math.min(i + 1, n);
+            }
+            if (kind == ']') {
+                int i = from + 1;
+                while (i < n && raw.charAt(i) != '\u0007'
+                        && !(raw.charAt(i) == '\u001B' && i + 1 < n && raw.charAt(i + 1) == '\\')) {
+                    i++;
+                }
+                return i < n && raw.charAt(i) == '\u001B' ? i + 2 : Math.min(i + 1, n);
+            }
+            return from + 1;
+        }
+
+        private void sgr(int from, int to) {
+            int[] params = new int[16];
+            int count = 0;
+            int value = 0;
+            boolean digits = false;
+            for (int i = from; i <= to; i++) {
+                char c = i < to ? raw.charAt(i) : ';';
+                if (c >= '0' && c <= '9') {
+                    value = Math.min(value * 10 + (c - '0'), 0xFFFF);
+                    digits = true;
+                } else if (c == ';' || c == ':') {
+                    if (count < params.length) {
+                        params[count++] = digits ? value : 0;
+                    }
+                    value = 0;
+                    digits = false;
+                }
+            }
+            for (int p = 0; p < count; p++) {
+                int code = params[p];
+                if (code == 0) {
+                    fg = DEFAULT;
+                    bg = DEFAULT;
+                    flags = 0;
+                } else if (code == 1) {
+                    flags |= BOLD;
+                } else if (code == 3) {
+                    flags |= ITALIC;
+                } else if (code == 4) {
+                    flags |= UNDERLINE;
+                } else if (code == 9) {
+                    flags |= STRIKETHROUGH;
+                } else if (code == 22) {
+                    flags &= ~BOLD;
+                } else if (code == 23) {
+                    flags &= ~ITALIC;
+                } else if (code == 24) {
+                    flags &= ~UNDERLINE;
+                } else if (code == 29) {
+                    flags &= ~STRIKETHROUGH;
+                } else if (code >= 30 && code <= 37) {
+                    fg = ANSI[code - 30];
+                } else if (code >= 90 && code <= 97) {
+                    fg = ANSI[code - 90 + 8];
+                } else if (code == 39) {
+                    fg = DEFAULT;
+                } else if (code >= 40 && code <= 47) {
+                    bg = ANSI[code - 40];
+                } else if (code >= 100 && code <= 107) {
+                    bg = ANSI[code - 100 + 8];
+                } else if (code == 49) {
+                    bg = DEFAULT;
+                } else if ((code == 38 || code == 48) && p + 1 < count) {
+                    int color;
+                    if (params[p + 1] == 5 && p + 2 < count) {
+                        color = xterm(params[p + 2]);
+                        p += 2;
+                    } else if (params[p + 1] == 2 && p + 4 < count) {
+                        color = (Math.min(params[p + 2], 255) << 16) | (Math.min(params[p + 3], 255) << 8)
+                                | Math.min(params[p + 4], 255);
+                        p += 4;
+                    } else {
+                        continue;
+                    }
+                    if (code == 38) {
+                        fg = color;
+                    } else {
+                        bg = color;
+                    }
+                }
+            }
+            restyle();
+        }
+
+        // The 256 color palette: the 16 above, a 6x6x6 cube, then 24 grays
+        private static int xterm(int index) {
+            if (index < 16) {
+                return ANSI[Math.max(index, 0)];
+            }
+            if (index < 232) {
+                int cube = index - 16;
+                return (level(cube / 36) << 16) | (level(cube / 6 % 6) << 8) | level(cube % 6);
+            }
+            int gray = 8 + 10 * (Math.min(index, 255) - 232);
+            return (gray << 16) | (gray << 8) | gray;
+        }
+
+        private static int level(int step) {
+            return step == 0 ? 0 : 55 + step * 40;
+        }
+
+        // After a § or &: a color resets the formatting like in game, §x§R§R§G§G§B§B and
+        // &#RRGGBB are hex colors. Not a code, the character stays as it was.
+        private int formatting(int at, char marker) {
+            char code = Character.toLowerCase(raw.charAt(at));
+            int hex = Character.digit(code, 16);
+            if (hex >= 0) {
+                fg = MINECRAFT[hex];
+                flags = 0;
+            } else if (code == 'x' && hexRun(at + 1, marker)) {
+                int color = 0;
+                for (int k = 0; k < 6; k++) {
+                    color = (color << 4) | Character.digit(raw.charAt(at + 2 + k * 2), 16);
+                }
+                fg = color;
+                flags = 0;
+                restyle();
+                return at + 13;
+            } else if (code == '#' && marker == '&' && at + 7 <= raw.length() && isHex(at + 1, 6)) {
+                fg = Integer.parseInt(raw, at + 1, at + 7, 16);
+                flags = 0;
+                restyle();
+                return at + 7;
+            } else if (code == 'l') {
+                flags |= BOLD;
+            } else if (code == 'o') {
+                flags |= ITALIC;
+            } else if (code == 'n') {
+                flags |= UNDERLINE;
+            } else if (code == 'm') {
+                flags |= STRIKETHROUGH;
+            } else if (code == 'r') {
+                fg = DEFAULT;
+                bg = DEFAULT;
+                flags = 0;
+            } else if (code != 'k') {
+                text.append(marker);
+                return at;
+            }
+            restyle();
+            return at + 1;
+        }
+
+        // "§R§R§G§G§B§B" starting at from
+        private boolean hexRun(int from, char marker) {
+            if (from + 12 > raw.length()) {
+                return false;
+            }
+            for (int k = 0; k < 6; k++) {
+                if (raw.charAt(from + k * 2) != marker || Character.digit(raw.charAt(from + k * 2 + 1), 16) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isHex(int from, int count) {
+            for (int k = 0; k < count; k++) {
+                if (Character.digit(raw.charAt(from + k), 16) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // & is an ordinary character far more often than § is: "R&D", "rock&roll". Only take
+        // it as a code where a word can't go on, at the start, after a space or punctuation,
+        // or right after another code.
+        private boolean isAmpersandCode(int at) {
+            char code = Character.toLowerCase(raw.charAt(at + 1));
+            if (Character.digit(code, 16) < 0 && "klmnorx#".indexOf(code) < 0) {
+                return false;
+            }
+            if (at == 0) {
+                return true;
+            }
+            char before = raw.charAt(at - 1);
+            if (!Character.isLetterOrDigit(before)) {
+                return true;
+            }
+            return at >= 2 && (raw.charAt(at - 2) == '&' || raw.charAt(at - 2) == '§');
+        }
+    }
+}
@@ -474,29 +474,29 @@ public class WizardDialog extends Dialog<ServerInstance> {
                     appendLog("Accepted EULA.");
                 }
 
-                String url = null;
+                DownloadService.DownloadTarget target = null;
                 boolean isInstaller = false;
 
                 appendLog("Fetching download URL for " + selectedType + " " + selectedVersion + "...");
 
                 if (selectedType == ServerType.VANILLA) {
-                    url = downloadService.getVanillaDownloadUrl(selectedVersion).join();
+                    target = downloadService.getVanillaDownload(selectedVersion).join();
                 } else if (selectedType == ServerType.PAPER) {
-                    url = downloadService.getPaperDownloadUrl(selectedVersion).join();
+                    target = downloadService.getPaperDownload(selectedVersion).join();
                 } else if (selectedType == ServerType.NEOFORGE) {
-                    url = downloadService.getNeoForgeInstallerUrl(selectedVersion).join();
+                    target = downloadService.getNeoForgeInstaller(selectedVersion).join();
                     isInstaller = true;
                 }
 
-                if (url == null) {
+                if (target == null) {
                     throw new Exception("Could not find download URL.");
                 }
 
-                appendLog("Downloading jar from " + url);
+                appendLog("Downloading jar from " + target.url());
                 Platform.runLater(() -> statusLabel.setText("Downloading..."));
 
                 Path targetJar = instanceDir.resolve(isInstaller ? "installer.jar" : "server.jar");
-                downloadService.downloadFile(url, targetJar, progress -> {
+                downloadService.downloadFile(target, targetJar, progress -> {
                     Platform.runLater(() -> progressBar.setProgress(progress));
                 }).join();
 
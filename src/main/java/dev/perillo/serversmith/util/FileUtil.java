@@ -11,4 +11,27 @@ public class FileUtil {
     public static Path getInstanceMetadataPath(Path instanceDir) {
         return instanceDir.resolve(".serversmith").resolve("instance.json");
     }
+
+    public static Path getInstanceConsoleDir(Path instanceDir) {
+        return instanceDir.resolve(".serversmith").resolve("console");
+    }
+
+    public static Path getInstanceLockPath(Path instanceDir) {
+        return instanceDir.resolve(".serversmith").resolve("host.lock");
+    }
+
+    public static Path getInstanceBackupDir(Path instanceDir) {
+        return instanceDir.resolve(".serversmith").resolve("backups");
+    }
+
+    // 1536 -> "1.5 KB"
+    public static String formatSize(double bytes) {
+        String[] units = { "B", "KB", "MB", "GB", "TB" };
+        int unit = 0;
+        while (bytes >= 1024 && unit < units.length - 1) {
+            bytes /= 1024;
+            unit++;
+        }
+        return unit == 0 ? String.format("%.0f %s", bytes, units[unit]) : String.format("%.1f %s", bytes, units[unit]);
+    }
 }
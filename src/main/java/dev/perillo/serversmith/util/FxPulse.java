@@ -0,0 +1,33 @@
+package dev.perillo.serversmith.util;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Runs a task on the FX thread on the next pulse. Requests from any thread are
+// coalesced, so the task runs at most once per pulse (~60 times a second) no
+// matter how often request() is called.
+public class FxPulse {
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable task;
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            scheduled.set(false);
+            stop();
+            // Anything requested from here on lands on the next pulse
+            task.run();
+        }
+    };
+
+    public FxPulse(Runnable task) {
+        this.task = task;
+    }
+
+    public void request() {
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(timer::start);
+        }
+    }
+}
@@ -25,4 +25,8 @@ public class JsonUtil {
     public static String toJson(Object object) throws IOException {
         return mapper.writeValueAsString(object);
     }
+
+    public static <T> T fromJson(String json, Class<T> clazz) throws IOException {
+        return mapper.readValue(json, clazz);
+    }
 }
@@ -0,0 +1,175 @@
+package dev.perillo.serversmith.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RangedDownloadTest {
+    // Three full chunks and a short one
+    private static final int CHUNK = 4 * 1024 * 1024;
+    private static final int LENGTH = 3 * CHUNK + 12_345;
+
+    @TempDir
+    Path dir;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    // Platform threads: the server's socket writes pin a virtual thread's carrier, which on a
+    // small machine starves the download's own virtual threads in this same JVM
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private String url;
+
+    // What the stand-in serves, tests change these between runs
+    private volatile byte[] content = bytes(1);
+    private volatile String etag = "\"v1\"";
+    private volatile boolean ranges = true;
+    // Ranges starting in the chunk at this offset break off halfway, retries included; -1 for never
+    private volatile long abortAt = -1;
+    // Switches to this ETag after the first request, as if the file was replaced mid-download
+    private volatile String etagAfterProbe;
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/server.jar", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/server.jar";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void downloadsInRanges() throws Exception {
+        Path file = dir.resolve("server.jar.part");
+        assertTrue(new RangedDownload(client, url, file).run(null));
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertFalse(Files.exists(journal(file)));
+    }
+
+    @Test
+    void fallsBackWithoutDownloadingWhenRangesAreIgnored() throws Exception {
+        ranges = false;
+        Path file = dir.resolve("server.jar.part");
+        assertFalse(new RangedDownload(client, url, file).run(null));
+        // The probe hangs up on the 200 instead of reading it, only socket buffers' worth goes out
+        assertTrue(served.get() < LENGTH / 2, "probe read " + served.get() + " bytes");
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void resumesAfterAnAbortedChunk() throws Exception {
+        Path file = dir.resolve("server.jar.part");
+        abortAt = CHUNK;
+        assertThrows(IOException.class, () -> new RangedDownload(client, url, file).run(null));
+        assertTrue(Files.exists(journal(file)));
+
+        abortAt = -1;
+        served.set(0);
+        assertTrue(new RangedDownload(client, url, file).run(null));
+        assertArrayEquals(content, Files.readAllBytes(file));
+        // Only what the first attempt didn't get, plus the probe's byte
+        assertTrue(served.get() < LENGTH - CHUNK, "resume fetched " + served.get() + " bytes");
+    }
+
+    @Test
+    void startsOverWhenTheFileChangedBetweenAttempts() throws Exception {
+        Path file = dir.resolve("server.jar.part");
+        abortAt = CHUNK;
+        assertThrows(IOException.class, () -> new RangedDownload(client, url, file).run(null));
+
+        abortAt = -1;
+        content = bytes(2);
+        etag = "\"v2\"";
+        assertTrue(new RangedDownload(client, url, file).run(null));
+        assertArrayEquals(content, Files.readAllBytes(file));
+    }
+
+    @Test
+    void failsRatherThanMixVersionsWhenTheFileChangesMidDownload() throws Exception {
+        Path file = dir.resolve("server.jar.part");
+        etagAfterProbe = "\"v2\"";
+        // If-Range no longer matches, so the server answers 200 with the whole new file
+        assertThrows(IOException.class, () -> new RangedDownload(client, url, file).run(null));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body = content;
+            String tag = etag;
+            if (requests.getAndIncrement() > 0 && etagAfterProbe != null) {
+                tag = etagAfterProbe;
+            }
+            exchange.getResponseHeaders().set("ETag", tag);
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (!ranges || range == null || (ifRange != null && !ifRange.equals(tag))) {
+                exchange.sendResponseHeaders(200, body.length);
+                write(exchange.getResponseBody(), body, 0, body.length);
+                return;
+            }
+            // "bytes=start-end"
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Math.min(Integer.parseInt(bounds[1]), body.length - 1);
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+            exchange.sendResponseHeaders(206, end - start + 1);
+            if (abortAt >= 0 && start >= abortAt && start < abortAt + CHUNK) {
+                // Half of it, then the connection drops
+                write(exchange.getResponseBody(), body, start, (end - start + 1) / 2);
+                exchange.getResponseBody().flush();
+                throw new IOException("aborted on purpose");
+            }
+            write(exchange.getResponseBody(), body, start, end - start + 1);
+        }
+    }
+
+    private void write(OutputStream out, byte[] body, int offset, int length) {
+        try {
+            for (int i = 0; i < length; i += 64 * 1024) {
+                int n = Math.min(64 * 1024, length - i);
+                out.write(body, offset + i, n);
+                served.addAndGet(n);
+            }
+        } catch (IOException e) {
+            // The client hung up
+        }
+    }
+
+    private static Path journal(Path file) {
+        return file.resolveSibling(file.getFileName() + ".journal");
+    }
+
+    private static byte[] bytes(long seed) {
+        byte[] bytes = new byte[LENGTH];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}